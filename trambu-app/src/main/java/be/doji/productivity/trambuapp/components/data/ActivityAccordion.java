@@ -83,4 +83,28 @@ public class ActivityAccordion extends Accordion {
         this.getPanes().addAll(createActivityNodes(activitiesWithDateHeader));
 
     }
+
+    /**
+     * Replaces the nodes of the changed activities and drops the nodes of the removed ones, the other nodes keep their
+     * state. Falls back to reloading all activities when a changed activity has no node of its own.
+     */
+    public void updateChangedActivities(List<Activity> changedActivities, Set<UUID> removedActivityIds) {
+        Map<UUID, Integer> nodePositions = new HashMap<>();
+        for (int i = 0; i < this.getPanes().size(); i++) {
+            TitledPane pane = this.getPanes().get(i);
+            if (pane.getClass().equals(ActivityNode.class)) {
+                nodePositions.put(((ActivityNode) pane).getActivity().getId(), i);
+            }
+        }
+        for (Activity changedActivity : changedActivities) {
+            Integer position = nodePositions.get(changedActivity.getId());
+            if (position == null) {
+                view.reloadActivities();
+                return;
+            }
+            this.getPanes().set(position, new ActivityNode(changedActivity, view));
+        }
+        this.getPanes().removeIf(pane -> pane.getClass().equals(ActivityNode.class) && removedActivityIds
+                .contains(((ActivityNode) pane).getActivity().getId()));
+    }
 }
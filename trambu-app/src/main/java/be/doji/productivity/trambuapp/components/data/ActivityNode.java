@@ -8,6 +8,7 @@ import be.doji.productivity.trambuapp.utils.TooltipConstants;
 import be.doji.productivity.trambuapp.views.ActivityOverview;
 import be.doji.productivity.trambucore.TrackMeConstants;
 import be.doji.productivity.trambucore.managers.NoteManager;
+import be.doji.productivity.trambucore.managers.TimeTrackingManager;
 import be.doji.productivity.trambucore.model.tasks.Activity;
 import be.doji.productivity.trambucore.model.tasks.Note;
 import be.doji.productivity.trambucore.model.tracker.ActivityLog;
@@ -258,9 +259,7 @@ public class ActivityNode extends TitledPane {
 
     private Node createEditableLocation() {
         locationField = new AutocompleteTextField();
-        SortedSet<String> existingLocations = new TreeSet<>();
-        existingLocations.addAll(application.getActivityController().getActivityManager().getExistingLocations());
-        locationField.setSuggestions(existingLocations);
+        locationField.setSuggestions(application.getActivityController().getActivityManager().getExistingLocations());
 
         if (activity.isSetLocation()) {
             locationField.setText(activity.getLocation());
@@ -309,10 +308,7 @@ public class ActivityNode extends TitledPane {
         Optional<String> reducedTags = activity.getTags().stream().reduce((s, s2) -> s + FIELD_SEPERATOR + " " + s2);
         tagsField = new AutocompleteTextField();
         reducedTags.ifPresent(s -> tagsField.setText(s));
-
-        SortedSet<String> treeSetTags = new TreeSet<>();
-        treeSetTags.addAll(application.getActivityController().getActivityManager().getExistingTags());
-        tagsField.setSuggestions(treeSetTags);
+        tagsField.setSuggestions(application.getActivityController().getActivityManager().getExistingTags());
         return tagsField;
     }
 
@@ -342,9 +338,7 @@ public class ActivityNode extends TitledPane {
                 .reduce((s, s2) -> s + FIELD_SEPERATOR + " " + s2);
         projectsField = new AutocompleteTextField();
         reducedProjects.ifPresent(s -> projectsField.setText(s));
-        SortedSet<String> treeSetProjects = new TreeSet<>();
-        treeSetProjects.addAll(application.getActivityController().getActivityManager().getExistingProjects());
-        projectsField.setSuggestions(treeSetProjects);
+        projectsField.setSuggestions(application.getActivityController().getActivityManager().getExistingProjects());
         return projectsField;
     }
 
@@ -377,7 +371,12 @@ public class ActivityNode extends TitledPane {
         }
 
         logpointGrid.add(new Label("Time spent on activity: "), 0, logRowIndex);
-        logpointGrid.add(new Label(activityLog.getTimeSpentInHoursString()), 1, logRowIndex);
+        logpointGrid.add(new Label(activityLog.getTimeSpentInHoursString()), 1, logRowIndex++);
+        if (!activity.getSubActivities().isEmpty()) {
+            logpointGrid.add(new Label("Including sub activities: "), 0, logRowIndex);
+            logpointGrid.add(new Label(application.getActivityController().getTimeRollup()
+                    .getTimeSpentInHoursString(activity.getId())), 1, logRowIndex);
+        }
         return logpointGrid;
     }
 
@@ -562,16 +561,15 @@ public class ActivityNode extends TitledPane {
         HBox timingControls = new HBox();
 
         Button startStopButton = new Button(getTimingButtonText());
-        Optional<TimeLog> activeLog = activityLog.getActiveLog();
         startStopButton.setOnAction(event -> {
-            if (activeLog.isPresent()) {
-                activityLog.stopActiveLog();
+            TimeTrackingManager timeTrackingManager = application.getActivityController().getTimeTrackingManager();
+            if (isTimerRunning()) {
+                timeTrackingManager.stopTimer(this.activity.getId());
             } else {
-                activityLog.startLog();
+                timeTrackingManager.startTimer(this.activity.getId());
             }
             startStopButton.setText(getTimingButtonText());
             startStopButton.setGraphic(getTimingButtonIcon());
-            application.getActivityController().getTimeTrackingManager().save(activityLog);
             this.setContent(createActivityContent());
         });
 
@@ -586,26 +584,23 @@ public class ActivityNode extends TitledPane {
 
     private FontAwesomeIconView getTimingButtonIcon() {
         return DisplayUtils.createStyledIcon(
-                activityLog.getActiveLog().isPresent()?FontAwesomeIcon.HOURGLASS_END:FontAwesomeIcon.HOURGLASS_START);
+                isTimerRunning()?FontAwesomeIcon.HOURGLASS_END:FontAwesomeIcon.HOURGLASS_START);
     }
 
     private String getTimingButtonText() {
-        Optional<TimeLog> activeLog = getActiveLog();
-        if (activeLog.isPresent()) {
+        if (isTimerRunning()) {
             return DisplayConstants.BUTTON_TEXT_TIMER_STOP;
         } else {
             return DisplayConstants.BUTTON_TEXT_TIMER_START;
         }
     }
 
-    private Optional<TimeLog> getActiveLog() {
-        activityLog = application.getActivityController().getTimeTrackingManager()
-                .getLogForActivityId(this.activity.getId());
-        return activityLog.getActiveLog();
+    private boolean isTimerRunning() {
+        return application.getActivityController().getTimeTrackingManager().isRunning(this.activity.getId());
     }
 
     public Tooltip getTimingButtonTooltipText() {
-        return DisplayUtils.createTooltip(getActiveLog().isPresent()?
+        return DisplayUtils.createTooltip(isTimerRunning()?
                 TooltipConstants.TOOLTIP_TEXT_ACTIVITY_TIMING_CONTROL_STOP:
                 TooltipConstants.TOOLTIP_TEXT_ACTIVITY_TIMING_CONTROL_START);
     }
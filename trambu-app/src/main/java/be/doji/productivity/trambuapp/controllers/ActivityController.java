@@ -5,13 +5,16 @@ import be.doji.productivity.trambuapp.utils.DisplayConstants;
 import be.doji.productivity.trambucore.TrackMeConstants;
 import be.doji.productivity.trambucore.managers.ActivityManager;
 import be.doji.productivity.trambucore.managers.NoteManager;
+import be.doji.productivity.trambucore.managers.TimeRollup;
 import be.doji.productivity.trambucore.managers.TimeTrackingManager;
+import be.doji.productivity.trambucore.managers.WriteBehindScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import tornadofx.Controller;
 
 import java.io.IOException;
 import java.text.ParseException;
+import java.time.Duration;
 import java.util.Optional;
 
 public class ActivityController extends Controller {
@@ -22,6 +25,7 @@ public class ActivityController extends Controller {
     private TimeTrackingManager timeTrackingManager;
     private UserConfigurationManager configManager;
     private NoteManager noteManager;
+    private TimeRollup timeRollup;
 
     public ActivityController() {
         super();
@@ -36,19 +40,40 @@ public class ActivityController extends Controller {
         } catch (IOException | ParseException e) {
             LOG.error(DisplayConstants.ERROR_MESSAGE_INITIALIZATION, e);
         }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "trambu-shutdown"));
     }
 
     private void initializeActivities(String fileLocation) throws IOException, ParseException {
         if (activityManager == null) {
             this.activityManager = new ActivityManager(fileLocation);
+            this.activityManager.enableStartupSnapshot();
+            this.activityManager.enableFileWatcher();
             this.activityManager.readActivitiesFromFile();
+            Optional<Duration> archiveAge = getArchiveAge();
+            if (archiveAge.isPresent()) {
+                this.activityManager.enableCompletionDates();
+                this.activityManager.archiveCompleted(archiveAge.get());
+            }
+            this.activityManager.enableWriteBehind(WriteBehindScheduler.DEFAULT_DELAY_MILLIS,
+                    WriteBehindScheduler.DEFAULT_DIRTY_THRESHOLD);
         }
     }
 
+    /*
+     * Archiving moves activities out of the todo file, it only runs when the user configured an age for it.
+     */
+    private Optional<Duration> getArchiveAge() {
+        return configManager.getProperty(DisplayConstants.NAME_PROPERTY_ARCHIVE_AGE).map(Long::parseLong)
+                .map(Duration::ofDays);
+    }
+
     private void initializeTimeTracking(String fileLocation) throws IOException, ParseException {
         if (timeTrackingManager == null) {
             this.timeTrackingManager = new TimeTrackingManager(fileLocation);
+            this.timeTrackingManager.enableStartupSnapshot();
             this.timeTrackingManager.readLogs();
+            this.timeTrackingManager.enableWriteBehind(WriteBehindScheduler.DEFAULT_DELAY_MILLIS,
+                    WriteBehindScheduler.DEFAULT_DIRTY_THRESHOLD);
         }
     }
 
@@ -58,12 +83,39 @@ public class ActivityController extends Controller {
         }
     }
 
+    public void flush() {
+        try {
+            if (activityManager != null) {
+                activityManager.flush();
+            }
+            if (timeTrackingManager != null) {
+                timeTrackingManager.flush();
+            }
+        } catch (IOException e) {
+            LOG.error(DisplayConstants.ERROR_MESSAGE_ACTIVITY_SAVING, e);
+        }
+    }
+
+    private void shutdown() {
+        try {
+            if (activityManager != null) {
+                activityManager.shutdown();
+            }
+            if (timeTrackingManager != null) {
+                timeTrackingManager.shutdown();
+            }
+        } catch (IOException e) {
+            LOG.error(DisplayConstants.ERROR_MESSAGE_ACTIVITY_SAVING, e);
+        }
+    }
+
     public ActivityManager getActivityManager() {
         return activityManager;
     }
 
     public void setActivityManager(ActivityManager activityManager) {
         this.activityManager = activityManager;
+        resetTimeRollup();
     }
 
     public TimeTrackingManager getTimeTrackingManager() {
@@ -72,6 +124,21 @@ public class ActivityController extends Controller {
 
     public void setTimeTrackingManager(TimeTrackingManager timeTrackingManager) {
         this.timeTrackingManager = timeTrackingManager;
+        resetTimeRollup();
+    }
+
+    public TimeRollup getTimeRollup() {
+        if (timeRollup == null) {
+            timeRollup = new TimeRollup(activityManager, timeTrackingManager);
+        }
+        return timeRollup;
+    }
+
+    private void resetTimeRollup() {
+        if (timeRollup != null) {
+            timeRollup.close();
+            timeRollup = null;
+        }
     }
 
     public UserConfigurationManager getConfigManager() {
@@ -5,6 +5,7 @@ import be.doji.productivity.trambuapp.controls.ActivityControlAccordion;
 import be.doji.productivity.trambuapp.controls.MainMenuBar;
 import be.doji.productivity.trambuapp.components.data.ActivityAccordion;
 import be.doji.productivity.trambuapp.utils.DisplayConstants;
+import javafx.application.Platform;
 import javafx.geometry.Orientation;
 import javafx.scene.Parent;
 import javafx.scene.control.ScrollPane;
@@ -41,6 +42,9 @@ public class ActivityOverview extends View {
         root.setPrefWidth(DisplayConstants.UI_DEFAULT_WINDOW_WIDTH);
         root.setCenter(createContentSplitPane());
         root.setBottom(new MainMenuBar(this).getRoot());
+        this.activityController.getActivityManager().addActivityChangeListener(
+                (changedActivities, removedActivityIds) -> Platform.runLater(
+                        () -> this.activityAccordion.updateChangedActivities(changedActivities, removedActivityIds)));
     }
 
     private SplitPane createContentSplitPane() {
@@ -63,7 +67,7 @@ public class ActivityOverview extends View {
 
     private ActivityAccordion createActivityAccordeon() {
         this.activityAccordion = new ActivityAccordion(this,
-                this.activityController.getActivityManager().getActivitiesWithDateHeader());
+                this.activityController.getActivityManager().getActivitiesWithDateHeader(!filterDone));
         return this.activityAccordion;
     }
 
@@ -75,8 +79,8 @@ public class ActivityOverview extends View {
             this.activityAccordion
                     .updateActivities(this.activityController.getActivityManager().getActivitiesByTag(tagFilter));
         } else {
-            this.activityAccordion
-                    .updateActivities(this.activityController.getActivityManager().getActivitiesWithDateHeader());
+            this.activityAccordion.updateActivities(
+                    this.activityController.getActivityManager().getActivitiesWithDateHeader(!filterDone));
         }
     }
 
@@ -129,6 +133,7 @@ public class ActivityOverview extends View {
 
     @Override public void onDelete() {
         this.activityController.getTimeTrackingManager().stopAll();
+        this.activityController.flush();
     }
 
     @Override public void onDock() {
@@ -6,6 +6,7 @@ import be.doji.productivity.trambuapp.utils.DisplayConstants;
 import be.doji.productivity.trambuapp.utils.DisplayUtils;
 import be.doji.productivity.trambuapp.utils.TooltipConstants;
 import be.doji.productivity.trambucore.TrackMeConstants;
+import be.doji.productivity.trambucore.exporters.ExportMonitor;
 import be.doji.productivity.trambucore.exporters.TimesheetToCSVExporter;
 import be.doji.productivity.trambucore.model.tasks.Activity;
 import be.doji.productivity.trambucore.model.tracker.ActivityLog;
@@ -27,6 +28,7 @@ import tornadofx.View;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.ZoneId;
@@ -123,11 +125,9 @@ public class TimesheetView extends View {
             File file = fileChooser.showSaveDialog(null);
             if (file != null) {
 
-                try {
-                    TimesheetToCSVExporter exporter = new TimesheetToCSVExporter(
-                            activityController.getActivityManager());
-                    List<String> convert = exporter.convert(logs);
-                    Files.write(Paths.get(file.getAbsolutePath()), convert);
+                TimesheetToCSVExporter exporter = new TimesheetToCSVExporter(activityController.getActivityManager());
+                try (Writer writer = Files.newBufferedWriter(Paths.get(file.getAbsolutePath()))) {
+                    exporter.export(logs, writer, ExportMonitor.NONE);
                     LOG.info("Export completed");
                 } catch (IOException e) {
                     LOG.error("Error while exporting timesheet");
@@ -26,6 +26,7 @@ public final class TrackMeConstants {
     public static final String INDICATOR_PROJECT = "+";
     public static final String INDICATOR_TAG = "@";
     public static final String INDICATOR_DEADLINE = "due:";
+    public static final String INDICATOR_COMPLETION_DATE = "done:";
     public static final String INDICATOR_WARNING_PERIOD = "warningPeriod:";
     public static final String INDICATOR_PARENT_ACTIVITY = "super:";
     public static final String INDICATOR_UUID = "uuid:";
@@ -40,6 +41,10 @@ public final class TrackMeConstants {
 
     public static final String NOTES_FILE_EXTENSION = ".md";
 
+    /**
+     * Reading and writing data files goes through {@link be.doji.productivity.trambucore.utils.TimestampCodec}, this
+     * format remains available for display purposes.
+     */
     public static SimpleDateFormat getDateFormat() {
         return new SimpleDateFormat(DATA_DATE_FORMAT, Locale.FRANCE);
     }
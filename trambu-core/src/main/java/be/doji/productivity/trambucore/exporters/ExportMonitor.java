@@ -0,0 +1,21 @@
+package be.doji.productivity.trambucore.exporters;
+
+/**
+ * Follows a {@link StreamingExporter} while it writes. Both methods are called between items on the exporting thread,
+ * so implementations should return quickly.
+ */
+public interface ExportMonitor {
+
+    ExportMonitor NONE = new ExportMonitor() {
+    };
+
+    /**
+     * @return true to stop the export before the next item is written
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+
+    default void progress(int exportedItems, int totalItems) {
+    }
+}
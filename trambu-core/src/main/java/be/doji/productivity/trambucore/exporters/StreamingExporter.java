@@ -0,0 +1,32 @@
+package be.doji.productivity.trambucore.exporters;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Exporter that writes its output to the target while it is produced instead of building it in memory first.
+ *
+ * @param <I> InputType
+ */
+public interface StreamingExporter<I> {
+
+    /**
+     * Writes the export to the target, which is flushed but not closed. Writers that are not buffered should be
+     * wrapped in a {@link java.io.BufferedWriter}.
+     *
+     * @throws CancellationException when the monitor cancelled the export, what was written up to then stays in the
+     *                               target
+     */
+    void export(I input, Writer target, ExportMonitor monitor) throws IOException;
+
+    /**
+     * Writes the export to the channel as UTF-8, the channel is not closed.
+     */
+    default void export(I input, WritableByteChannel target, ExportMonitor monitor) throws IOException {
+        export(input, Channels.newWriter(target, StandardCharsets.UTF_8.newEncoder(), -1), monitor);
+    }
+}
@@ -5,16 +5,22 @@ import be.doji.productivity.trambucore.managers.ActivityManager;
 import be.doji.productivity.trambucore.model.tasks.Activity;
 import be.doji.productivity.trambucore.model.tracker.ActivityLog;
 import be.doji.productivity.trambucore.utils.TrackerUtils;
+import org.apache.commons.lang3.StringUtils;
 
 import java.io.IOException;
+import java.io.Writer;
+import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
 
 /**
  * @author Stijn Dejongh
  */
-public class TimesheetToCSVExporter implements Exporter<List<ActivityLog>, List<String>> {
+public class TimesheetToCSVExporter
+        implements Exporter<List<ActivityLog>, List<String>>, StreamingExporter<List<ActivityLog>> {
 
     private final ActivityManager activityManager;
 
@@ -26,7 +32,34 @@ public class TimesheetToCSVExporter implements Exporter<List<ActivityLog>, List<
         return createFileLines(input);
     }
 
-    List<String> createFileLines(List<ActivityLog> input) {
+    /**
+     * Writes the header and one line per log, reusing a single line buffer. The monitor is asked whether to go on
+     * before every log.
+     */
+    @Override public void export(List<ActivityLog> input, Writer target, ExportMonitor monitor) throws IOException {
+        StringBuilder line = new StringBuilder();
+        appendHeaderLine(line);
+        writeLine(line, target);
+        int exportedItems = 0;
+        for (ActivityLog timeLog : input) {
+            if (monitor.isCancelled()) {
+                target.flush();
+                throw new CancellationException("Export cancelled after " + exportedItems + " items");
+            }
+            appendItemLine(timeLog, line);
+            writeLine(line, target);
+            monitor.progress(++exportedItems, input.size());
+        }
+        target.flush();
+    }
+
+    private static void writeLine(StringBuilder line, Writer target) throws IOException {
+        line.append(System.lineSeparator());
+        target.append(line);
+        line.setLength(0);
+    }
+
+    List<String> createFileLines(List<ActivityLog> input) throws IOException {
         List<String> exportedLines = new ArrayList<>();
         exportedLines.add(createHeaderLine());
         for (ActivityLog timeLog : input) {
@@ -35,13 +68,18 @@ public class TimesheetToCSVExporter implements Exporter<List<ActivityLog>, List<
         return exportedLines;
     }
 
-    private String createItemLine(ActivityLog timeLog) {
-        Optional<Activity> savedActivityById = activityManager.getSavedActivityById(timeLog.getActivityId().toString());
+    private String createItemLine(ActivityLog timeLog) throws IOException {
+        StringBuilder csvLine = new StringBuilder();
+        appendItemLine(timeLog, csvLine);
+        return csvLine.toString();
+    }
+
+    private void appendItemLine(ActivityLog timeLog, StringBuilder csvLine) throws IOException {
+        Optional<Activity> savedActivityById = findActivity(timeLog.getActivityId().toString());
         String activityName = savedActivityById.isPresent()?
                 savedActivityById.get().getName():
                 timeLog.getActivityId().toString();
 
-        StringBuilder csvLine = new StringBuilder();
         csvLine.append(activityName);
         csvLine.append(ExportConstants.CSV_ITEM_SEPERATOR);
         csvLine.append(TrackerUtils.escape(String.valueOf(timeLog.getTimeSpentInHours())));
@@ -50,20 +88,34 @@ public class TimesheetToCSVExporter implements Exporter<List<ActivityLog>, List<
         csvLine.append(ExportConstants.CSV_ITEM_SEPERATOR);
         csvLine.append(TrackerUtils.escape(String.valueOf(timeLog.getTimeSpentInSeconds())));
         csvLine.append(ExportConstants.CSV_ITEM_SEPERATOR);
-        Optional<Activity> parentActivity = savedActivityById
-                .map(activity -> activityManager.getSavedActivityById(activity.getParentActivity()))
-                .orElse(Optional.empty());
-        String parentActivityString = parentActivity.isPresent()?
-                parentActivity.get().getName():
-                ExportConstants.CSV_ITEM_EMPTY_VALUE;
+        Optional<Activity> parentActivity = savedActivityById.isPresent()?
+                findActivity(savedActivityById.get().getParentActivity()):
+                Optional.empty();
+        csvLine.append(parentActivity.map(Activity::getName).orElse(ExportConstants.CSV_ITEM_EMPTY_VALUE));
+    }
 
-        csvLine.append(
-                savedActivityById.map(activity -> parentActivityString).orElse(ExportConstants.CSV_ITEM_EMPTY_VALUE));
-        return csvLine.toString();
+    /*
+     * Logs often outlive their activities in the todo file, completed activities are looked up in the archive.
+     */
+    private Optional<Activity> findActivity(String activityId) throws IOException {
+        Optional<Activity> savedActivity = activityManager.getSavedActivityById(activityId);
+        if (savedActivity.isPresent() || StringUtils.isBlank(activityId)) {
+            return savedActivity;
+        }
+        try {
+            return activityManager.getArchivedActivityById(UUID.fromString(activityId));
+        } catch (ParseException e) {
+            throw new IOException("Could not read the activity archive", e);
+        }
     }
 
     private String createHeaderLine() {
         StringBuilder headerLine = new StringBuilder();
+        appendHeaderLine(headerLine);
+        return headerLine.toString();
+    }
+
+    private static void appendHeaderLine(StringBuilder headerLine) {
         headerLine.append("ACTIVITY_NAME");
         headerLine.append(ExportConstants.CSV_ITEM_SEPERATOR);
         headerLine.append("TIMESPENT_HOURS");
@@ -73,7 +125,5 @@ public class TimesheetToCSVExporter implements Exporter<List<ActivityLog>, List<
         headerLine.append("TIMESPENT_SECONDS");
         headerLine.append(ExportConstants.CSV_ITEM_SEPERATOR);
         headerLine.append("PARENT");
-
-        return headerLine.toString();
     }
 }
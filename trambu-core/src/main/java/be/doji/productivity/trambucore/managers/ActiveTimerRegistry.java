@@ -0,0 +1,59 @@
+package be.doji.productivity.trambucore.managers;
+
+import be.doji.productivity.trambucore.model.tracker.ActivityLog;
+import be.doji.productivity.trambucore.model.tracker.LogpointListener;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The activity logs that have a running logpoint, by activity id. Kept up to date from the logpoint events of the
+ * tracked logs, so answering which activities are running never looks at their history.
+ */
+final class ActiveTimerRegistry implements LogpointListener {
+
+    private final Map<UUID, ActivityLog> runningLogs = new LinkedHashMap<>();
+
+    void track(ActivityLog activityLog) {
+        update(activityLog);
+    }
+
+    void untrack(ActivityLog activityLog) {
+        runningLogs.remove(activityLog.getActivityId(), activityLog);
+    }
+
+    void clear() {
+        runningLogs.clear();
+    }
+
+    boolean isRunning(UUID activityId) {
+        return runningLogs.containsKey(activityId);
+    }
+
+    List<ActivityLog> getRunningLogs() {
+        return new ArrayList<>(runningLogs.values());
+    }
+
+    @Override public void logpointAdded(ActivityLog activityLog, int position) {
+        update(activityLog);
+    }
+
+    @Override public void logpointChanged(ActivityLog activityLog, int position) {
+        update(activityLog);
+    }
+
+    @Override public void logpointRemoved(ActivityLog activityLog, int position) {
+        update(activityLog);
+    }
+
+    private void update(ActivityLog activityLog) {
+        if (activityLog.hasActiveLog()) {
+            runningLogs.put(activityLog.getActivityId(), activityLog);
+        } else {
+            untrack(activityLog);
+        }
+    }
+}
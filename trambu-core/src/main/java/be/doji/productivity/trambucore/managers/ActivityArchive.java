@@ -0,0 +1,210 @@
+package be.doji.productivity.trambucore.managers;
+
+import be.doji.productivity.trambucore.model.tasks.Activity;
+import be.doji.productivity.trambucore.parser.ActivityParser;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Completed activities that were moved out of the todo file. Every archive run appends one gzip member with the todo
+ * lines of the archived activities to the archive file, and an index next to it maps the id of every archived activity
+ * to the member it was written in. Only the members listed in the index are ever read, so a member that was cut off
+ * while it was appended is ignored. Neither file is read before archived activities are asked for.
+ */
+final class ActivityArchive {
+
+    static final String ARCHIVE_SUFFIX = ".archive.gz";
+    static final String INDEX_SUFFIX = ".archive.index";
+    private static final String SEPARATOR = " ";
+
+    private final Path archiveFile;
+    private final Path indexFile;
+    private Map<UUID, long[]> index;
+    private List<Activity> archivedActivities;
+
+    ActivityArchive(Path todoFile) {
+        this.archiveFile = todoFile.resolveSibling(todoFile.getFileName() + ARCHIVE_SUFFIX);
+        this.indexFile = todoFile.resolveSibling(todoFile.getFileName() + INDEX_SUFFIX);
+    }
+
+    /**
+     * Appends the activities and their sub activities. The archive is forced to disk before the index lists the new
+     * member, the caller only drops the activities from the todo file afterwards.
+     */
+    void append(List<Activity> rootActivities) throws IOException {
+        if (rootActivities.isEmpty()) {
+            return;
+        }
+        List<Activity> archived = new ArrayList<>();
+        ByteArrayOutputStream member = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(member), StandardCharsets.UTF_8)) {
+            for (Activity rootActivity : rootActivities) {
+                writeLines(rootActivity, writer, archived);
+            }
+        }
+
+        long offset;
+        try (FileChannel channel = FileChannel
+                .open(archiveFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            offset = channel.size();
+            ByteBuffer content = ByteBuffer.wrap(member.toByteArray());
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+            channel.force(true);
+        }
+
+        StringBuilder indexRecords = new StringBuilder();
+        for (Activity activity : archived) {
+            indexRecords.append(activity.getId()).append(SEPARATOR).append(offset).append(SEPARATOR)
+                    .append(member.size()).append(System.lineSeparator());
+        }
+        Files.write(indexFile, indexRecords.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        if (index != null) {
+            for (Activity activity : archived) {
+                index.put(activity.getId(), new long[] {offset, member.size()});
+            }
+        }
+        if (archivedActivities != null) {
+            archivedActivities.removeIf(activity -> index.get(activity.getId())[0] != offset);
+            archivedActivities.addAll(rootActivities);
+        }
+    }
+
+    private void writeLines(Activity activity, Writer writer, List<Activity> archived) throws IOException {
+        writer.write(activity.toString());
+        writer.write(System.lineSeparator());
+        archived.add(activity);
+        for (Activity subActivity : activity.getSubActivities()) {
+            writeLines(subActivity, writer, archived);
+        }
+    }
+
+    /**
+     * @return the archived root activities with their sub activities. An activity that was archived more than once is
+     * returned as it was archived last.
+     */
+    List<Activity> getArchivedActivities() throws IOException, ParseException {
+        if (archivedActivities == null) {
+            SortedMap<Long, Long> members = new TreeMap<>();
+            for (long[] member : getIndex().values()) {
+                members.put(member[0], member[1]);
+            }
+            List<Activity> rootActivities = new ArrayList<>();
+            for (Map.Entry<Long, Long> member : members.entrySet()) {
+                rootActivities.addAll(readMember(member.getKey(), member.getValue()));
+            }
+            archivedActivities = rootActivities;
+        }
+        return new ArrayList<>(archivedActivities);
+    }
+
+    /**
+     * @return the archived activity with its sub activities, only the member it was written in is read
+     */
+    Optional<Activity> getArchivedActivityById(UUID id) throws IOException, ParseException {
+        long[] member = getIndex().get(id);
+        if (member == null) {
+            return Optional.empty();
+        }
+        Deque<Activity> activities = new ArrayDeque<>(readMember(member[0], member[1]));
+        while (!activities.isEmpty()) {
+            Activity activity = activities.pop();
+            if (activity.getId().equals(id)) {
+                return Optional.of(activity);
+            }
+            activities.addAll(activity.getSubActivities());
+        }
+        return Optional.empty();
+    }
+
+    /*
+     * Sub activities are written right after their parent, so parents are always linked before their subs. Activities
+     * that were archived again later are left out.
+     */
+    private List<Activity> readMember(long offset, long length) throws IOException, ParseException {
+        ByteBuffer member = ByteBuffer.allocate((int) length);
+        try (FileChannel channel = FileChannel.open(archiveFile, StandardOpenOption.READ)) {
+            while (member.hasRemaining()) {
+                if (channel.read(member, offset + member.position()) == -1) {
+                    throw new EOFException("Archive member at " + offset + " is incomplete");
+                }
+            }
+        }
+
+        List<Activity> rootActivities = new ArrayList<>();
+        Map<UUID, Activity> linkedActivities = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(member.array())), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (StringUtils.isBlank(line)) {
+                    continue;
+                }
+                Activity activity = ActivityParser.mapStringToActivity(line);
+                long[] latestMember = getIndex().get(activity.getId());
+                if (latestMember == null || latestMember[0] != offset) {
+                    continue;
+                }
+                Activity parent = StringUtils.isNotBlank(activity.getParentActivity())?
+                        linkedActivities.get(UUID.fromString(activity.getParentActivity())):
+                        null;
+                if (parent != null) {
+                    parent.addSubTask(activity);
+                } else {
+                    rootActivities.add(activity);
+                }
+                linkedActivities.put(activity.getId(), activity);
+            }
+        }
+        return rootActivities;
+    }
+
+    private Map<UUID, long[]> getIndex() throws IOException, ParseException {
+        if (index == null) {
+            Map<UUID, long[]> readIndex = new HashMap<>();
+            if (Files.exists(indexFile)) {
+                for (String line : Files.readAllLines(indexFile, StandardCharsets.UTF_8)) {
+                    if (StringUtils.isNotBlank(line)) {
+                        readIndexRecord(line, readIndex);
+                    }
+                }
+            }
+            index = readIndex;
+        }
+        return index;
+    }
+
+    private static void readIndexRecord(String line, Map<UUID, long[]> readIndex) throws ParseException {
+        String[] fields = line.trim().split(SEPARATOR);
+        if (fields.length != 3) {
+            throw new ParseException("Invalid archive index entry: " + line, 0);
+        }
+        try {
+            long[] member = {Long.parseLong(fields[1]), Long.parseLong(fields[2])};
+            readIndex.put(UUID.fromString(fields[0]), member);
+        } catch (IllegalArgumentException e) {
+            throw new ParseException("Invalid archive index entry: " + line, 0);
+        }
+    }
+}
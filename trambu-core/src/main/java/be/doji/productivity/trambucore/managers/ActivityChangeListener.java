@@ -0,0 +1,20 @@
+package be.doji.productivity.trambucore.managers;
+
+import be.doji.productivity.trambucore.model.tasks.Activity;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Gets notified by the {@link ActivityManager} when activities were changed in the todo file outside of the
+ * application.
+ */
+public interface ActivityChangeListener {
+
+    /**
+     * @param changedActivities  the activities that were added or changed, as they are now saved
+     * @param removedActivityIds the ids of the activities that are no longer in the todo file
+     */
+    void activitiesChanged(List<Activity> changedActivities, Set<UUID> removedActivityIds);
+}
@@ -0,0 +1,180 @@
+package be.doji.productivity.trambucore.managers;
+
+import be.doji.productivity.trambucore.model.tasks.Activity;
+import be.doji.productivity.trambucore.utils.SnapshotWriter;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sidecar log next to the todo file in which every change to the activities is appended as a single record: an upsert
+ * holds the todo lines of the saved activity and its sub activities, a delete holds the id of the removed activity.
+ * <p>
+ * Compaction moves the journal aside, writes a snapshot of all activities over the todo file on a background thread and
+ * drops the moved journal once the snapshot is written. Replaying a record twice gives the same result, so a journal
+ * that is left behind by an interrupted compaction is simply replayed on top of whatever the todo file contains.
+ */
+final class ActivityJournal {
+
+    static final String RECORD_UPSERT = "U ";
+    static final String RECORD_DELETE = "D ";
+    static final String JOURNAL_SUFFIX = ".journal";
+    static final String COMPACTING_SUFFIX = ".compacting";
+    static final int COMPACTION_THRESHOLD = 256;
+
+    private static final Logger LOG = LoggerFactory.getLogger(ActivityJournal.class);
+
+    private final Path todoFile;
+    private final Path journalFile;
+    private final Path compactingFile;
+    private final ThreadPoolExecutor compactor;
+
+    private volatile Future<?> pendingCompaction;
+    private int recordCount = 0;
+
+    ActivityJournal(Path todoFile) {
+        this.todoFile = todoFile;
+        this.journalFile = todoFile.resolveSibling(todoFile.getFileName() + JOURNAL_SUFFIX);
+        this.compactingFile = todoFile.resolveSibling(journalFile.getFileName() + COMPACTING_SUFFIX);
+        this.compactor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "activity-journal-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.compactor.allowCoreThreadTimeOut(true);
+    }
+
+    Path getJournalFile() {
+        return journalFile;
+    }
+
+    synchronized void appendUpsert(Activity activity) throws IOException {
+        StringBuilder record = new StringBuilder();
+        appendUpsertLines(activity, record);
+        append(record);
+    }
+
+    private void appendUpsertLines(Activity activity, StringBuilder record) {
+        record.append(RECORD_UPSERT).append(activity.toString()).append(System.lineSeparator());
+        recordCount++;
+        for (Activity subActivity : activity.getSubActivities()) {
+            appendUpsertLines(subActivity, record);
+        }
+    }
+
+    synchronized void appendDelete(UUID id) throws IOException {
+        recordCount++;
+        append(new StringBuilder(RECORD_DELETE).append(id).append(System.lineSeparator()));
+    }
+
+    private void append(CharSequence record) throws IOException {
+        Files.write(journalFile, record.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    synchronized boolean needsCompaction() {
+        return recordCount >= COMPACTION_THRESHOLD;
+    }
+
+    /**
+     * @return the records of an unfinished compaction followed by the records of the live journal, in the order they
+     * were written
+     */
+    synchronized List<String> readRecords() throws IOException {
+        try {
+            awaitCompaction();
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            LOG.warn("Replaying the journal of a failed compaction: " + e.getMessage());
+        }
+        List<String> records = new ArrayList<>();
+        for (Path file : Arrays.asList(compactingFile, journalFile)) {
+            if (Files.exists(file)) {
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    if (StringUtils.isNotBlank(line)) {
+                        records.add(line);
+                    }
+                }
+            }
+        }
+        recordCount = records.size();
+        return records;
+    }
+
+    /**
+     * Starts writing the given snapshot of the todo file in the background. Nothing happens while an earlier compaction
+     * is still running, the records written in the mean time are picked up by the next one.
+     */
+    synchronized void compact(List<String> snapshot) throws IOException {
+        Future<?> previousCompaction = pendingCompaction;
+        if (previousCompaction != null && !previousCompaction.isDone()) {
+            return;
+        }
+        if (!Files.exists(journalFile) && !Files.exists(compactingFile)) {
+            return;
+        }
+        moveJournalAside();
+        recordCount = 0;
+        pendingCompaction = compactor.submit(() -> {
+            writeSnapshot(snapshot);
+            return null;
+        });
+    }
+
+    private void moveJournalAside() throws IOException {
+        if (!Files.exists(journalFile)) {
+            return;
+        }
+        if (Files.exists(compactingFile)) {
+            Files.write(compactingFile, Files.readAllBytes(journalFile), StandardOpenOption.APPEND);
+            Files.delete(journalFile);
+        } else {
+            Files.move(journalFile, compactingFile, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private void writeSnapshot(List<String> snapshot) throws IOException {
+        LOG.info(">> Compacting activity journal into TODO.txt");
+        Files.copy(this.todoFile, this.todoFile.resolveSibling(this.todoFile.getFileName() + "_BAK"),
+                StandardCopyOption.REPLACE_EXISTING);
+        SnapshotWriter.write(this.todoFile, snapshot);
+        Files.deleteIfExists(compactingFile);
+        LOG.info(">> TODO.txt was compacted");
+    }
+
+    /**
+     * Blocks until the running compaction, if any, has finished writing the todo file.
+     */
+    void awaitCompaction() throws IOException {
+        Future<?> compaction = pendingCompaction;
+        if (compaction == null) {
+            return;
+        }
+        try {
+            compaction.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the activity journal compaction");
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to compact the activity journal", e.getCause());
+        }
+    }
+}
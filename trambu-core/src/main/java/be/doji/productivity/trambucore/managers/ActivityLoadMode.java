@@ -0,0 +1,23 @@
+package be.doji.productivity.trambucore.managers;
+
+/**
+ * Strategy used by the {@link ActivityManager} to read its todo file.
+ */
+public enum ActivityLoadMode {
+
+    /**
+     * Parse the file line by line on the calling thread.
+     */
+    SEQUENTIAL,
+
+    /**
+     * Parse line aligned chunks of the file on the common fork join pool and link sub activities afterwards.
+     */
+    PARALLEL,
+
+    /**
+     * Read only what is needed to list and sort activities up front. Tags, projects, the location and the warning
+     * period of an activity are decoded the first time they are asked for.
+     */
+    LAZY
+}
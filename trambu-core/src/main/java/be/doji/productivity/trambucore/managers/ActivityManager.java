@@ -3,80 +3,554 @@ package be.doji.productivity.trambucore.managers;
 import be.doji.productivity.trambucore.TrackMeConstants;
 import be.doji.productivity.trambucore.model.tasks.Activity;
 import be.doji.productivity.trambucore.parser.ActivityParser;
+import be.doji.productivity.trambucore.parser.ParallelActivityParser;
+import be.doji.productivity.trambucore.utils.SnapshotWriter;
+import be.doji.productivity.trambucore.utils.UuidMap;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.nio.file.*;
 import java.text.ParseException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.StampedLock;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
  * Created by Doji on 22/10/2017.
+ * <p>
+ * Safe to use from several threads. Changes take the write lock of a {@link StampedLock} and queries that walk the
+ * activities or indexes take the read lock, so readers never block each other. The grouped activities and the
+ * existing tags, projects and locations are published as read only snapshots that are loaded without locking as long
+ * as no change came in. The lock is not reentrant: public methods lock, the private methods they call never do.
  */
 public class ActivityManager {
 
     private static final Logger LOG = LoggerFactory.getLogger(ActivityManager.class);
     private List<Activity> activities = new ArrayList<>();
+    private final UuidMap<Activity> activitiesById = new UuidMap<>();
+    private final InvertedIndex tagIndex = new InvertedIndex(Activity::getTags);
+    private final InvertedIndex projectIndex = new InvertedIndex(Activity::getProjects);
+    private final SymbolCounts tagCounts = new SymbolCounts(Activity::getTags);
+    private final SymbolCounts projectCounts = new SymbolCounts(Activity::getProjects);
+    private final SymbolCounts locationCounts = new SymbolCounts(
+            activity -> activity.isSetLocation()?Collections.singletonList(activity.getLocation()):
+                    Collections.emptyList());
+    private final DeadlineView deadlineView = new DeadlineView();
     private Path todoFile;
+    private final ActivityLoadMode loadMode;
+    private ActivityJournal journal;
+    private ActivityArchive archive;
+    private WriteBehindScheduler writeBehind;
+    private boolean startupSnapshot = false;
+    private boolean completionDates = false;
+    private boolean watchFile = false;
+    private volatile boolean valuesIndexed = true;
+    private TodoFileWatcher fileWatcher;
+    private TodoFileState fileState;
+    private TodoFileState previousFileState;
+    private final List<ActivityChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    private volatile long treeVersion = 0;
+    private final StampedLock lock = new StampedLock();
 
     public ActivityManager(String fileLocation) throws IOException {
+        this(fileLocation, ActivityLoadMode.SEQUENTIAL);
+    }
+
+    public ActivityManager(String fileLocation, ActivityLoadMode loadMode) throws IOException {
+        this(fileLocation, loadMode, ActivityWriteMode.REWRITE);
+    }
+
+    public ActivityManager(String fileLocation, ActivityLoadMode loadMode, ActivityWriteMode writeMode)
+            throws IOException {
+        this.loadMode = loadMode;
         Path filePath = Paths.get(fileLocation);
         if (filePath.toFile().exists()) {
             this.todoFile = filePath;
         } else {
             this.todoFile = Files.createTempFile("todo", "txt");
         }
+        if (writeMode == ActivityWriteMode.JOURNAL) {
+            this.journal = new ActivityJournal(this.todoFile);
+        }
+        this.archive = new ActivityArchive(this.todoFile);
+    }
+
+    /**
+     * Collects changes and writes the todo file in the background, at most once per delay or as soon as the given
+     * number of changes is pending. Only applies when the todo file is rewritten: in journal mode every change is a
+     * single append already.
+     */
+    public void enableWriteBehind(long delayMillis, int dirtyThreshold) {
+        if (journal == null) {
+            this.writeBehind = new WriteBehindScheduler("todo", this::writeTodoSnapshot, delayMillis, dirtyThreshold);
+        }
+    }
+
+    /**
+     * Keeps a binary snapshot of the activities next to the todo file after every write, and reads activities from it
+     * instead of parsing the todo file as long as the todo file was not changed since.
+     */
+    public void enableStartupSnapshot() {
+        long stamp = lock.writeLock();
+        try {
+            this.startupSnapshot = true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Gives activities that are saved as completed the current date as completion date, which is written to the todo
+     * file as a {@code done:} field so {@link #archiveCompleted(Duration)} can tell how old they are. Other todo.txt
+     * tools do not know this field, so it is only turned on when completed activities are archived.
+     */
+    public void enableCompletionDates() {
+        long stamp = lock.writeLock();
+        try {
+            this.completionDates = true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
     public void readActivitiesFromFile() throws IOException, ParseException {
+        long stamp = lock.writeLock();
+        try {
+            readActivities();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void readActivities() throws IOException, ParseException {
+        if (journal != null) {
+            journal.awaitCompaction();
+        }
+        List<Activity> activitiesInFileOrder = readActivitiesFromSnapshot();
+        if (activitiesInFileOrder != null) {
+            LOG.debug("Activities read from startup snapshot");
+        } else if (loadMode == ActivityLoadMode.PARALLEL) {
+            activitiesInFileOrder = readActivitiesInParallel();
+        } else if (loadMode == ActivityLoadMode.LAZY) {
+            activitiesInFileOrder = readActivitiesLazily();
+        } else {
+            activitiesInFileOrder = readActivitiesSequentially();
+        }
+        if (watchFile) {
+            recordFileState(Files.readAllLines(this.todoFile), activitiesInFileOrder);
+        }
+        if (journal != null) {
+            replayJournal();
+        }
+    }
+
+    private List<Activity> readActivitiesSequentially() throws IOException, ParseException {
         activities = new ArrayList<>();
+        clearIndexes();
+        List<Activity> activitiesInFileOrder = new ArrayList<>();
         for (String line : Files.readAllLines(this.todoFile)) {
             if (StringUtils.isNotBlank(line)) {
-                addActivity(line);
+                Activity activity = ActivityParser.mapStringToActivity(line);
+                addActivity(activity);
+                activitiesInFileOrder.add(activity);
             }
         }
+        return activitiesInFileOrder;
+    }
+
+    /*
+     * Indexing tags, projects and locations would decode every activity, it is left until one of them is looked up.
+     */
+    private List<Activity> readActivitiesLazily() throws IOException, ParseException {
+        List<Activity> activitiesInFileOrder = ActivityParser
+                .mapContentToLazyActivities(Files.readAllBytes(this.todoFile));
+        activities = new ArrayList<>();
+        clearIndexes();
+        valuesIndexed = false;
+        for (Activity activity : activitiesInFileOrder) {
+            addActivity(activity);
+        }
+        return activitiesInFileOrder;
+    }
+
+    private List<Activity> readActivitiesInParallel() throws IOException, ParseException {
+        List<Activity> activitiesInFileOrder = ParallelActivityParser.parse(Files.readAllBytes(this.todoFile));
+        linkActivities(activitiesInFileOrder);
+        return activitiesInFileOrder;
+    }
+
+    /*
+     * A snapshot that can not be decoded is ignored, the todo file is parsed instead.
+     */
+    private List<Activity> readActivitiesFromSnapshot() throws IOException {
+        if (!startupSnapshot) {
+            return null;
+        }
+        Optional<DataInputStream> snapshot = StartupSnapshot.read(this.todoFile);
+        if (!snapshot.isPresent()) {
+            return null;
+        }
+        try {
+            List<Activity> activitiesInFileOrder = StartupSnapshot.decodeActivities(snapshot.get());
+            linkActivities(activitiesInFileOrder);
+            return activitiesInFileOrder;
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.warn("Ignoring unreadable startup snapshot of " + this.todoFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * Watches the todo file for changes made outside of the application and applies them as they come in, see
+     * {@link #reloadExternalChanges()}. To be enabled before the activities are read. Does not apply in journal mode,
+     * where the todo file alone does not hold all activities.
+     */
+    public void enableFileWatcher() throws IOException {
+        long stamp = lock.writeLock();
+        try {
+            if (journal == null && fileWatcher == null) {
+                this.watchFile = true;
+                this.fileWatcher = new TodoFileWatcher(this.todoFile, this::reloadExternalChangesLogged);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void addActivityChangeListener(ActivityChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    public void removeActivityChangeListener(ActivityChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    private void reloadExternalChangesLogged() {
+        try {
+            reloadExternalChanges();
+        } catch (IOException | ParseException e) {
+            LOG.error("Error reading changes to " + this.todoFile, e);
+        }
+    }
+
+    /**
+     * Applies changes made to the todo file outside of the application. Only lines that were not in the file when it
+     * was last read or written are parsed, their activities replace the saved ones with the same id. Activities whose
+     * line is gone are removed, their sub activities are kept as root activities. When the lines of the file are not
+     * known the whole file is read again.
+     * <p>
+     * The file is read, compared and parsed without holding the lock, the write lock is only taken to apply the
+     * changes. When the manager wrote the file in the mean time the file is read again.
+     */
+    public void reloadExternalChanges() throws IOException, ParseException {
+        boolean applied = false;
+        while (!applied) {
+            applied = tryReloadExternalChanges();
+        }
+    }
+
+    /*
+     * Returns false when the known state of the file changed while the file was being compared.
+     */
+    private boolean tryReloadExternalChanges() throws IOException, ParseException {
+        TodoFileState knownState;
+        TodoFileState knownPreviousState;
+        long stamp = lock.readLock();
+        try {
+            knownState = fileState;
+            knownPreviousState = previousFileState;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        if (knownState == null) {
+            return reloadAllActivities();
+        }
+
+        List<String> lines = Files.readAllLines(this.todoFile);
+        TodoFileState.Diff diff = knownState.diff(lines);
+        if (diff.isEmpty() && knownPreviousState == null) {
+            return true;
+        }
+        if (!diff.isEmpty() && knownPreviousState != null && knownPreviousState.diff(lines).isEmpty()) {
+            return true;
+        }
+        List<Activity> changedActivities = new ArrayList<>();
+        for (String line : diff.getChangedLines()) {
+            changedActivities.add(ActivityParser.mapStringToActivity(line));
+        }
+        Set<UUID> removedIds = new LinkedHashSet<>(diff.getRemovedIds());
+        changedActivities.forEach(activity -> removedIds.remove(activity.getId()));
+
+        stamp = lock.writeLock();
+        try {
+            if (fileState != knownState || previousFileState != knownPreviousState) {
+                return false;
+            }
+            previousFileState = null;
+            if (diff.isEmpty()) {
+                return true;
+            }
+            changedActivities.forEach(this::replaceActivity);
+            for (UUID removedId : removedIds) {
+                findSavedActivityById(removedId).ifPresent(this::detachKeepingSubActivities);
+            }
+            fileState = diff.apply(changedActivities);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        fireActivitiesChanged(changedActivities, removedIds);
+        return true;
+    }
+
+    private boolean reloadAllActivities() throws IOException, ParseException {
+        List<Activity> changedActivities;
+        Set<UUID> removedIds = new HashSet<>();
+        long stamp = lock.writeLock();
+        try {
+            if (fileState != null) {
+                return false;
+            }
+            activitiesById.forEach((id, activity) -> removedIds.add(id));
+            readActivities();
+            changedActivities = getActivitiesInFileOrder();
+            removedIds.removeIf(activitiesById::containsKey);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        fireActivitiesChanged(changedActivities, removedIds);
+        return true;
+    }
+
+    private void fireActivitiesChanged(List<Activity> changedActivities, Set<UUID> removedIds) {
+        for (ActivityChangeListener listener : changeListeners) {
+            listener.activitiesChanged(changedActivities, removedIds);
+        }
+    }
+
+    private void detachKeepingSubActivities(Activity activity) {
+        List<Activity> subActivities = new ArrayList<>(activity.getSubActivities());
+        detachActivity(activity);
+        for (Activity subActivity : subActivities) {
+            addActivity(subActivity);
+        }
+    }
+
+    /*
+     * The previous state is kept until the file is seen with the new lines, so reading the file just before it is
+     * replaced is not taken for an outside change.
+     */
+    private void recordFileState(List<String> lines, List<Activity> activitiesInFileOrder) {
+        previousFileState = fileState;
+        fileState = TodoFileState.of(lines, activitiesInFileOrder).orElse(null);
+    }
+
+    /*
+     * Parent links are resolved in file order: an activity only becomes a sub activity when its parent appears earlier
+     * in the file, exactly like the sequential loader.
+     */
+    private void linkActivities(List<Activity> parsedActivities) {
+        List<Activity> rootActivities = new ArrayList<>();
+        Map<UUID, Activity> linkedActivities = new HashMap<>();
+        for (Activity activity : parsedActivities) {
+            Activity parent = null;
+            if (StringUtils.isNotBlank(activity.getParentActivity())) {
+                parent = linkedActivities.get(UUID.fromString(activity.getParentActivity()));
+            }
+            if (parent != null) {
+                parent.addSubTask(activity);
+            } else {
+                rootActivities.add(activity);
+            }
+            linkedActivities.putIfAbsent(activity.getId(), activity);
+        }
+        activities = rootActivities;
+        clearIndexes();
+        for (Activity rootActivity : rootActivities) {
+            addToIndex(rootActivity);
+            deadlineView.add(rootActivity);
+        }
+    }
+
+    private void replayJournal() throws IOException, ParseException {
+        for (String record : journal.readRecords()) {
+            if (record.startsWith(ActivityJournal.RECORD_UPSERT)) {
+                replaceActivity(
+                        ActivityParser.mapStringToActivity(record.substring(ActivityJournal.RECORD_UPSERT.length())));
+            } else if (record.startsWith(ActivityJournal.RECORD_DELETE)) {
+                findSavedActivityById(record.substring(ActivityJournal.RECORD_DELETE.length()).trim())
+                        .ifPresent(this::detachActivity);
+            }
+        }
+    }
+
+    /*
+     * Sub activities of the replaced activity are kept: their own upsert records follow the one of their parent.
+     */
+    private void replaceActivity(Activity activity) {
+        Optional<Activity> savedActivity = findSavedActivityById(activity.getId());
+        if (savedActivity.isPresent()) {
+            detachActivity(savedActivity.get());
+            activity.setSubActivities(savedActivity.get().getSubActivities());
+        }
+        addActivity(activity);
+    }
+
+    private void detachActivity(Activity savedActivity) {
+        if (this.activities.remove(savedActivity)) {
+            deadlineView.remove(savedActivity);
+        } else {
+            findSavedActivityById(savedActivity.getParentActivity())
+                    .ifPresent(parent -> parent.removeSubActivity(savedActivity));
+        }
+        removeFromIndex(savedActivity);
+    }
+
+    /*
+     * Ids are unique in files written by the application. Should a file contain the same id twice anyway, the index
+     * keeps the activity that was added first.
+     */
+    private void addToIndex(Activity activity) {
+        treeVersion++;
+        activitiesById.putIfAbsent(activity.getId(), activity);
+        if (valuesIndexed) {
+            addValuesToIndex(activity);
+        }
+        for (Activity subActivity : activity.getSubActivities()) {
+            addToIndex(subActivity);
+        }
+    }
+
+    private void addValuesToIndex(Activity activity) {
+        tagIndex.add(activity);
+        projectIndex.add(activity);
+        tagCounts.add(activity);
+        projectCounts.add(activity);
+        locationCounts.add(activity);
+    }
+
+    /*
+     * After a lazy load the tags, projects and locations are only indexed once they are looked up for the first time.
+     */
+    private void indexValues() {
+        if (valuesIndexed) {
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            if (!valuesIndexed) {
+                valuesIndexed = true;
+                for (Activity activity : getActivitiesInFileOrder()) {
+                    addValuesToIndex(activity);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void clearIndexes() {
+        treeVersion++;
+        activitiesById.clear();
+        valuesIndexed = true;
+        tagIndex.clear();
+        projectIndex.clear();
+        tagCounts.clear();
+        projectCounts.clear();
+        locationCounts.clear();
+        deadlineView.clear();
+    }
+
+    private void removeFromIndex(Activity activity) {
+        treeVersion++;
+        activitiesById.remove(activity.getId(), activity);
+        tagIndex.remove(activity);
+        projectIndex.remove(activity);
+        tagCounts.remove(activity);
+        projectCounts.remove(activity);
+        locationCounts.remove(activity);
+        for (Activity subActivity : activity.getSubActivities()) {
+            removeFromIndex(subActivity);
+        }
     }
 
     public void addActivity(String activity) throws ParseException {
-        addActivity(ActivityParser.mapStringToActivity(activity));
+        Activity parsedActivity = ActivityParser.mapStringToActivity(activity);
+        long stamp = lock.writeLock();
+        try {
+            addActivity(parsedActivity);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
     private void addActivity(Activity activity) {
         String parentActivity = activity.getParentActivity();
         if (StringUtils.isNotBlank(parentActivity)) {
-            Optional<Activity> parent = getSavedActivityById(parentActivity);
+            Optional<Activity> parent = findSavedActivityById(parentActivity);
             if (parent.isPresent()) {
                 parent.get().addSubTask(activity);
             } else {
-                this.activities.add(activity);
+                addRootActivity(activity);
             }
         } else {
-            this.activities.add(activity);
+            addRootActivity(activity);
         }
+        addToIndex(activity);
+    }
+
+    private void addRootActivity(Activity activity) {
+        this.activities.add(activity);
+        deadlineView.add(activity);
+    }
+
+    /**
+     * @return a number that changes whenever activities are added to, moved in or removed from the tree
+     */
+    long getTreeVersion() {
+        return treeVersion;
     }
 
     List<Activity> getActivities() {
-        ArrayList<Activity> savedActivities = new ArrayList<>(this.activities);
-        return sortActivities(savedActivities);
+        return read(this::getSortedActivities);
     }
 
-    private List<Activity> getAllActivities() {
-        return getAllActivities(this.activities);
+    private List<Activity> getSortedActivities() {
+        return sortActivities(this.activities);
+    }
+
+    /*
+     * The collections behind the indexes are not safe to walk while they are changed, queries always hold the read
+     * lock.
+     */
+    private <T> T read(Supplier<T> query) {
+        long stamp = lock.readLock();
+        try {
+            return query.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
     }
 
-    private List<Activity> getAllActivities(List<Activity> parentActivities) {
-        List<Activity> savedActivities = new ArrayList<>();
-        for (Activity activity : parentActivities) {
-            savedActivities.add(activity);
-            savedActivities.addAll(getAllActivities(activity.getSubActivities()));
+    /*
+     * Loads a published snapshot without locking. The load is a single read of a volatile field holding a read only
+     * value, so it is used as long as it exists and no change came in meanwhile. Otherwise the query builds it under
+     * the read lock.
+     */
+    private <T> T readSnapshot(Supplier<T> snapshot, Supplier<T> query) {
+        long stamp = lock.tryOptimisticRead();
+        T published = snapshot.get();
+        if (published != null && stamp != 0 && lock.validate(stamp)) {
+            return published;
         }
-        savedActivities = sortActivities(savedActivities);
-        return savedActivities;
+        return read(query);
     }
 
     private List<Activity> sortActivities(List<Activity> savedActivities) {
@@ -94,28 +568,55 @@ public class ActivityManager {
         return sortedActivities;
     }
 
+    /*
+     * The index is case insensitive, tags themselves are matched exactly. Checking the candidates again also leaves out
+     * activities whose tags were changed after they were last saved.
+     */
     public Map<Date, List<Activity>> getActivitiesByTag(String tag) {
-        List<Activity> activitiesByTag = this.getAllActivities().stream()
-                .filter(activity -> activity.getTags().contains(tag)).collect(Collectors.toList());
-        return groupByDate(activitiesByTag);
+        indexValues();
+        return read(() -> {
+            List<Activity> activitiesByTag = tagIndex.get(tag).stream()
+                    .filter(activity -> activity.getTags().contains(tag)).collect(Collectors.toList());
+            return groupByDate(sortActivities(activitiesByTag));
+        });
     }
 
     public Map<Date, List<Activity>> getActivitiesByProject(String project) {
-
-        List<Activity> activitiesByProject = this.getAllActivities().stream()
-                .filter(activity -> !activity.getProjects().stream()
-                        .filter(project1 -> StringUtils.equalsIgnoreCase(project1, project))
-                        .collect(Collectors.toList()).isEmpty()).collect(Collectors.toList());
-        return groupByDate(activitiesByProject);
+        indexValues();
+        return read(() -> {
+            List<Activity> activitiesByProject = projectIndex.get(project).stream()
+                    .filter(activity -> activity.getProjects().stream()
+                            .anyMatch(project1 -> StringUtils.equalsIgnoreCase(project1, project)))
+                    .collect(Collectors.toList());
+            return groupByDate(sortActivities(activitiesByProject));
+        });
     }
 
     public Activity save(Activity activity) throws IOException, ParseException {
+        long stamp = lock.writeLock();
+        try {
+            return saveActivity(activity);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
 
-        Optional<Activity> savedActivity = getSavedActivityById(activity.getId().toString());
+    private Activity saveActivity(Activity activity) throws IOException, ParseException {
+        Optional<Activity> savedActivity = findSavedActivityById(activity.getId());
 
-        savedActivity.ifPresent(activity1 -> this.activities.remove(activity1));
+        if (completionDates && activity.isCompleted() && activity.getCompletionDate() == null) {
+            activity.setCompletionDate(new Date());
+        }
+        savedActivity.ifPresent(this::detachActivity);
         this.addActivity(activity);
-        writeAllToFileAndReload();
+        if (journal != null) {
+            journal.appendUpsert(activity);
+            compactJournalIfNeeded();
+        } else if (writeBehind != null) {
+            writeBehind.markDirty();
+        } else {
+            writeAllToFileAndReload();
+        }
 
         Activity matchingActivity = null;
         for (Activity reloadedAct : this.activities) {
@@ -128,11 +629,30 @@ public class ActivityManager {
     }
 
     public Optional<Activity> getSavedActivityById(String id) {
-        return findActivityInList(id, this.activities, ((activity, s) -> activity.getId().equals(UUID.fromString(id))));
+        if (StringUtils.isBlank(id)) {
+            return Optional.empty();
+        }
+        return getSavedActivityById(UUID.fromString(id));
+    }
+
+    public Optional<Activity> getSavedActivityById(UUID id) {
+        return read(() -> findSavedActivityById(id));
+    }
+
+    private Optional<Activity> findSavedActivityById(String id) {
+        if (StringUtils.isBlank(id)) {
+            return Optional.empty();
+        }
+        return findSavedActivityById(UUID.fromString(id));
+    }
+
+    private Optional<Activity> findSavedActivityById(UUID id) {
+        return Optional.ofNullable(activitiesById.get(id));
     }
 
     public Optional<Activity> getSavedActivityByName(String name) {
-        return findActivityInList(name, this.activities, ((activity, s) -> StringUtils.equals(activity.getName(), s)));
+        return read(() -> findActivityInList(name, this.activities,
+                ((activity, s) -> StringUtils.equals(activity.getName(), s))));
     }
 
     private Optional<Activity> findActivityInList(String name, List<Activity> activities,
@@ -157,28 +677,33 @@ public class ActivityManager {
     private void writeAllToFileAndReload() throws IOException, ParseException {
         LOG.info(">> Updating TODO.txt");
         backUpTodoFile();
-        Files.write(this.todoFile, "".getBytes());
-        for (Activity activity : this.getActivities()) {
-            writeActivityToFile(activity);
-        }
+        SnapshotWriter.write(this.todoFile, getFileLines());
         LOG.info(">> TODO.txt was updated");
-        this.readActivitiesFromFile();
+        this.readActivities();
+        if (startupSnapshot) {
+            List<Activity> activitiesInFileOrder = getActivitiesInFileOrder();
+            StartupSnapshot.writeOrDiscard(this.todoFile, StartupSnapshot.tryEncode(this.todoFile,
+                    () -> StartupSnapshot.encodeActivities(activitiesInFileOrder)));
+        }
     }
 
-    private void writeActivityToFile(Activity activity) throws IOException {
-        Files.write(this.todoFile, (activity.toString() + System.lineSeparator()).getBytes(),
-                StandardOpenOption.APPEND);
-        for (Activity subActivity : activity.getSubActivities()) {
-            writeActivityToFile(subActivity);
+    public void delete(Activity activity) throws IOException, ParseException {
+        long stamp = lock.writeLock();
+        try {
+            deleteActivity(activity);
+        } finally {
+            lock.unlockWrite(stamp);
         }
     }
 
-    public void delete(Activity activity) throws IOException, ParseException {
+    private void deleteActivity(Activity activity) throws IOException, ParseException {
         for (Iterator<Activity> it = this.activities.iterator(); it.hasNext(); ) {
             Activity savedActivity = it.next();
             if (savedActivity.getId().equals(activity.getId())) {
                 it.remove();
-                writeAllToFileAndReload();
+                deadlineView.remove(savedActivity);
+                removeFromIndex(savedActivity);
+                persistDelete(activity.getId());
                 return;
             } else {
                 if (deleteInSubactivities(savedActivity, activity.getId())) {
@@ -186,7 +711,6 @@ public class ActivityManager {
                 }
             }
         }
-
     }
 
     private boolean deleteInSubactivities(Activity parentActivity, UUID id) throws IOException, ParseException {
@@ -194,7 +718,8 @@ public class ActivityManager {
             Activity savedActivity = it.next();
             if (savedActivity.getId().equals(id)) {
                 parentActivity.removeSubActivity(savedActivity);
-                writeAllToFileAndReload();
+                removeFromIndex(savedActivity);
+                persistDelete(id);
                 return true;
             } else {
                 if (deleteInSubactivities(savedActivity, id)) {
@@ -205,21 +730,297 @@ public class ActivityManager {
         return false;
     }
 
+    private void persistDelete(UUID id) throws IOException, ParseException {
+        persistDelete(Collections.singletonList(id));
+    }
+
+    private void persistDelete(List<UUID> ids) throws IOException, ParseException {
+        if (journal != null) {
+            for (UUID id : ids) {
+                journal.appendDelete(id);
+            }
+            compactJournalIfNeeded();
+        } else if (writeBehind != null) {
+            writeBehind.markDirty();
+        } else {
+            writeAllToFileAndReload();
+        }
+    }
+
+    /**
+     * Moves completed root activities out of the todo file into the archive, once they and all of their sub activities
+     * were completed longer ago than the given age. Completed activities without a completion date are given the
+     * current date, so they are archived once that is long enough ago.
+     *
+     * @return the archived activities
+     */
+    public List<Activity> archiveCompleted(Duration minimumAge) throws IOException, ParseException {
+        long stamp = lock.writeLock();
+        try {
+            return archiveCompletedActivities(minimumAge);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private List<Activity> archiveCompletedActivities(Duration minimumAge) throws IOException, ParseException {
+        Date now = new Date();
+        Date cutoff = new Date(now.getTime() - minimumAge.toMillis());
+        List<Activity> toArchive = new ArrayList<>();
+        List<Activity> completionDatesAdded = new ArrayList<>();
+        for (Activity rootActivity : this.activities) {
+            if (addMissingCompletionDates(rootActivity, now)) {
+                completionDatesAdded.add(rootActivity);
+            } else if (isCompletedBefore(rootActivity, cutoff)) {
+                toArchive.add(rootActivity);
+            }
+        }
+
+        if (!toArchive.isEmpty()) {
+            archive.append(toArchive);
+            List<UUID> archivedIds = new ArrayList<>();
+            for (Activity archivedActivity : toArchive) {
+                detachActivity(archivedActivity);
+                archivedIds.add(archivedActivity.getId());
+            }
+            persistDelete(archivedIds);
+        }
+        if (!completionDatesAdded.isEmpty() && (journal != null || toArchive.isEmpty())) {
+            persistCompletionDates(completionDatesAdded);
+        }
+        return toArchive;
+    }
+
+    private boolean addMissingCompletionDates(Activity activity, Date now) {
+        boolean added = false;
+        if (activity.isCompleted() && activity.getCompletionDate() == null) {
+            activity.setCompletionDate(now);
+            added = true;
+        }
+        for (Activity subActivity : activity.getSubActivities()) {
+            added |= addMissingCompletionDates(subActivity, now);
+        }
+        return added;
+    }
+
+    private boolean isCompletedBefore(Activity activity, Date cutoff) {
+        if (!activity.isCompleted() || !activity.getCompletionDate().before(cutoff)) {
+            return false;
+        }
+        for (Activity subActivity : activity.getSubActivities()) {
+            if (!isCompletedBefore(subActivity, cutoff)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * When the todo file was rewritten for archived activities the new completion dates were written along.
+     */
+    private void persistCompletionDates(List<Activity> rootActivities) throws IOException, ParseException {
+        if (journal != null) {
+            for (Activity rootActivity : rootActivities) {
+                journal.appendUpsert(rootActivity);
+            }
+            compactJournalIfNeeded();
+        } else if (writeBehind != null) {
+            writeBehind.markDirty();
+        } else {
+            writeAllToFileAndReload();
+        }
+    }
+
+    /**
+     * @return the archived root activities that are not back in the todo file, reading the archive the first time
+     */
+    public List<Activity> getArchivedActivities() throws IOException, ParseException {
+        long stamp = lock.writeLock();
+        try {
+            List<Activity> archivedActivities = archive.getArchivedActivities();
+            archivedActivities.removeIf(activity -> activitiesById.containsKey(activity.getId()));
+            return archivedActivities;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return the archived activity, only the part of the archive it was written in is read
+     */
+    public Optional<Activity> getArchivedActivityById(UUID id) throws IOException, ParseException {
+        long stamp = lock.writeLock();
+        try {
+            if (activitiesById.containsKey(id)) {
+                return Optional.empty();
+            }
+            return archive.getArchivedActivityById(id);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void compactJournalIfNeeded() throws IOException {
+        if (journal.needsCompaction()) {
+            journal.compact(getFileLines());
+        }
+    }
+
+    /**
+     * Folds the journal back into the todo file and waits until the todo file is written. Does nothing when the
+     * manager does not write a journal. The snapshot is taken and the journal moved aside under the write lock, a
+     * change saved in between would otherwise be dropped along with the moved journal without being in the snapshot.
+     */
+    public void compactJournal() throws IOException {
+        if (journal != null) {
+            journal.awaitCompaction();
+            long stamp = lock.writeLock();
+            try {
+                journal.compact(getFileLines());
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            journal.awaitCompaction();
+        }
+    }
+
+    /**
+     * Writes the changes that are still waiting for the write behind scheduler.
+     */
+    public void flush() throws IOException {
+        if (writeBehind != null) {
+            writeBehind.flush();
+        }
+    }
+
+    /**
+     * Writes pending changes and folds the journal into the todo file, to be called when the application stops.
+     */
+    public void shutdown() throws IOException {
+        long stamp = lock.writeLock();
+        try {
+            if (fileWatcher != null) {
+                fileWatcher.close();
+                fileWatcher = null;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        if (writeBehind != null) {
+            writeBehind.shutdown();
+        }
+        compactJournal();
+    }
+
+    private void writeTodoSnapshot() throws IOException {
+        List<String> lines;
+        byte[] startupSnapshotBody = null;
+        boolean writeStartupSnapshot;
+        long stamp = lock.writeLock();
+        try {
+            List<Activity> activitiesInFileOrder = getActivitiesInFileOrder();
+            lines = toFileLines(activitiesInFileOrder);
+            writeStartupSnapshot = startupSnapshot;
+            if (watchFile) {
+                recordFileState(lines, activitiesInFileOrder);
+            }
+            if (startupSnapshot) {
+                startupSnapshotBody = StartupSnapshot.tryEncode(this.todoFile,
+                        () -> StartupSnapshot.encodeActivities(activitiesInFileOrder));
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        LOG.info(">> Updating TODO.txt");
+        backUpTodoFile();
+        SnapshotWriter.write(this.todoFile, lines);
+        LOG.info(">> TODO.txt was updated");
+        if (writeStartupSnapshot) {
+            StartupSnapshot.writeOrDiscard(this.todoFile, startupSnapshotBody);
+        }
+    }
+
+    private List<String> getFileLines() {
+        return toFileLines(getActivitiesInFileOrder());
+    }
+
+    private static List<String> toFileLines(List<Activity> activitiesInFileOrder) {
+        List<String> lines = new ArrayList<>(activitiesInFileOrder.size());
+        for (Activity activity : activitiesInFileOrder) {
+            lines.add(activity.toString());
+        }
+        return lines;
+    }
+
+    private List<Activity> getActivitiesInFileOrder() {
+        List<Activity> activitiesInFileOrder = new ArrayList<>();
+        for (Activity activity : getSortedActivities()) {
+            addInFileOrder(activity, activitiesInFileOrder);
+        }
+        return activitiesInFileOrder;
+    }
+
+    private void addInFileOrder(Activity activity, List<Activity> activitiesInFileOrder) {
+        activitiesInFileOrder.add(activity);
+        for (Activity subActivity : activity.getSubActivities()) {
+            addInFileOrder(subActivity, activitiesInFileOrder);
+        }
+    }
+
     private void backUpTodoFile() throws IOException {
         Files.copy(this.todoFile, this.todoFile.resolveSibling(this.todoFile.getFileName() + "_BAK"),
                 StandardCopyOption.REPLACE_EXISTING);
     }
 
     public void updateFileLocation(String location) throws IOException, ParseException {
-        Path filePath = Paths.get(location);
-        if (filePath.toFile().exists()) {
-            this.todoFile = filePath;
+        flush();
+        long stamp = lock.writeLock();
+        try {
+            Path filePath = Paths.get(location);
+            if (filePath.toFile().exists()) {
+                this.todoFile = filePath;
+            }
+            if (journal != null) {
+                journal.awaitCompaction();
+                journal = new ActivityJournal(this.todoFile);
+            }
+            this.archive = new ActivityArchive(this.todoFile);
+            this.fileState = null;
+            this.previousFileState = null;
+            if (fileWatcher != null) {
+                fileWatcher.close();
+                fileWatcher = new TodoFileWatcher(this.todoFile, this::reloadExternalChangesLogged);
+            }
+            this.readActivities();
+        } finally {
+            lock.unlockWrite(stamp);
         }
-        this.readActivitiesFromFile();
     }
 
     public Map<Date, List<Activity>> getActivitiesWithDateHeader() {
-        return groupByDate(this.getActivities());
+        return readSnapshot(deadlineView::getCachedGroupedActivities, deadlineView::getGroupedActivities);
+    }
+
+    /**
+     * @param includeArchived whether archived activities are grouped in as well, which reads the archive the first
+     *                        time
+     */
+    public Map<Date, List<Activity>> getActivitiesWithDateHeader(boolean includeArchived) {
+        Map<Date, List<Activity>> groupedActivities = getActivitiesWithDateHeader();
+        if (includeArchived) {
+            try {
+                List<Activity> archivedActivities = sortActivities(getArchivedActivities());
+                Map<Date, List<Activity>> allGroups = new TreeMap<>();
+                groupedActivities.forEach((date, onDate) -> allGroups.put(date, new ArrayList<>(onDate)));
+                groupByDate(archivedActivities).forEach(
+                        (date, archivedOnDate) -> allGroups.computeIfAbsent(date, key -> new ArrayList<>())
+                                .addAll(archivedOnDate));
+                return allGroups;
+            } catch (IOException | ParseException e) {
+                LOG.error("Error reading archived activities", e);
+            }
+        }
+        return groupedActivities;
     }
 
     private Map<Date, List<Activity>> groupByDate(List<Activity> activities) {
@@ -241,16 +1042,25 @@ public class ActivityManager {
     }
 
     public void addActivityAsSub(Activity toBeSub, Activity superActivity) {
-        if (toBeSub.getId() == superActivity.getId() || getParentIds(superActivity).contains(toBeSub.getId())) {
+        long stamp = lock.writeLock();
+        try {
+            moveActivityUnder(toBeSub, superActivity);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void moveActivityUnder(Activity toBeSub, Activity superActivity) {
+        if (toBeSub.getId().equals(superActivity.getId()) || getParentIds(superActivity).contains(toBeSub.getId())) {
             return;
         }
 
-        Optional<Activity> savedToBeSub = getSavedActivityById(toBeSub.getId().toString());
-        Optional<Activity> savedToBeSuper = getSavedActivityById(superActivity.getId().toString());
+        Optional<Activity> savedToBeSub = findSavedActivityById(toBeSub.getId());
+        Optional<Activity> savedToBeSuper = findSavedActivityById(superActivity.getId());
         if (savedToBeSuper.isPresent() && savedToBeSub.isPresent()) {
+            detachActivity(savedToBeSub.get());
             savedToBeSub.get().setParentActivity(savedToBeSuper.get().getId().toString());
-            savedToBeSuper.get().addSubTask(savedToBeSub.get());
-            this.activities.remove(savedToBeSub.get());
+            addActivity(savedToBeSub.get());
         }
     }
 
@@ -259,16 +1069,18 @@ public class ActivityManager {
         Activity activityToCheck = superActivity;
         while (StringUtils.isNotBlank(activityToCheck.getParentActivity())) {
             parents.add(activityToCheck.getId());
-            Optional<Activity> savedActivityById = getSavedActivityById(activityToCheck.getParentActivity());
+            Optional<Activity> savedActivityById = findSavedActivityById(activityToCheck.getParentActivity());
             if (savedActivityById.isPresent()) {
                 activityToCheck = savedActivityById.get();
+            } else {
+                break;
             }
         }
         return parents;
     }
 
     public List<String> getAllActivityNames() {
-        return getRecursiveActivityNames(this.activities);
+        return read(() -> getRecursiveActivityNames(this.activities));
     }
 
     private List<String> getRecursiveActivityNames(List<Activity> activities) {
@@ -285,26 +1097,21 @@ public class ActivityManager {
         return props;
     }
 
-    private List<String> getRecursiveActivityListProperty(List<Activity> activities,
-            Function<Activity, List<String>> propertyMapping) {
-        ArrayList<String> props = new ArrayList<>();
-        for (Activity activity : activities) {
-            props.addAll(getRecursiveActivityListProperty(activity.getSubActivities(), propertyMapping));
-            props.addAll(propertyMapping.apply(activity));
-        }
-        return props;
-    }
-
-    public List<String> getExistingTags() {
-        return getRecursiveActivityListProperty(this.activities, Activity::getTags);
+    /**
+     * @return the distinct tags of the saved activities, sorted
+     */
+    public SortedSet<String> getExistingTags() {
+        indexValues();
+        return readSnapshot(tagCounts::getCachedValues, tagCounts::getValues);
     }
 
-    public List<String> getExistingProjects() {
-        return getRecursiveActivityListProperty(this.activities, Activity::getProjects);
+    public SortedSet<String> getExistingProjects() {
+        indexValues();
+        return readSnapshot(projectCounts::getCachedValues, projectCounts::getValues);
     }
 
-    public List<String> getExistingLocations() {
-        return getRecursiveActivityProperty(this.activities, Activity::getLocation).stream().filter(Objects::nonNull)
-                .collect(Collectors.toList());
+    public SortedSet<String> getExistingLocations() {
+        indexValues();
+        return readSnapshot(locationCounts::getCachedValues, locationCounts::getValues);
     }
 }
@@ -0,0 +1,18 @@
+package be.doji.productivity.trambucore.managers;
+
+/**
+ * Strategy used by the {@link ActivityManager} to persist changes to its todo file.
+ */
+public enum ActivityWriteMode {
+
+    /**
+     * Rewrite the complete todo file after every change and read it back in.
+     */
+    REWRITE,
+
+    /**
+     * Append every change to a journal next to the todo file and fold the journal back into the todo file in the
+     * background once it grows.
+     */
+    JOURNAL
+}
@@ -0,0 +1,123 @@
+package be.doji.productivity.trambucore.managers;
+
+import be.doji.productivity.trambucore.TrackMeConstants;
+import be.doji.productivity.trambucore.model.tasks.Activity;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Top level activities grouped by deadline. The groups are updated when an activity is added or removed, so the grouped
+ * view can be handed out without sorting. Activities without a deadline are grouped under
+ * {@link TrackMeConstants#getDefaultDateHeader()} and ordered by priority, the same order the sorted activity list
+ * gives them.
+ * <p>
+ * The grouped view is built once and handed out read only until the next change, so repeated refreshes share it.
+ */
+final class DeadlineView {
+
+    private final long defaultDateHeader = TrackMeConstants.getDefaultDateHeader().getTime();
+
+    private final TreeMap<Long, Set<Activity>> datedActivities = new TreeMap<>();
+    private final TreeMap<String, Set<Activity>> undatedActivities = new TreeMap<>();
+    private final Map<Activity, Long> deadlinePlacements = new IdentityHashMap<>();
+    private final Map<Activity, String> priorityPlacements = new IdentityHashMap<>();
+    private volatile Map<Date, List<Activity>> groupedActivities;
+
+    void add(Activity activity) {
+        if (deadlinePlacements.containsKey(activity) || priorityPlacements.containsKey(activity)) {
+            return;
+        }
+        groupedActivities = null;
+        Date deadline = activity.getDeadline();
+        if (deadline == null) {
+            String priority = StringUtils.defaultString(activity.getPriority());
+            priorityPlacements.put(activity, priority);
+            undatedActivities.computeIfAbsent(priority, key -> new LinkedHashSet<>()).add(activity);
+        } else {
+            long deadlineKey = deadline.getTime();
+            deadlinePlacements.put(activity, deadlineKey);
+            datedActivities.computeIfAbsent(deadlineKey, key -> new LinkedHashSet<>()).add(activity);
+        }
+    }
+
+    /*
+     * Removes the activity from the group it was added to, even when its deadline or priority changed since.
+     */
+    void remove(Activity activity) {
+        Long deadlineKey = deadlinePlacements.remove(activity);
+        if (deadlineKey != null) {
+            groupedActivities = null;
+            removeFromGroup(datedActivities, deadlineKey, activity);
+        }
+        String priority = priorityPlacements.remove(activity);
+        if (priority != null) {
+            groupedActivities = null;
+            removeFromGroup(undatedActivities, priority, activity);
+        }
+    }
+
+    private static <K> void removeFromGroup(Map<K, Set<Activity>> groups, K key, Activity activity) {
+        Set<Activity> group = groups.get(key);
+        if (group != null) {
+            group.remove(activity);
+            if (group.isEmpty()) {
+                groups.remove(key);
+            }
+        }
+    }
+
+    void clear() {
+        groupedActivities = null;
+        datedActivities.clear();
+        undatedActivities.clear();
+        deadlinePlacements.clear();
+        priorityPlacements.clear();
+    }
+
+    /**
+     * @return the read only grouped view, only built again after activities were added or removed
+     */
+    Map<Date, List<Activity>> getGroupedActivities() {
+        Map<Date, List<Activity>> cachedGroups = groupedActivities;
+        if (cachedGroups == null) {
+            cachedGroups = groupActivities();
+            groupedActivities = cachedGroups;
+        }
+        return cachedGroups;
+    }
+
+    /**
+     * @return the grouped view when it was built since the last change, without building it
+     */
+    Map<Date, List<Activity>> getCachedGroupedActivities() {
+        return groupedActivities;
+    }
+
+    private Map<Date, List<Activity>> groupActivities() {
+        Map<Date, List<Activity>> groups = new TreeMap<>();
+        for (Map.Entry<Long, Set<Activity>> group : datedActivities.entrySet()) {
+            groups.put(new Date(group.getKey()), new ArrayList<>(group.getValue()));
+        }
+        if (!undatedActivities.isEmpty()) {
+            List<Activity> withoutDeadline = new ArrayList<>();
+            for (Set<Activity> group : undatedActivities.values()) {
+                withoutDeadline.addAll(group);
+            }
+            groups.merge(new Date(defaultDateHeader), withoutDeadline, (dated, undated) -> {
+                undated.addAll(dated);
+                return undated;
+            });
+        }
+        groups.replaceAll((date, activities) -> Collections.unmodifiableList(activities));
+        return Collections.unmodifiableMap(groups);
+    }
+}
@@ -0,0 +1,87 @@
+package be.doji.productivity.trambucore.managers;
+
+import be.doji.productivity.trambucore.model.tasks.Activity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Maps case folded keys, like tags or projects, to the activities that carry them. The keys an activity was indexed
+ * under are remembered, so it can be removed again after its own key list was changed.
+ */
+final class InvertedIndex {
+
+    private final Function<Activity, List<String>> keyMapping;
+    private final Map<String, Set<Activity>> activitiesByKey = new HashMap<>();
+    private final Map<Activity, List<String>> keysByActivity = new IdentityHashMap<>();
+
+    InvertedIndex(Function<Activity, List<String>> keyMapping) {
+        this.keyMapping = keyMapping;
+    }
+
+    void add(Activity activity) {
+        if (keysByActivity.containsKey(activity)) {
+            return;
+        }
+        List<String> foldedKeys = new ArrayList<>();
+        for (String key : keyMapping.apply(activity)) {
+            if (key != null) {
+                String foldedKey = foldCase(key);
+                foldedKeys.add(foldedKey);
+                activitiesByKey.computeIfAbsent(foldedKey, k -> new LinkedHashSet<>()).add(activity);
+            }
+        }
+        keysByActivity.put(activity, foldedKeys);
+    }
+
+    void remove(Activity activity) {
+        List<String> foldedKeys = keysByActivity.remove(activity);
+        if (foldedKeys == null) {
+            return;
+        }
+        for (String foldedKey : foldedKeys) {
+            Set<Activity> activities = activitiesByKey.get(foldedKey);
+            if (activities != null) {
+                activities.remove(activity);
+                if (activities.isEmpty()) {
+                    activitiesByKey.remove(foldedKey);
+                }
+            }
+        }
+    }
+
+    void clear() {
+        activitiesByKey.clear();
+        keysByActivity.clear();
+    }
+
+    /**
+     * @return the activities indexed under any key that is equal to the given key, ignoring case
+     */
+    Set<Activity> get(String key) {
+        if (key == null) {
+            return Collections.emptySet();
+        }
+        Set<Activity> activities = activitiesByKey.get(foldCase(key));
+        return activities == null?Collections.emptySet():Collections.unmodifiableSet(activities);
+    }
+
+    /*
+     * Folds every character the same way String.equalsIgnoreCase compares them, so two keys fold to the same value
+     * exactly when equalsIgnoreCase considers them equal.
+     */
+    static String foldCase(String key) {
+        char[] folded = new char[key.length()];
+        for (int i = 0; i < folded.length; i++) {
+            folded[i] = Character.toLowerCase(Character.toUpperCase(key.charAt(i)));
+        }
+        return new String(folded);
+    }
+}
@@ -4,6 +4,7 @@ import be.doji.productivity.trambucore.TrackMeConstants;
 import be.doji.productivity.trambucore.model.tasks.Note;
 import be.doji.productivity.trambucore.parser.ActivityParser;
 import be.doji.productivity.trambucore.utils.TrackerUtils;
+import be.doji.productivity.trambucore.utils.UuidMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,6 +21,7 @@ public class NoteManager {
     private static final Logger LOG = LoggerFactory.getLogger(NoteManager.class);
     private Path fileDirectory;
     private List<Note> notes = new ArrayList<>();
+    private final UuidMap<Note> notesByActivityId = new UuidMap<>();
 
     public NoteManager(String fileDirectory) throws IOException {
         this(Paths.get(fileDirectory));
@@ -40,7 +42,7 @@ public class NoteManager {
                         Path noteFileName = path.getFileName();
                         Optional<String> activityIdFromFileName = findActivityIdFromFileName(noteFileName.toString());
                         if (activityIdFromFileName.isPresent()) {
-                            notes.add(new Note(activityIdFromFileName.get(), path));
+                            addNote(new Note(activityIdFromFileName.get(), path));
                         }
                     }
                     return FileVisitResult.CONTINUE;
@@ -59,20 +61,20 @@ public class NoteManager {
         return Optional.empty();
     }
 
+    private void addNote(Note note) {
+        notes.add(note);
+        notesByActivityId.putIfAbsent(note.getActivityId(), note);
+    }
+
     public Optional<Note> findNoteForActivity(UUID activityId) {
-        for (Note note : notes) {
-            if (note.getActivityId().equals(activityId)) {
-                return Optional.of(note);
-            }
-        }
-        return Optional.empty();
+        return Optional.ofNullable(notesByActivityId.get(activityId));
     }
 
     public Note createNoteForActivity(UUID activityId) throws IOException {
         Path noteFile = Files
                 .createFile(fileDirectory.resolve(activityId.toString() + TrackMeConstants.NOTES_FILE_EXTENSION));
         Note note = new Note(activityId, noteFile);
-        this.notes.add(note);
+        addNote(note);
         return note;
     }
 
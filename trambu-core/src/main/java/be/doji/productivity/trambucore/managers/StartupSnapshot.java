@@ -0,0 +1,326 @@
+package be.doji.productivity.trambucore.managers;
+
+import be.doji.productivity.trambucore.model.tasks.Activity;
+import be.doji.productivity.trambucore.model.tracker.ActivityLog;
+import be.doji.productivity.trambucore.utils.SnapshotWriter;
+import be.doji.productivity.trambucore.utils.SymbolTable;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Binary copy of the state read from a data file, stored next to that file so the next start does not have to parse
+ * it. The snapshot remembers the size, modification time and checksum of the data file it was written for and is only
+ * used while the data file still matches all three.
+ * <p>
+ * Activities are stored in file order, every activity is followed by the ones that were its sub activities. Tags,
+ * projects and locations are stored once in a table and referenced by position, so the activities read back share
+ * the same strings.
+ * <p>
+ * The snapshot is only a cache: when it can not be encoded or written the failure is logged and the snapshot is
+ * removed, the data file itself is always written.
+ */
+final class StartupSnapshot {
+
+    static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private static final int MAGIC = 0x54524d42;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8;
+    private static final int CHECKSUM_BUFFER_SIZE = 1 << 16;
+    private static final int NO_STRING = -1;
+    private static final int NULL_STRING_LENGTH = -1;
+
+    private static final int FLAG_COMPLETED = 1;
+    private static final int FLAG_DEADLINE = 1 << 1;
+    private static final int FLAG_COMPLETION_DATE = 1 << 2;
+    private static final int FLAG_WARNING_PERIOD = 1 << 3;
+    private static final int FLAG_PARENT = 1 << 4;
+
+    private static final Logger LOG = LoggerFactory.getLogger(StartupSnapshot.class);
+
+    /**
+     * Utility classes should not have a public or default constructor
+     */
+    private StartupSnapshot() {
+    }
+
+    static Path getSnapshotFile(Path source) {
+        return source.resolveSibling(source.getFileName() + SNAPSHOT_SUFFIX);
+    }
+
+    /**
+     * Writes the snapshot for the data file as it is on disk now, to be called right after the data file was written.
+     */
+    static void write(Path source, byte[] body) throws IOException {
+        ByteBuffer snapshot = ByteBuffer.allocate(HEADER_SIZE + body.length);
+        snapshot.putInt(MAGIC).putInt(VERSION);
+        snapshot.putLong(Files.size(source)).putLong(Files.getLastModifiedTime(source).toMillis())
+                .putLong(checksum(source));
+        snapshot.put(body);
+        snapshot.flip();
+        SnapshotWriter.write(getSnapshotFile(source), snapshot);
+    }
+
+    /**
+     * @return the encoded body, or null when it could not be encoded
+     */
+    static byte[] tryEncode(Path source, Encoding encoding) {
+        try {
+            return encoding.encode();
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Unable to encode the startup snapshot of " + source + ", it will be parsed on the next start", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot for the data file, to be called right after the data file was written. Without a body, or
+     * when the snapshot can not be written, the snapshot that is there is removed instead.
+     */
+    static void writeOrDiscard(Path source, byte[] body) {
+        if (body != null) {
+            try {
+                write(source, body);
+                return;
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Unable to write the startup snapshot of " + source, e);
+            }
+        }
+        try {
+            Files.deleteIfExists(getSnapshotFile(source));
+        } catch (IOException e) {
+            LOG.warn("Unable to remove the outdated startup snapshot of " + source, e);
+        }
+    }
+
+    /**
+     * @return the stored state, or nothing when there is no snapshot or the data file changed since it was written
+     */
+    static Optional<DataInputStream> read(Path source) throws IOException {
+        Path snapshotFile = getSnapshotFile(source);
+        if (!Files.exists(snapshotFile) || !Files.exists(source)) {
+            return Optional.empty();
+        }
+        ByteBuffer snapshot = ByteBuffer.wrap(Files.readAllBytes(snapshotFile));
+        if (snapshot.remaining() < HEADER_SIZE || snapshot.getInt() != MAGIC || snapshot.getInt() != VERSION) {
+            return Optional.empty();
+        }
+        if (snapshot.getLong() != Files.size(source)
+                || snapshot.getLong() != Files.getLastModifiedTime(source).toMillis()
+                || snapshot.getLong() != checksum(source)) {
+            return Optional.empty();
+        }
+        return Optional.of(new DataInputStream(
+                new ByteArrayInputStream(snapshot.array(), snapshot.position(), snapshot.remaining())));
+    }
+
+    private static long checksum(Path source) throws IOException {
+        CRC32 checksum = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(CHECKSUM_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                checksum.update(buffer);
+                buffer.clear();
+            }
+        }
+        return checksum.getValue();
+    }
+
+    static byte[] encodeActivities(List<Activity> activitiesInFileOrder) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        for (Activity activity : activitiesInFileOrder) {
+            activity.getTags().forEach(tag -> strings.putIfAbsent(tag, strings.size()));
+            activity.getProjects().forEach(project -> strings.putIfAbsent(project, strings.size()));
+            if (activity.isSetLocation()) {
+                strings.putIfAbsent(activity.getLocation(), strings.size());
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(strings.size());
+            for (String string : strings.keySet()) {
+                writeString(string, out);
+            }
+            out.writeInt(activitiesInFileOrder.size());
+            for (Activity activity : activitiesInFileOrder) {
+                writeActivity(activity, strings, out);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeActivity(Activity activity, Map<String, Integer> strings, DataOutputStream out)
+            throws IOException {
+        boolean hasCompletionDate = activity.isCompleted() && activity.getCompletionDate() != null;
+        boolean hasParent = StringUtils.isNotBlank(activity.getParentActivity());
+        int flags = (activity.isCompleted()?FLAG_COMPLETED:0) | (activity.isSetDeadline()?FLAG_DEADLINE:0)
+                | (hasCompletionDate?FLAG_COMPLETION_DATE:0)
+                | (activity.getWarningTimeFrame() != null?FLAG_WARNING_PERIOD:0) | (hasParent?FLAG_PARENT:0);
+        out.writeByte(flags);
+        writeId(activity.getId(), out);
+        writeString(activity.getName(), out);
+        writeString(activity.getPriority(), out);
+        if (activity.isSetDeadline()) {
+            out.writeLong(activity.getDeadline().getTime());
+        }
+        if (hasCompletionDate) {
+            out.writeLong(activity.getCompletionDate().getTime());
+        }
+        if (activity.getWarningTimeFrame() != null) {
+            out.writeLong(activity.getWarningTimeFrame().getSeconds());
+            out.writeInt(activity.getWarningTimeFrame().getNano());
+        }
+        if (hasParent) {
+            writeString(activity.getParentActivity(), out);
+        }
+        writeStringReferences(activity.getTags(), strings, out);
+        writeStringReferences(activity.getProjects(), strings, out);
+        out.writeInt(activity.isSetLocation()?strings.get(activity.getLocation()):NO_STRING);
+    }
+
+    private static void writeStringReferences(List<String> values, Map<String, Integer> strings, DataOutputStream out)
+            throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeInt(strings.get(value));
+        }
+    }
+
+    /**
+     * @return the activities in file order, sub activities are not linked to their parents yet
+     */
+    static List<Activity> decodeActivities(DataInputStream in) throws IOException {
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = SymbolTable.canonical(readString(in));
+        }
+        int activityCount = in.readInt();
+        List<Activity> activities = new ArrayList<>(activityCount);
+        for (int i = 0; i < activityCount; i++) {
+            activities.add(readActivity(strings, in));
+        }
+        return activities;
+    }
+
+    private static Activity readActivity(String[] strings, DataInputStream in) throws IOException {
+        int flags = in.readByte();
+        UUID id = readId(in);
+        Activity activity = new Activity(readString(in));
+        activity.setId(id.toString());
+        activity.setPriority(readString(in));
+        activity.setCompleted((flags & FLAG_COMPLETED) != 0);
+        if ((flags & FLAG_DEADLINE) != 0) {
+            activity.setDeadline(new Date(in.readLong()));
+        }
+        if ((flags & FLAG_COMPLETION_DATE) != 0) {
+            activity.setCompletionDate(new Date(in.readLong()));
+        }
+        activity.setWarningTimeFrame(
+                (flags & FLAG_WARNING_PERIOD) != 0?Duration.ofSeconds(in.readLong(), in.readInt()):null);
+        if ((flags & FLAG_PARENT) != 0) {
+            activity.setParentActivity(readString(in));
+        }
+        int tagCount = in.readInt();
+        for (int i = 0; i < tagCount; i++) {
+            activity.addTag(strings[in.readInt()]);
+        }
+        int projectCount = in.readInt();
+        for (int i = 0; i < projectCount; i++) {
+            activity.addProject(strings[in.readInt()]);
+        }
+        int location = in.readInt();
+        if (location != NO_STRING) {
+            activity.setLocation(strings[location]);
+        }
+        return activity;
+    }
+
+    static byte[] encodeLogs(List<ActivityLog> logs) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(logs.size());
+            for (ActivityLog log : logs) {
+                writeId(log.getActivityId(), out);
+                out.writeInt(log.getLogpointCount());
+                for (int position = 0; position < log.getLogpointCount(); position++) {
+                    out.writeLong(log.getLogpointStart(position));
+                    out.writeLong(log.getLogpointEnd(position));
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static List<ActivityLog> decodeLogs(DataInputStream in) throws IOException {
+        int logCount = in.readInt();
+        List<ActivityLog> logs = new ArrayList<>(logCount);
+        for (int i = 0; i < logCount; i++) {
+            ActivityLog log = new ActivityLog(readId(in));
+            int logpointCount = in.readInt();
+            for (int position = 0; position < logpointCount; position++) {
+                log.addLogPoint(in.readLong(), in.readLong());
+            }
+            logs.add(log);
+        }
+        return logs;
+    }
+
+    /*
+     * Strings are written as the length of their UTF-8 bytes followed by those bytes. Unlike writeUTF this takes null
+     * and has no 64 KB limit.
+     */
+    private static void writeString(String value, DataOutputStream out) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_STRING_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == NULL_STRING_LENGTH) {
+            return null;
+        }
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Invalid string length in startup snapshot: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeId(UUID id, DataOutputStream out) throws IOException {
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+    }
+
+    private static UUID readId(DataInputStream in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    interface Encoding {
+
+        byte[] encode() throws IOException;
+    }
+}
@@ -0,0 +1,97 @@
+package be.doji.productivity.trambucore.managers;
+
+import be.doji.productivity.trambucore.model.tasks.Activity;
+import be.doji.productivity.trambucore.utils.SymbolTable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * Counts how many of the indexed activities carry each value of a property, like tags or projects. The sorted set of
+ * values with a count above zero is kept up to date as activities are added and removed. The values an activity was
+ * counted under are remembered, so it can be removed again after its own values were changed. A value is forgotten as
+ * soon as its count drops to zero, after which the {@link SymbolTable} can release it as well. The sorted values are
+ * handed out as a read only copy that is shared until the values change.
+ */
+final class SymbolCounts {
+
+    private final Function<Activity, List<String>> valueMapping;
+    private final Map<Activity, String[]> valuesByActivity = new IdentityHashMap<>();
+    private final Map<String, Integer> counts = new HashMap<>();
+    private final TreeSet<String> values = new TreeSet<>();
+    private volatile SortedSet<String> sortedValues;
+
+    SymbolCounts(Function<Activity, List<String>> valueMapping) {
+        this.valueMapping = valueMapping;
+    }
+
+    void add(Activity activity) {
+        if (valuesByActivity.containsKey(activity)) {
+            return;
+        }
+        List<String> activityValues = valueMapping.apply(activity);
+        String[] countedValues = new String[activityValues.size()];
+        int valueCount = 0;
+        for (String value : activityValues) {
+            if (value != null) {
+                countedValues[valueCount++] = value;
+                if (counts.merge(value, 1, Integer::sum) == 1) {
+                    sortedValues = null;
+                    values.add(value);
+                }
+            }
+        }
+        valuesByActivity.put(activity,
+                valueCount == countedValues.length?countedValues:Arrays.copyOf(countedValues, valueCount));
+    }
+
+    void remove(Activity activity) {
+        String[] countedValues = valuesByActivity.remove(activity);
+        if (countedValues == null) {
+            return;
+        }
+        for (String value : countedValues) {
+            int count = counts.get(value);
+            if (count == 1) {
+                sortedValues = null;
+                counts.remove(value);
+                values.remove(value);
+            } else {
+                counts.put(value, count - 1);
+            }
+        }
+    }
+
+    void clear() {
+        sortedValues = null;
+        valuesByActivity.clear();
+        counts.clear();
+        values.clear();
+    }
+
+    /**
+     * @return a read only sorted copy of the distinct values, only taken again after the values changed
+     */
+    SortedSet<String> getValues() {
+        SortedSet<String> cachedValues = sortedValues;
+        if (cachedValues == null) {
+            cachedValues = Collections.unmodifiableSortedSet(new TreeSet<>(values));
+            sortedValues = cachedValues;
+        }
+        return cachedValues;
+    }
+
+    /**
+     * @return the sorted copy when it was taken since the last change, without taking it
+     */
+    SortedSet<String> getCachedValues() {
+        return sortedValues;
+    }
+}
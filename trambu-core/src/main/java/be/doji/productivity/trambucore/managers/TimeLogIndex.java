@@ -0,0 +1,230 @@
+package be.doji.productivity.trambucore.managers;
+
+import be.doji.productivity.trambucore.model.tracker.ActivityLog;
+import be.doji.productivity.trambucore.model.tracker.LogpointListener;
+import be.doji.productivity.trambucore.model.tracker.TimeLog;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Interval tree over the logpoints of all tracked activity logs. The tree is a treap ordered by start time in which
+ * every node knows the latest end time in its subtree, so finding the logpoints that overlap an interval costs
+ * O(log n + k). Logpoints without an end time are indexed as if they never end, callers clip them to the interval.
+ * <p>
+ * The index follows the activity logs it listens to: logpoints that are started, stopped or replaced through
+ * {@link ActivityLog} are moved in the tree right away.
+ */
+final class TimeLogIndex implements LogpointListener {
+
+    interface LogpointConsumer {
+
+        void accept(ActivityLog activityLog, int position);
+    }
+
+    private static final class Node {
+
+        private final ActivityLog activityLog;
+        private final int position;
+        private final long start;
+        private final long end;
+        private final long sequence;
+        private final int priority;
+        private long maxEnd;
+        private Node left;
+        private Node right;
+
+        Node(ActivityLog activityLog, int position, long sequence, int priority) {
+            this.activityLog = activityLog;
+            this.position = position;
+            this.start = activityLog.getLogpointStart(position);
+            long logpointEnd = activityLog.getLogpointEnd(position);
+            this.end = logpointEnd == TimeLog.NO_TIME?Long.MAX_VALUE:logpointEnd;
+            this.sequence = sequence;
+            this.priority = priority;
+            this.maxEnd = end;
+        }
+    }
+
+    private final Map<ActivityLog, List<Node>> nodes = new IdentityHashMap<>();
+    private final Random random = new Random();
+    private long nextSequence = 0;
+    private int size = 0;
+    private Node root;
+
+    void addAll(ActivityLog activityLog) {
+        for (int i = 0; i < activityLog.getLogpointCount(); i++) {
+            add(activityLog, i);
+        }
+    }
+
+    void removeAll(ActivityLog activityLog) {
+        List<Node> logNodes = nodes.remove(activityLog);
+        if (logNodes != null) {
+            for (Node node : logNodes) {
+                if (node != null) {
+                    root = delete(root, node);
+                    size--;
+                }
+            }
+        }
+    }
+
+    void clear() {
+        nodes.clear();
+        size = 0;
+        root = null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Passes every indexed logpoint that starts before the end of the interval and ends after its start to the
+     * consumer, ordered by start time.
+     */
+    void findOverlapping(long intervalStart, long intervalEnd, LogpointConsumer consumer) {
+        findOverlapping(root, intervalStart, intervalEnd, consumer);
+    }
+
+    private static void findOverlapping(Node node, long intervalStart, long intervalEnd, LogpointConsumer consumer) {
+        if (node == null || node.maxEnd < intervalStart) {
+            return;
+        }
+        findOverlapping(node.left, intervalStart, intervalEnd, consumer);
+        if (node.start <= intervalEnd) {
+            if (node.end >= intervalStart) {
+                consumer.accept(node.activityLog, node.position);
+            }
+            findOverlapping(node.right, intervalStart, intervalEnd, consumer);
+        }
+    }
+
+    @Override public void logpointAdded(ActivityLog activityLog, int position) {
+        add(activityLog, position);
+    }
+
+    @Override public void logpointChanged(ActivityLog activityLog, int position) {
+        remove(activityLog, position);
+        add(activityLog, position);
+    }
+
+    @Override public void logpointRemoved(ActivityLog activityLog, int position) {
+        remove(activityLog, position);
+    }
+
+    private void add(ActivityLog activityLog, int position) {
+        if (activityLog.getLogpointStart(position) == TimeLog.NO_TIME) {
+            return;
+        }
+        List<Node> logNodes = nodes.computeIfAbsent(activityLog, key -> new ArrayList<>());
+        while (logNodes.size() <= position) {
+            logNodes.add(null);
+        }
+        if (logNodes.get(position) == null) {
+            Node node = new Node(activityLog, position, nextSequence++, random.nextInt());
+            logNodes.set(position, node);
+            root = insert(root, node);
+            size++;
+        }
+    }
+
+    private void remove(ActivityLog activityLog, int position) {
+        List<Node> logNodes = nodes.get(activityLog);
+        if (logNodes != null && position < logNodes.size() && logNodes.get(position) != null) {
+            root = delete(root, logNodes.set(position, null));
+            size--;
+        }
+    }
+
+    private static Node insert(Node node, Node inserted) {
+        if (node == null) {
+            return inserted;
+        }
+        Node subtreeRoot = node;
+        if (compare(inserted, node) < 0) {
+            node.left = insert(node.left, inserted);
+            if (node.left.priority > node.priority) {
+                subtreeRoot = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, inserted);
+            if (node.right.priority > node.priority) {
+                subtreeRoot = rotateLeft(node);
+            }
+        }
+        updateMaxEnd(node);
+        updateMaxEnd(subtreeRoot);
+        return subtreeRoot;
+    }
+
+    private static Node delete(Node node, Node deleted) {
+        if (node == null) {
+            return null;
+        }
+        if (node == deleted) {
+            return merge(node.left, node.right);
+        }
+        if (compare(deleted, node) < 0) {
+            node.left = delete(node.left, deleted);
+        } else {
+            node.right = delete(node.right, deleted);
+        }
+        updateMaxEnd(node);
+        return node;
+    }
+
+    /*
+     * Joins two treaps where every node of the left one sorts before every node of the right one.
+     */
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            updateMaxEnd(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        updateMaxEnd(right);
+        return right;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node newRoot = node.left;
+        node.left = newRoot.right;
+        newRoot.right = node;
+        return newRoot;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node newRoot = node.right;
+        node.right = newRoot.left;
+        newRoot.left = node;
+        return newRoot;
+    }
+
+    private static void updateMaxEnd(Node node) {
+        long maxEnd = node.end;
+        if (node.left != null && node.left.maxEnd > maxEnd) {
+            maxEnd = node.left.maxEnd;
+        }
+        if (node.right != null && node.right.maxEnd > maxEnd) {
+            maxEnd = node.right.maxEnd;
+        }
+        node.maxEnd = maxEnd;
+    }
+
+    private static int compare(Node first, Node second) {
+        int startCompare = Long.compare(first.start, second.start);
+        return startCompare != 0?startCompare:Long.compare(first.sequence, second.sequence);
+    }
+}
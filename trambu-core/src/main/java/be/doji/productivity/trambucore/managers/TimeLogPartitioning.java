@@ -0,0 +1,48 @@
+package be.doji.productivity.trambucore.managers;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Layout used by the {@link TimeTrackingManager} to store its timelog. In a partitioned layout every logpoint is stored
+ * in the segment of the period it started in.
+ */
+public enum TimeLogPartitioning {
+
+    /**
+     * Keep all logs in the timelog file itself.
+     */
+    SINGLE_FILE,
+
+    /**
+     * One segment per week, weeks start on monday.
+     */
+    WEEKLY,
+
+    /**
+     * One segment per calendar month.
+     */
+    MONTHLY,
+
+    /**
+     * One segment per calendar year.
+     */
+    YEARLY;
+
+    /**
+     * @return the first day of the period the day falls in
+     */
+    LocalDate getPeriodStart(LocalDate day) {
+        switch (this) {
+        case WEEKLY:
+            return day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        case MONTHLY:
+            return day.withDayOfMonth(1);
+        case YEARLY:
+            return day.withDayOfYear(1);
+        default:
+            throw new IllegalStateException("The timelog is not partitioned");
+        }
+    }
+}
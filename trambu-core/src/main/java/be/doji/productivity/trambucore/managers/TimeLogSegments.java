@@ -0,0 +1,206 @@
+package be.doji.productivity.trambucore.managers;
+
+import be.doji.productivity.trambucore.model.tracker.ActivityLog;
+import be.doji.productivity.trambucore.model.tracker.TimeLog;
+import be.doji.productivity.trambucore.parser.TimeLogFileReader;
+import be.doji.productivity.trambucore.utils.SnapshotWriter;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * The segment files of a partitioned timelog, kept in a directory next to the timelog file. A manifest holds the
+ * earliest start and the latest end of the logpoints in every segment, so the segments needed for a range of time are
+ * found without opening any of them. Segments are only written once they are loaded, segments that were never loaded
+ * keep their contents.
+ */
+final class TimeLogSegments {
+
+    private static final String DIRECTORY_SUFFIX = ".segments";
+    private static final String MANIFEST_FILE = "manifest.txt";
+    private static final String SEGMENT_SUFFIX = ".txt";
+    private static final String SEPARATOR = " ";
+
+    private final Path directory;
+    private final Path manifestFile;
+    private final TimeLogPartitioning partitioning;
+    private final ZoneId zone;
+    private final SortedMap<String, long[]> segmentBounds = new TreeMap<>();
+    private final Set<String> loadedSegments = new HashSet<>();
+
+    TimeLogSegments(Path timelogFile, TimeLogPartitioning partitioning, ZoneId zone) {
+        this.directory = timelogFile.resolveSibling(timelogFile.getFileName() + DIRECTORY_SUFFIX);
+        this.manifestFile = directory.resolve(MANIFEST_FILE);
+        this.partitioning = partitioning;
+        this.zone = zone;
+    }
+
+    boolean exists() {
+        return Files.exists(manifestFile);
+    }
+
+    void readManifest() throws IOException, ParseException {
+        segmentBounds.clear();
+        loadedSegments.clear();
+        if (!exists()) {
+            return;
+        }
+        for (String line : Files.readAllLines(manifestFile, StandardCharsets.UTF_8)) {
+            if (StringUtils.isBlank(line)) {
+                continue;
+            }
+            String[] fields = line.trim().split(SEPARATOR);
+            if (fields.length != 3) {
+                throw new ParseException("Invalid timelog manifest entry: " + line, 0);
+            }
+            try {
+                segmentBounds.put(fields[0], new long[] {Long.parseLong(fields[1]), Long.parseLong(fields[2])});
+            } catch (NumberFormatException e) {
+                throw new ParseException("Invalid timelog manifest entry: " + line, 0);
+            }
+        }
+    }
+
+    String getSegmentKey(long startMillis) {
+        Instant start = Instant.ofEpochMilli(startMillis == TimeLog.NO_TIME?0:startMillis);
+        return partitioning.getPeriodStart(start.atZone(zone).toLocalDate()).toString();
+    }
+
+    /**
+     * @return the segment of the current period and the segments with logpoints that are still running
+     */
+    List<String> getSegmentsToLoadAtStartup(long now) {
+        Set<String> segments = new LinkedHashSet<>();
+        String currentSegment = getSegmentKey(now);
+        if (segmentBounds.containsKey(currentSegment)) {
+            segments.add(currentSegment);
+        }
+        segments.addAll(getUnloadedSegments(now, now));
+        return new ArrayList<>(segments);
+    }
+
+    List<String> getUnloadedSegments(long intervalStart, long intervalEnd) {
+        List<String> segments = new ArrayList<>();
+        for (Map.Entry<String, long[]> segment : segmentBounds.entrySet()) {
+            long[] bounds = segment.getValue();
+            if (!loadedSegments.contains(segment.getKey()) && bounds[0] <= intervalEnd && bounds[1] >= intervalStart) {
+                segments.add(segment.getKey());
+            }
+        }
+        return segments;
+    }
+
+    List<String> getUnloadedSegments() {
+        List<String> segments = new ArrayList<>(segmentBounds.keySet());
+        segments.removeAll(loadedSegments);
+        return segments;
+    }
+
+    /**
+     * @return the segments that hold logpoints of the logs but were not loaded yet, they have to be loaded before the
+     * logs are written
+     */
+    Set<String> getUnloadedSegmentsOf(List<ActivityLog> logs) {
+        Set<String> segments = new TreeSet<>();
+        for (ActivityLog log : logs) {
+            for (int position = 0; position < log.getLogpointCount(); position++) {
+                String segment = getSegmentKey(log.getLogpointStart(position));
+                if (segmentBounds.containsKey(segment) && !loadedSegments.contains(segment)) {
+                    segments.add(segment);
+                }
+            }
+        }
+        return segments;
+    }
+
+    List<ActivityLog> load(String segment) throws IOException, ParseException {
+        loadedSegments.add(segment);
+        Path segmentFile = getSegmentFile(segment);
+        return Files.exists(segmentFile)?TimeLogFileReader.read(segmentFile):Collections.emptyList();
+    }
+
+    /**
+     * Splits the logs over their segments and updates the manifest for every loaded segment. The returned snapshot no
+     * longer depends on the logs and can be written outside of the lock of the manager.
+     */
+    Snapshot snapshot(List<ActivityLog> logs) {
+        SortedMap<String, Map<UUID, ActivityLog>> logsPerSegment = new TreeMap<>();
+        for (ActivityLog log : logs) {
+            for (int position = 0; position < log.getLogpointCount(); position++) {
+                long start = log.getLogpointStart(position);
+                logsPerSegment.computeIfAbsent(getSegmentKey(start), segment -> new LinkedHashMap<>())
+                        .computeIfAbsent(log.getActivityId(), ActivityLog::new)
+                        .addLogPoint(start, log.getLogpointEnd(position));
+            }
+        }
+        loadedSegments.addAll(logsPerSegment.keySet());
+
+        Snapshot snapshot = new Snapshot();
+        for (String segment : loadedSegments) {
+            Map<UUID, ActivityLog> segmentLogs = logsPerSegment.get(segment);
+            if (segmentLogs == null) {
+                segmentBounds.remove(segment);
+                snapshot.deletedSegments.add(getSegmentFile(segment));
+            } else {
+                segmentBounds.put(segment, getBounds(segmentLogs.values()));
+                List<String> lines = new ArrayList<>();
+                for (ActivityLog segmentLog : segmentLogs.values()) {
+                    lines.add(segmentLog.toString());
+                }
+                snapshot.writtenSegments.put(getSegmentFile(segment), lines);
+            }
+        }
+        for (Map.Entry<String, long[]> segment : segmentBounds.entrySet()) {
+            long[] bounds = segment.getValue();
+            snapshot.manifest.add(segment.getKey() + SEPARATOR + bounds[0] + SEPARATOR + bounds[1]);
+        }
+        return snapshot;
+    }
+
+    /*
+     * The manifest is written last, segments it does not list yet are ignored when the application stops in between.
+     */
+    void write(Snapshot snapshot) throws IOException {
+        Files.createDirectories(directory);
+        for (Map.Entry<Path, List<String>> segment : snapshot.writtenSegments.entrySet()) {
+            SnapshotWriter.write(segment.getKey(), segment.getValue());
+        }
+        for (Path deletedSegment : snapshot.deletedSegments) {
+            Files.deleteIfExists(deletedSegment);
+        }
+        SnapshotWriter.write(manifestFile, snapshot.manifest);
+    }
+
+    private Path getSegmentFile(String segment) {
+        return directory.resolve(segment + SEGMENT_SUFFIX);
+    }
+
+    /*
+     * Logpoints without an end keep their segment in every range from their start on.
+     */
+    private static long[] getBounds(Collection<ActivityLog> logs) {
+        long[] bounds = {Long.MAX_VALUE, Long.MIN_VALUE};
+        for (ActivityLog log : logs) {
+            for (int position = 0; position < log.getLogpointCount(); position++) {
+                long end = log.getLogpointEnd(position);
+                bounds[0] = Math.min(bounds[0], log.getLogpointStart(position));
+                bounds[1] = Math.max(bounds[1], end == TimeLog.NO_TIME?Long.MAX_VALUE:end);
+            }
+        }
+        return bounds;
+    }
+
+    static final class Snapshot {
+
+        private final Map<Path, List<String>> writtenSegments = new LinkedHashMap<>();
+        private final List<Path> deletedSegments = new ArrayList<>();
+        private final List<String> manifest = new ArrayList<>();
+    }
+}
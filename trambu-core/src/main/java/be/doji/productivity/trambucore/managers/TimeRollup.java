@@ -0,0 +1,132 @@
+package be.doji.productivity.trambucore.managers;
+
+import be.doji.productivity.trambucore.model.tasks.Activity;
+import be.doji.productivity.trambucore.model.tracker.ActivityLog;
+import be.doji.productivity.trambucore.utils.TrackerUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time spent on activities including all of their sub activities. The time of stopped logpoints is cached per subtree.
+ * When the logs of an activity change only the cached totals of that activity and its ancestors are dropped, when
+ * activities move in the tree all cached totals are. Running timers are added on every read.
+ */
+public class TimeRollup implements TimeSpentListener {
+
+    private final ActivityManager activityManager;
+    private final TimeTrackingManager timeTrackingManager;
+    private final Map<UUID, Long> stoppedSubtreeMillis = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
+    private volatile long cachedTreeVersion;
+
+    public TimeRollup(ActivityManager activityManager, TimeTrackingManager timeTrackingManager) {
+        this.activityManager = activityManager;
+        this.timeTrackingManager = timeTrackingManager;
+        this.cachedTreeVersion = activityManager.getTreeVersion();
+        timeTrackingManager.addTimeSpentListener(this);
+    }
+
+    /**
+     * Stops following the time tracking manager, to be called when the roll up is no longer used.
+     */
+    public void close() {
+        timeTrackingManager.removeTimeSpentListener(this);
+    }
+
+    public long getTimeSpentInMillis(UUID activityId) {
+        checkTreeVersion();
+        Optional<Activity> activity = activityManager.getSavedActivityById(activityId);
+        if (!activity.isPresent()) {
+            return timeTrackingManager.findLogForActivityId(activityId).map(ActivityLog::getTimeSpentInMillis)
+                    .orElse(0L);
+        }
+        return getStoppedMillis(activity.get()) + getRunningMillis(activityId);
+    }
+
+    public double getTimeSpentInHours(UUID activityId) {
+        double timeSpentInHours = (double) getTimeSpentInMillis(activityId) / (1000 * 60 * 60);
+        return TrackerUtils.roundToSignificantNumbers(timeSpentInHours, 2);
+    }
+
+    public String getTimeSpentInHoursString(UUID activityId) {
+        return String.valueOf(getTimeSpentInHours(activityId)) + " hours";
+    }
+
+    @Override public void timeSpentChanged(UUID activityId) {
+        invalidations.incrementAndGet();
+        stoppedSubtreeMillis.remove(activityId);
+        Set<UUID> visited = new HashSet<>();
+        visited.add(activityId);
+        Optional<Activity> activity = activityManager.getSavedActivityById(activityId);
+        while (activity.isPresent() && StringUtils.isNotBlank(activity.get().getParentActivity())) {
+            activity = activityManager.getSavedActivityById(activity.get().getParentActivity());
+            if (activity.isPresent() && !visited.add(activity.get().getId())) {
+                return;
+            }
+            activity.ifPresent(parent -> stoppedSubtreeMillis.remove(parent.getId()));
+        }
+    }
+
+    private void checkTreeVersion() {
+        long treeVersion = activityManager.getTreeVersion();
+        if (treeVersion != cachedTreeVersion) {
+            invalidations.incrementAndGet();
+            stoppedSubtreeMillis.clear();
+            cachedTreeVersion = treeVersion;
+        }
+    }
+
+    /*
+     * A total that was computed while an invalidation came in may already be outdated, it is dropped again instead of
+     * being kept in the cache.
+     */
+    private long getStoppedMillis(Activity activity) {
+        Long cachedMillis = stoppedSubtreeMillis.get(activity.getId());
+        if (cachedMillis != null) {
+            return cachedMillis;
+        }
+        long invalidationsBefore = invalidations.get();
+        long stoppedMillis = timeTrackingManager.findLogForActivityId(activity.getId())
+                .map(ActivityLog::getStoppedTimeSpentInMillis).orElse(0L);
+        for (Activity subActivity : activity.getSubActivities()) {
+            stoppedMillis += getStoppedMillis(subActivity);
+        }
+        stoppedSubtreeMillis.put(activity.getId(), stoppedMillis);
+        if (invalidations.get() != invalidationsBefore) {
+            stoppedSubtreeMillis.remove(activity.getId(), stoppedMillis);
+        }
+        return stoppedMillis;
+    }
+
+    private long getRunningMillis(UUID activityId) {
+        long runningMillis = 0;
+        for (ActivityLog runningLog : timeTrackingManager.getRunningLogs()) {
+            if (isInSubtree(runningLog.getActivityId(), activityId)) {
+                runningMillis += runningLog.getRunningTimeSpentInMillis();
+            }
+        }
+        return runningMillis;
+    }
+
+    /*
+     * Parent references written by hand can form a cycle, the walk stops at the first activity it has seen before.
+     */
+    private boolean isInSubtree(UUID activityId, UUID subtreeRootId) {
+        Set<UUID> visited = new HashSet<>();
+        Optional<Activity> activity = activityManager.getSavedActivityById(activityId);
+        while (activity.isPresent() && visited.add(activity.get().getId())) {
+            if (activity.get().getId().equals(subtreeRootId)) {
+                return true;
+            }
+            activity = activityManager.getSavedActivityById(activity.get().getParentActivity());
+        }
+        return false;
+    }
+}
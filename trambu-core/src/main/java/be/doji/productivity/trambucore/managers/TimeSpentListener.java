@@ -0,0 +1,11 @@
+package be.doji.productivity.trambucore.managers;
+
+import java.util.UUID;
+
+/**
+ * Gets notified by the {@link TimeTrackingManager} when the time logged on an activity may have changed.
+ */
+public interface TimeSpentListener {
+
+    void timeSpentChanged(UUID activityId);
+}
@@ -1,45 +1,195 @@
 package be.doji.productivity.trambucore.managers;
 
-import be.doji.productivity.trambucore.TrackMeConstants;
 import be.doji.productivity.trambucore.model.tracker.ActivityLog;
-import be.doji.productivity.trambucore.model.tracker.TimeLog;
-import be.doji.productivity.trambucore.parser.TimeLogParser;
-import org.apache.commons.lang3.StringUtils;
+import be.doji.productivity.trambucore.model.tracker.LogpointListener;
+import be.doji.productivity.trambucore.parser.TimeLogFileReader;
+import be.doji.productivity.trambucore.utils.SnapshotWriter;
+import be.doji.productivity.trambucore.utils.UuidMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.text.ParseException;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
 
+/**
+ * Safe to use from several threads, guarded by a {@link StampedLock} like the {@link ActivityManager}: lookups take the
+ * read lock, changes and reads that load segments take the write lock. Files are written after the lock is released,
+ * in the order the changes were made. Logs handed out are not thread safe themselves: timers are started and stopped
+ * through {@link #startTimer(UUID)} and {@link #stopTimer(UUID)}, which change the log under the write lock. A log
+ * that is changed directly still keeps the indexes up to date, but must not be read from other threads meanwhile.
+ * {@link TimeSpentListener}s may be called while the lock is held and must not call back into the manager.
+ */
 public class TimeTrackingManager {
 
     private static final Logger LOG = LoggerFactory.getLogger(TimeTrackingManager.class);
+    private static final PendingWrite NO_WRITE = () -> {
+    };
 
     private List<ActivityLog> timelogs;
+    private final UuidMap<ActivityLog> timelogsById = new UuidMap<>();
     private Path timelogFile;
+    private final TimeLogPartitioning partitioning;
+    private TimeLogSegments segments;
+    private WriteBehindScheduler writeBehind;
+    private boolean startupSnapshot = false;
+    private final TimeLogIndex timeLogIndex = new TimeLogIndex();
+    private final ActiveTimerRegistry activeTimers = new ActiveTimerRegistry();
+    private final List<TimeSpentListener> timeSpentListeners = new CopyOnWriteArrayList<>();
+    private final StampedLock lock = new StampedLock();
+    private Thread writer;
+    private long preparedWrites = 0;
+    private final Object fileWriteMonitor = new Object();
+    private long completedWrites = 0;
+    private final LogpointListener logpointListener = new LogpointListener() {
+
+        @Override public void logpointAdded(ActivityLog activityLog, int position) {
+            updateIndexes(() -> {
+                timeLogIndex.logpointAdded(activityLog, position);
+                activeTimers.logpointAdded(activityLog, position);
+            });
+            fireTimeSpentChanged(activityLog);
+        }
+
+        @Override public void logpointChanged(ActivityLog activityLog, int position) {
+            updateIndexes(() -> {
+                timeLogIndex.logpointChanged(activityLog, position);
+                activeTimers.logpointChanged(activityLog, position);
+            });
+            fireTimeSpentChanged(activityLog);
+        }
+
+        @Override public void logpointRemoved(ActivityLog activityLog, int position) {
+            updateIndexes(() -> {
+                timeLogIndex.logpointRemoved(activityLog, position);
+                activeTimers.logpointRemoved(activityLog, position);
+            });
+            fireTimeSpentChanged(activityLog);
+        }
+    };
 
     public TimeTrackingManager(String fileLocation) throws IOException {
+        this(fileLocation, TimeLogPartitioning.SINGLE_FILE);
+    }
+
+    /**
+     * With a partitioned layout the logs are stored in segments next to the timelog file. Only the segment of the
+     * current period and segments with running logpoints are read, other segments are read once they are needed for
+     * {@link #getActivityLogsInInterval(Date, Date)} or {@link #readAllSegments()}. An existing timelog file is split
+     * up into segments the first time it is read in a partitioned layout.
+     */
+    public TimeTrackingManager(String fileLocation, TimeLogPartitioning partitioning) throws IOException {
         this.timelogs = new ArrayList<>();
+        this.partitioning = partitioning;
         Path filePath = Paths.get(fileLocation);
         if (filePath.toFile().exists()) {
             this.timelogFile = filePath;
         } else {
             this.timelogFile = Files.createTempFile("timetracking", "txt");
         }
+        this.segments = createSegments();
+    }
+
+    private TimeLogSegments createSegments() {
+        return partitioning == TimeLogPartitioning.SINGLE_FILE?
+                null:
+                new TimeLogSegments(timelogFile, partitioning, ZoneId.systemDefault());
+    }
+
+    /**
+     * Collects saved logs and writes the timelog file in the background, at most once per delay or as soon as the given
+     * number of changes is pending.
+     */
+    public void enableWriteBehind(long delayMillis, int dirtyThreshold) {
+        this.writeBehind = new WriteBehindScheduler("timelog", this::writeLogs, delayMillis, dirtyThreshold);
+    }
+
+    /**
+     * Keeps a binary snapshot of the logs next to the timelog file after every write, and reads logs from it instead of
+     * parsing the timelog file as long as the timelog file was not changed since. Partitioned timelogs are always read
+     * from their segments.
+     */
+    public void enableStartupSnapshot() {
+        long stamp = lockForWrite();
+        try {
+            this.startupSnapshot = true;
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /*
+     * Logpoints change when a log is started or stopped, which happens inside the manager as well as on logs that were
+     * handed out. The lock is not reentrant, a change made while this thread holds the write lock already is applied
+     * right away. Only the thread itself ever finds itself in the writer field, so it needs no further visibility.
+     */
+    private void updateIndexes(Runnable update) {
+        if (writer == Thread.currentThread()) {
+            update.run();
+            return;
+        }
+        long stamp = lockForWrite();
+        try {
+            update.run();
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    private long lockForWrite() {
+        long stamp = lock.writeLock();
+        writer = Thread.currentThread();
+        return stamp;
+    }
+
+    private void unlockWrite(long stamp) {
+        writer = null;
+        lock.unlockWrite(stamp);
+    }
+
+    /*
+     * Lookups walk maps and registries that are not safe to read while they are changed, they hold the read lock.
+     */
+    private <T> T read(Supplier<T> query) {
+        long stamp = lock.readLock();
+        try {
+            return query.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
     }
 
     public void updateFileLocation(String location) throws IOException, ParseException {
-        Path filePath = Paths.get(location);
-        if (filePath.toFile().exists()) {
-            this.timelogFile = filePath;
+        flush();
+        PendingWrite pendingWrite;
+        long stamp = lockForWrite();
+        try {
+            Path filePath = Paths.get(location);
+            if (filePath.toFile().exists()) {
+                this.timelogFile = filePath;
+                this.segments = createSegments();
+            }
+            for (ActivityLog log : this.timelogs) {
+                log.setLogpointListener(null);
+                fireTimeSpentChanged(log);
+            }
+            this.timeLogIndex.clear();
+            this.activeTimers.clear();
+            this.timelogsById.clear();
+            this.timelogs = new ArrayList<>();
+            pendingWrite = this.readLogsFromFile();
+        } finally {
+            unlockWrite(stamp);
         }
-        this.timelogs = new ArrayList<>();
-        this.readLogs();
+        writeLogged(pendingWrite);
     }
 
     public ActivityLog getLogForActivityId(String activityId) {
@@ -47,87 +197,419 @@ public class TimeTrackingManager {
     }
 
     public ActivityLog getLogForActivityId(UUID activityId) {
-        for (ActivityLog log : timelogs) {
-            if (log.getActivityId().equals(activityId)) {
-                return log;
-            }
+        Optional<ActivityLog> existingLog = read(() -> getExistingActivityLogForId(activityId));
+        if (existingLog.isPresent()) {
+            return existingLog.get();
+        }
+        long stamp = lockForWrite();
+        try {
+            return getOrCreateLog(activityId);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    private ActivityLog getOrCreateLog(UUID activityId) {
+        ActivityLog savedLog = timelogsById.get(activityId);
+        if (savedLog != null) {
+            return savedLog;
         }
         ActivityLog activityLog = new ActivityLog(activityId);
         this.timelogs.add(activityLog);
+        track(activityLog);
         return activityLog;
     }
 
+    /**
+     * Starts a timer for the activity, stopping the one that was running for it, and saves its log.
+     */
+    public void startTimer(UUID activityId) {
+        PendingWrite pendingWrite;
+        long stamp = lockForWrite();
+        try {
+            getOrCreateLog(activityId).startLog();
+            pendingWrite = persist();
+        } finally {
+            unlockWrite(stamp);
+        }
+        writeLogged(pendingWrite);
+    }
+
+    /**
+     * Stops the running timer of the activity, if any, and saves its log.
+     */
+    public void stopTimer(UUID activityId) {
+        PendingWrite pendingWrite = NO_WRITE;
+        long stamp = lockForWrite();
+        try {
+            ActivityLog savedLog = timelogsById.get(activityId);
+            if (savedLog != null && savedLog.hasActiveLog()) {
+                savedLog.stopActiveLog();
+                pendingWrite = persist();
+            }
+        } finally {
+            unlockWrite(stamp);
+        }
+        writeLogged(pendingWrite);
+    }
+
+    /**
+     * Writes the logs to disk, the lock is only held while the logs are copied.
+     */
     public void writeLogs() throws IOException {
-        Files.write(this.timelogFile, "".getBytes());
+        PendingWrite pendingWrite;
+        long stamp = lockForWrite();
+        try {
+            pendingWrite = prepareWrite();
+        } finally {
+            unlockWrite(stamp);
+        }
+        pendingWrite.write();
+    }
+
+    /*
+     * Copies what is to be written, to be called holding the write lock. Every copy holds all logs, a copy that is
+     * written after a later one was written already would only undo changes and is skipped.
+     */
+    private PendingWrite prepareWrite() throws IOException {
+        PendingWrite write = copyLogs();
+        long sequence = ++preparedWrites;
+        return () -> {
+            synchronized (fileWriteMonitor) {
+                if (sequence > completedWrites) {
+                    write.write();
+                    completedWrites = sequence;
+                }
+            }
+        };
+    }
+
+    /*
+     * Segments are rewritten as a whole, segments that hold changed logpoints are read first so none of their other
+     * logpoints get lost.
+     */
+    private PendingWrite copyLogs() throws IOException {
+        if (segments != null) {
+            TimeLogSegments currentSegments = this.segments;
+            try {
+                Set<String> unloadedSegments = currentSegments.getUnloadedSegmentsOf(this.timelogs);
+                while (!unloadedSegments.isEmpty()) {
+                    readSegments(unloadedSegments);
+                    unloadedSegments = currentSegments.getUnloadedSegmentsOf(this.timelogs);
+                }
+            } catch (ParseException e) {
+                throw new IOException("Could not read timelog segment before writing it", e);
+            }
+            TimeLogSegments.Snapshot snapshot = currentSegments.snapshot(this.timelogs);
+            return () -> currentSegments.write(snapshot);
+        }
+        Path currentTimelogFile = this.timelogFile;
+        List<String> lines = new ArrayList<>();
         for (ActivityLog log : this.timelogs) {
-            Files.write(this.timelogFile, (log.toString() + System.lineSeparator()).getBytes(),
-                    StandardOpenOption.APPEND);
+            lines.add(log.toString());
         }
+        boolean writeStartupSnapshot = startupSnapshot;
+        List<ActivityLog> currentLogs = this.timelogs;
+        byte[] startupSnapshotBody = writeStartupSnapshot?
+                StartupSnapshot.tryEncode(currentTimelogFile, () -> StartupSnapshot.encodeLogs(currentLogs)):
+                null;
+        return () -> {
+            SnapshotWriter.write(currentTimelogFile, lines);
+            if (writeStartupSnapshot) {
+                StartupSnapshot.writeOrDiscard(currentTimelogFile, startupSnapshotBody);
+            }
+        };
     }
 
     public void readLogs() throws IOException, ParseException {
-        List<String> fileLines = Files.readAllLines(this.timelogFile);
-        ActivityLog readLog = null;
-        for (String line : fileLines) {
-            if (StringUtils.isNotBlank(line)) {
-                if (StringUtils.containsIgnoreCase(line, TrackMeConstants.INDICATOR_LOG_START)) {
-                    readLog = new ActivityLog(getActivityIdFromLine(line));
-                } else if (StringUtils.containsIgnoreCase(line, TrackMeConstants.INDICATOR_LOG_END)) {
-                    this.timelogs.add(readLog);
-                } else if (readLog != null) {
-                    readLog.addLogPoint(TimeLogParser.parseToTimeLog(line));
+        PendingWrite pendingWrite;
+        long stamp = lockForWrite();
+        try {
+            pendingWrite = readLogsFromFile();
+        } finally {
+            unlockWrite(stamp);
+        }
+        writeLogged(pendingWrite);
+    }
+
+    /*
+     * Returns the write that is still to be done once the lock is released, a timelog file that is split up into
+     * segments is written again.
+     */
+    private PendingWrite readLogsFromFile() throws IOException, ParseException {
+        if (segments != null) {
+            return readPartitionedLogs();
+        }
+        List<ActivityLog> readLogs = readLogsFromSnapshot();
+        if (readLogs == null) {
+            readLogs = TimeLogFileReader.read(this.timelogFile);
+        }
+        this.timelogs.addAll(readLogs);
+        for (ActivityLog log : readLogs) {
+            track(log);
+        }
+        return NO_WRITE;
+    }
+
+    /*
+     * A snapshot that can not be decoded is ignored, the timelog file is parsed instead.
+     */
+    private List<ActivityLog> readLogsFromSnapshot() throws IOException {
+        if (!startupSnapshot) {
+            return null;
+        }
+        Optional<DataInputStream> snapshot = StartupSnapshot.read(this.timelogFile);
+        if (!snapshot.isPresent()) {
+            return null;
+        }
+        try {
+            return StartupSnapshot.decodeLogs(snapshot.get());
+        } catch (IOException e) {
+            LOG.warn("Ignoring unreadable startup snapshot of " + this.timelogFile, e);
+            return null;
+        }
+    }
+
+    private PendingWrite readPartitionedLogs() throws IOException, ParseException {
+        segments.readManifest();
+        if (segments.exists()) {
+            readSegments(segments.getSegmentsToLoadAtStartup(System.currentTimeMillis()));
+            return NO_WRITE;
+        }
+        List<ActivityLog> readLogs = TimeLogFileReader.read(this.timelogFile);
+        mergeLogs(readLogs);
+        return readLogs.isEmpty()?NO_WRITE:persist();
+    }
+
+    /**
+     * Reads the segments of a partitioned timelog that were not needed so far, so {@link #getLogs()} holds the
+     * complete history.
+     */
+    public void readAllSegments() throws IOException, ParseException {
+        long stamp = lockForWrite();
+        try {
+            if (segments != null) {
+                readSegments(segments.getUnloadedSegments());
+            }
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    private void readSegments(Collection<String> segmentsToRead) throws IOException, ParseException {
+        for (String segment : segmentsToRead) {
+            mergeLogs(segments.load(segment));
+        }
+    }
+
+    /*
+     * Logs of an activity are spread over several segments, logpoints of activities that already have a log are added
+     * to that log.
+     */
+    private void mergeLogs(List<ActivityLog> readLogs) {
+        for (ActivityLog readLog : readLogs) {
+            Optional<ActivityLog> existingLog = getExistingActivityLogForId(readLog.getActivityId());
+            if (existingLog.isPresent()) {
+                for (int position = 0; position < readLog.getLogpointCount(); position++) {
+                    existingLog.get().addLogPoint(readLog.getLogpointStart(position), readLog.getLogpointEnd(position));
                 }
+            } else {
+                this.timelogs.add(readLog);
+                track(readLog);
             }
         }
     }
 
-    private UUID getActivityIdFromLine(String line) {
-        String uuidString = line.replace(TrackMeConstants.INDICATOR_LOG_START, "");
-        uuidString = uuidString.trim();
-        return UUID.fromString(uuidString);
+    /*
+     * Every log in the timelogs is tracked. When two logs share an activity id, the one that was tracked first is
+     * found by id, as it used to be when the list was searched.
+     */
+    private void track(ActivityLog log) {
+        timelogsById.putIfAbsent(log.getActivityId(), log);
+        log.setLogpointListener(logpointListener);
+        timeLogIndex.addAll(log);
+        activeTimers.track(log);
+        fireTimeSpentChanged(log);
+    }
+
+    private void untrack(ActivityLog log) {
+        timelogsById.remove(log.getActivityId(), log);
+        log.setLogpointListener(null);
+        timeLogIndex.removeAll(log);
+        activeTimers.untrack(log);
+        fireTimeSpentChanged(log);
     }
 
     public void save(ActivityLog activityLog) {
+        PendingWrite pendingWrite;
+        long stamp = lockForWrite();
         try {
-            getExistingActivityLogForId(activityLog.getActivityId())
-                    .ifPresent(savedLog -> this.timelogs.remove(savedLog));
+            getExistingActivityLogForId(activityLog.getActivityId()).ifPresent(savedLog -> {
+                this.timelogs.remove(savedLog);
+                untrack(savedLog);
+            });
             this.timelogs.add(activityLog);
-            this.writeLogs();
+            track(activityLog);
+            pendingWrite = persist();
+        } finally {
+            unlockWrite(stamp);
+        }
+        writeLogged(pendingWrite);
+    }
+
+    /*
+     * To be called holding the write lock. Without write behind the logs are copied, the returned write is to be done
+     * once the lock is released.
+     */
+    private PendingWrite persist() {
+        if (writeBehind != null) {
+            writeBehind.markDirty();
+            return NO_WRITE;
+        }
+        try {
+            return prepareWrite();
         } catch (IOException e) {
             LOG.error("Error saving activity", e);
+            return NO_WRITE;
         }
     }
 
-    private Optional<ActivityLog> getExistingActivityLogForId(UUID activityId) {
-        for (ActivityLog log : this.timelogs) {
-            if (log.getActivityId().equals(activityId)) {
-                return Optional.of(log);
-            }
+    private static void writeLogged(PendingWrite pendingWrite) {
+        try {
+            pendingWrite.write();
+        } catch (IOException e) {
+            LOG.error("Error saving activity", e);
+        }
+    }
+
+    /**
+     * Writes the logs that are still waiting for the write behind scheduler.
+     */
+    public void flush() throws IOException {
+        if (writeBehind != null) {
+            writeBehind.flush();
+        }
+    }
+
+    /**
+     * Writes pending logs and stops the write behind scheduler, to be called when the application stops.
+     */
+    public void shutdown() throws IOException {
+        if (writeBehind != null) {
+            writeBehind.shutdown();
         }
-        return Optional.empty();
+    }
+
+    public void addTimeSpentListener(TimeSpentListener listener) {
+        timeSpentListeners.add(listener);
+    }
+
+    public void removeTimeSpentListener(TimeSpentListener listener) {
+        timeSpentListeners.remove(listener);
+    }
+
+    private void fireTimeSpentChanged(ActivityLog log) {
+        for (TimeSpentListener listener : timeSpentListeners) {
+            listener.timeSpentChanged(log.getActivityId());
+        }
+    }
+
+    /**
+     * @return the log of the activity, unlike {@link #getLogForActivityId(UUID)} no empty log is created when the
+     * activity has none
+     */
+    public Optional<ActivityLog> findLogForActivityId(UUID activityId) {
+        return read(() -> getExistingActivityLogForId(activityId));
+    }
+
+    private Optional<ActivityLog> getExistingActivityLogForId(UUID activityId) {
+        return Optional.ofNullable(timelogsById.get(activityId));
     }
 
     public void stopAll() {
-        for (ActivityLog log : this.timelogs) {
-            log.getActiveLog().ifPresent(TimeLog::stop);
+        PendingWrite pendingWrite = NO_WRITE;
+        long stamp = lockForWrite();
+        try {
+            List<ActivityLog> runningLogs = activeTimers.getRunningLogs();
+            for (ActivityLog log : runningLogs) {
+                log.stopActiveLog();
+            }
+            if (!runningLogs.isEmpty()) {
+                pendingWrite = persist();
+            }
+        } finally {
+            unlockWrite(stamp);
         }
+        writeLogged(pendingWrite);
+    }
+
+    /**
+     * @return whether a timer is running for the activity, without looking at its logged history
+     */
+    public boolean isRunning(UUID activityId) {
+        return read(() -> activeTimers.isRunning(activityId));
+    }
+
+    /**
+     * @return the logs of all activities that have a running timer
+     */
+    public List<ActivityLog> getRunningLogs() {
+        return read(activeTimers::getRunningLogs);
     }
 
     public List<ActivityLog> getLogs() {
-        return new ArrayList<>(this.timelogs);
+        return read(() -> new ArrayList<>(this.timelogs));
     }
 
+    /**
+     * @return for every activity with logpoints overlapping the interval, a log holding those logpoints clipped to the
+     * interval. Activities are ordered by their first overlapping logpoint, logpoints by start time.
+     */
     public List<ActivityLog> getActivityLogsInInterval(Date startTime, Date endTime) {
-        List<ActivityLog> logsInInterval = new ArrayList<>();
-        for (ActivityLog log : this.timelogs) {
-            List<TimeLog> timeLogsInInterval = log.getTimeLogsInInterval(startTime, endTime);
-            if (!timeLogsInInterval.isEmpty()) {
-                ActivityLog activityLogInterval = new ActivityLog(log.getActivityId());
-                activityLogInterval.setLogpoints(log.getTimeLogsInInterval(startTime, endTime));
-                logsInInterval.add(activityLogInterval);
+        long intervalStart = startTime.getTime();
+        long intervalEnd = endTime.getTime();
+        if (segments != null) {
+            long stamp = lockForWrite();
+            try {
+                readSegments(segments.getUnloadedSegments(intervalStart, intervalEnd));
+            } catch (IOException | ParseException e) {
+                LOG.error("Error reading timelog segments", e);
+            } finally {
+                unlockWrite(stamp);
             }
         }
+        long stamp = lock.readLock();
+        try {
+            return findLogsInInterval(intervalStart, intervalEnd);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /*
+     * Walks the interval tree, to be called holding the read lock.
+     */
+    private List<ActivityLog> findLogsInInterval(long intervalStart, long intervalEnd) {
+        long now = System.currentTimeMillis();
+        Map<ActivityLog, ActivityLog> logsInInterval = new LinkedHashMap<>();
+        timeLogIndex.findOverlapping(intervalStart, intervalEnd, (log, position) -> {
+            ActivityLog logInInterval = logsInInterval.get(log);
+            if (logInInterval == null) {
+                logInInterval = new ActivityLog(log.getActivityId());
+                if (logInInterval.addLogPointInInterval(log.getLogpointStart(position), log.getLogpointEnd(position),
+                        intervalStart, intervalEnd, now)) {
+                    logsInInterval.put(log, logInInterval);
+                }
+            } else {
+                logInInterval.addLogPointInInterval(log.getLogpointStart(position), log.getLogpointEnd(position),
+                        intervalStart, intervalEnd, now);
+            }
+        });
+        return new ArrayList<>(logsInInterval.values());
+    }
+
+    private interface PendingWrite {
 
-        return logsInInterval;
+        void write() throws IOException;
     }
 }
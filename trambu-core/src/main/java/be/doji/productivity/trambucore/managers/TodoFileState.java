@@ -0,0 +1,126 @@
+package be.doji.productivity.trambucore.managers;
+
+import be.doji.productivity.trambucore.model.tasks.Activity;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.*;
+
+/**
+ * Hashes of the lines of the todo file as the manager last read or wrote it, together with the id of the activity every
+ * line holds. Comparing the lines of a changed file against them tells which lines have to be parsed again and which
+ * activities are no longer in the file.
+ */
+final class TodoFileState {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Map<Long, List<UUID>> idsByLineHash = new HashMap<>();
+
+    private TodoFileState(List<String> lines, List<UUID> ids) {
+        for (int i = 0; i < lines.size(); i++) {
+            idsByLineHash.computeIfAbsent(hash(lines.get(i)), hash -> new ArrayList<>(1)).add(ids.get(i));
+        }
+    }
+
+    /**
+     * @param activitiesInFileOrder the activities read from, or written to, the non blank lines of the file
+     * @return the state, or nothing when the lines and activities do not match up
+     */
+    static Optional<TodoFileState> of(List<String> fileLines, List<Activity> activitiesInFileOrder) {
+        List<String> lines = getNonBlankLines(fileLines);
+        if (lines.size() != activitiesInFileOrder.size()) {
+            return Optional.empty();
+        }
+        List<UUID> ids = new ArrayList<>(lines.size());
+        for (Activity activity : activitiesInFileOrder) {
+            ids.add(activity.getId());
+        }
+        return Optional.of(new TodoFileState(lines, ids));
+    }
+
+    /**
+     * Matches the lines of the file against the known lines, every known line is matched at most once.
+     */
+    Diff diff(List<String> fileLines) {
+        List<String> lines = getNonBlankLines(fileLines);
+        Map<Long, Deque<UUID>> unmatchedIds = new HashMap<>();
+        idsByLineHash.forEach((hash, ids) -> unmatchedIds.put(hash, new ArrayDeque<>(ids)));
+
+        Diff diff = new Diff(lines);
+        for (String line : lines) {
+            Deque<UUID> ids = unmatchedIds.get(hash(line));
+            UUID id = ids == null?null:ids.poll();
+            diff.lineIds.add(id);
+            if (id == null) {
+                diff.changedLines.add(line);
+            }
+        }
+        unmatchedIds.values().forEach(diff.removedIds::addAll);
+        return diff;
+    }
+
+    private static List<String> getNonBlankLines(List<String> fileLines) {
+        List<String> lines = new ArrayList<>(fileLines.size());
+        for (String line : fileLines) {
+            if (StringUtils.isNotBlank(line)) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    /*
+     * 64 bit FNV-1a over the characters of the line.
+     */
+    private static long hash(String line) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < line.length(); i++) {
+            hash = (hash ^ line.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    static final class Diff {
+
+        private final List<String> lines;
+        private final List<UUID> lineIds = new ArrayList<>();
+        private final List<String> changedLines = new ArrayList<>();
+        private final Set<UUID> removedIds = new LinkedHashSet<>();
+
+        private Diff(List<String> lines) {
+            this.lines = lines;
+        }
+
+        /**
+         * @return the lines that were not in the file before, in file order
+         */
+        List<String> getChangedLines() {
+            return changedLines;
+        }
+
+        /**
+         * @return the ids of the activities whose line is no longer in the file, they may still be on a changed line
+         */
+        Set<UUID> getRemovedIds() {
+            return removedIds;
+        }
+
+        boolean isEmpty() {
+            return changedLines.isEmpty() && removedIds.isEmpty();
+        }
+
+        /**
+         * @param changedActivities the activities parsed from the changed lines, in file order
+         * @return the state of the file once the changed activities are applied
+         */
+        TodoFileState apply(List<Activity> changedActivities) {
+            List<UUID> ids = new ArrayList<>(lineIds.size());
+            Iterator<Activity> changedActivity = changedActivities.iterator();
+            for (UUID id : lineIds) {
+                ids.add(id == null?changedActivity.next().getId():id);
+            }
+            return new TodoFileState(lines, ids);
+        }
+    }
+}
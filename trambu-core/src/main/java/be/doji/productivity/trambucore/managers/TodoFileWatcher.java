@@ -0,0 +1,80 @@
+package be.doji.productivity.trambucore.managers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the directory of the todo file and calls back once the todo file was created, replaced or modified. Editors
+ * and sync clients tend to touch a file several times in a row, the callback only runs once no more events came in
+ * for a short while.
+ */
+final class TodoFileWatcher implements Closeable {
+
+    static final long SETTLE_MILLIS = 200;
+
+    private static final Logger LOG = LoggerFactory.getLogger(TodoFileWatcher.class);
+
+    private final Path fileName;
+    private final Runnable onChange;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    TodoFileWatcher(Path todoFile, Runnable onChange) throws IOException {
+        Path directory = todoFile.toAbsolutePath().getParent();
+        this.fileName = todoFile.getFileName();
+        this.onChange = onChange;
+        this.watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this::watch, "todo-file-watcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                if (isTodoFileEvent(watchService.take())) {
+                    WatchKey key;
+                    while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                        isTodoFileEvent(key);
+                    }
+                    runCallback();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            LOG.debug("Stopped watching " + fileName);
+        }
+    }
+
+    private boolean isTodoFileEvent(WatchKey key) {
+        boolean todoFileEvent = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            todoFileEvent |= event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context());
+        }
+        key.reset();
+        return todoFileEvent;
+    }
+
+    private void runCallback() {
+        try {
+            onChange.run();
+        } catch (RuntimeException e) {
+            LOG.error("Error reloading " + fileName, e);
+        }
+    }
+
+    @Override public void close() throws IOException {
+        watchService.close();
+        thread.interrupt();
+    }
+}
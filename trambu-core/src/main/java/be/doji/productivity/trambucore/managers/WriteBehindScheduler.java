@@ -0,0 +1,133 @@
+package be.doji.productivity.trambucore.managers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects changes to a manager and writes them to disk together on a background thread. The first change after a
+ * flush schedules the next flush after the configured delay, reaching the dirty threshold flushes right away. Changes
+ * that come in while a flush is running are picked up by the next one, and a failed flush is retried after the delay.
+ */
+public final class WriteBehindScheduler {
+
+    public static final long DEFAULT_DELAY_MILLIS = 2000;
+    public static final int DEFAULT_DIRTY_THRESHOLD = 50;
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindScheduler.class);
+
+    @FunctionalInterface public interface FlushAction {
+
+        void flush() throws IOException;
+    }
+
+    private final String name;
+    private final FlushAction flushAction;
+    private final long delayMillis;
+    private final int dirtyThreshold;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Object flushLock = new Object();
+
+    private int dirtyCount = 0;
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean shutDown = false;
+
+    public WriteBehindScheduler(String name, FlushAction flushAction, long delayMillis, int dirtyThreshold) {
+        this.name = name;
+        this.flushAction = flushAction;
+        this.delayMillis = delayMillis;
+        this.dirtyThreshold = Math.max(1, dirtyThreshold);
+        this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "write-behind-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.setKeepAliveTime(1, TimeUnit.SECONDS);
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public synchronized void markDirty() {
+        dirtyCount++;
+        if (shutDown) {
+            return;
+        }
+        if (dirtyCount >= dirtyThreshold) {
+            if (scheduledFlush == null || scheduledFlush.getDelay(TimeUnit.MILLISECONDS) > 0) {
+                scheduleFlush(0);
+            }
+        } else if (scheduledFlush == null) {
+            scheduleFlush(delayMillis);
+        }
+    }
+
+    public synchronized boolean isDirty() {
+        return dirtyCount > 0;
+    }
+
+    private void scheduleFlush(long delay) {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+        }
+        scheduledFlush = executor.schedule(this::flushInBackground, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void flushInBackground() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Unable to write " + name + ", retrying in " + delayMillis + "ms", e);
+            synchronized (this) {
+                if (scheduledFlush == null && !shutDown) {
+                    scheduleFlush(delayMillis);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes all pending changes on the calling thread. Does nothing when there are no pending changes.
+     */
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            int flushedChanges;
+            synchronized (this) {
+                if (scheduledFlush != null) {
+                    scheduledFlush.cancel(false);
+                    scheduledFlush = null;
+                }
+                flushedChanges = dirtyCount;
+                dirtyCount = 0;
+            }
+            if (flushedChanges == 0) {
+                return;
+            }
+            try {
+                flushAction.flush();
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    dirtyCount += flushedChanges;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Writes all pending changes and stops the background thread. Changes marked afterwards are only written by an
+     * explicit {@link #flush()}.
+     */
+    public void shutdown() throws IOException {
+        synchronized (this) {
+            shutDown = true;
+        }
+        try {
+            flush();
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
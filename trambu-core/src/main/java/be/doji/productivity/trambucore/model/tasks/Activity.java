@@ -1,43 +1,70 @@
 package be.doji.productivity.trambucore.model.tasks;
 
 import be.doji.productivity.trambucore.TrackMeConstants;
+import be.doji.productivity.trambucore.utils.SymbolTable;
+import be.doji.productivity.trambucore.utils.TimestampCodec;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import org.apache.commons.lang3.StringUtils;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.time.ZoneId;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.RandomAccess;
 import java.util.UUID;
 
 /**
  * Created by Doji on 22/10/2017.
+ * <p>
+ * Fields are kept in primitive form to keep large stores small: ids as two longs, dates as epoch milliseconds and
+ * tags, projects and the location as the shared instances of the {@link SymbolTable}. Lists handed out are read only
+ * views that keep showing the values they were taken with: arrays are replaced when a value is changed or removed, sub
+ * activities are only added behind the part a view covers.
  */
 @JsonIgnoreProperties(ignoreUnknown = true) public class Activity {
 
-    private UUID id;
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final String[] NO_SYMBOLS = new String[0];
+    private static final Activity[] NO_ACTIVITIES = new Activity[0];
+    private static final String[] ASCII_PRIORITIES = new String[128];
+
+    static {
+        for (char priority = 0; priority < ASCII_PRIORITIES.length; priority++) {
+            ASCII_PRIORITIES[priority] = String.valueOf(priority);
+        }
+    }
+
+    private long idMostSignificantBits;
+    private long idLeastSignificantBits;
+    private long parentMostSignificantBits;
+    private long parentLeastSignificantBits;
+    private final long creationMillis = System.currentTimeMillis();
+    private long completionMillis = NO_TIME;
+    private long deadlineMillis = NO_TIME;
+    private long warningPeriodMillis = TrackMeConstants.DEFAULT_WARNING_PERIOD.toMillis();
     private String name;
     private String priority;
-    private final LocalDateTime creationDate = LocalDateTime.now();
-    private Date completionDate;
-    private List<Activity> subActivities = new ArrayList<>();
     private boolean completed = false;
-    private List<String> tags = new ArrayList<>();
-    private List<String> projects = new ArrayList<>();
-    private Date deadline;
-    private Duration warningTimeFrame = TrackMeConstants.DEFAULT_WARNING_PERIOD;
-    private String parentActivity;
     private String location;
+    private String[] tags = NO_SYMBOLS;
+    private String[] projects = NO_SYMBOLS;
+    private Activity[] subActivities = NO_ACTIVITIES;
+    private int subActivityCount;
+    private String unparsedParent;
 
     public Activity() {
         this("New Activity");
     }
 
     public Activity(String taskName) {
-        this.id = UUID.randomUUID();
+        setId(UUID.randomUUID());
         this.name = taskName;
-        this.priority = PriorityConstants.PRIORITY_MEDIUM;
+        setPriority(PriorityConstants.PRIORITY_MEDIUM);
     }
 
     public String getName() {
@@ -52,40 +79,63 @@ import java.util.UUID;
         return priority;
     }
 
+    /**
+     * @param priority the priority as it is written, single characters share one instance
+     */
     public void setPriority(String priority) {
-        this.priority = priority;
+        if (priority != null && priority.length() == 1 && priority.charAt(0) < ASCII_PRIORITIES.length) {
+            this.priority = ASCII_PRIORITIES[priority.charAt(0)];
+        } else {
+            this.priority = priority;
+        }
     }
 
     public LocalDateTime getCreationDate() {
-        return creationDate;
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(creationMillis), ZoneId.systemDefault());
     }
 
     public Date getCompletionDate() {
-        return this.completionDate;
+        return toDate(completionMillis);
     }
 
     public void setCompletionDate(Date completionDate) {
-        this.completionDate = completionDate;
+        this.completionMillis = toMillis(completionDate);
     }
 
     public Date getDeadline() {
-        return deadline;
+        return toDate(deadlineMillis);
     }
 
     public void setDeadline(Date deadline) {
-        this.deadline = deadline;
+        this.deadlineMillis = toMillis(deadline);
+    }
+
+    private static Date toDate(long millis) {
+        return millis == NO_TIME?null:new Date(millis);
+    }
+
+    private static long toMillis(Date date) {
+        return date == null?NO_TIME:date.getTime();
     }
 
     public List<Activity> getSubActivities() {
-        return new ArrayList<>(subActivities);
+        return subActivityCount == 0?Collections.emptyList():new ArrayView<>(subActivities, subActivityCount);
     }
 
     public void setSubActivities(List<Activity> subActivities) {
-        this.subActivities = subActivities;
+        this.subActivities = subActivities.isEmpty()?NO_ACTIVITIES:subActivities.toArray(NO_ACTIVITIES);
+        this.subActivityCount = this.subActivities.length;
     }
 
+    /**
+     * The sub activities are kept in an array that grows by half its size when it is full, adding a sub activity takes
+     * amortized constant time.
+     */
     public void addSubTask(Activity subTask) {
-        this.subActivities.add(subTask);
+        if (subActivityCount == subActivities.length) {
+            subActivities = Arrays.copyOf(subActivities, Math.max(4, subActivityCount + (subActivityCount >> 1)));
+        }
+        subActivities[subActivityCount++] = subTask;
     }
 
     public void setCompleted(boolean completed) {
@@ -98,30 +148,44 @@ import java.util.UUID;
 
     public boolean isAllSubActivitiesCompleted() {
         boolean allCompeted = true;
-        for (Activity sub : this.subActivities) {
-            allCompeted = allCompeted && sub.isCompleted();
+        for (int i = 0; i < subActivityCount; i++) {
+            allCompeted = allCompeted && subActivities[i].isCompleted();
         }
         return allCompeted;
     }
 
     public List<String> getTags() {
-        return new ArrayList<>(tags);
+        return new ArrayView<>(tags, tags.length);
     }
 
     public void addTags(List<String> tags) {
-        this.tags.addAll(tags);
+        this.tags = append(this.tags, tags);
     }
 
     public void addTag(String tag) {
-        this.tags.add(tag);
+        this.tags = append(this.tags, Collections.singletonList(tag));
     }
 
     public List<String> getProjects() {
-        return new ArrayList<>(projects);
+        return new ArrayView<>(projects, projects.length);
     }
 
     public void addProject(String project) {
-        this.projects.add(project);
+        this.projects = append(this.projects, Collections.singletonList(project));
+    }
+
+    /*
+     * Null values are not stored.
+     */
+    private static String[] append(String[] symbols, List<String> values) {
+        String[] extended = Arrays.copyOf(symbols, symbols.length + values.size());
+        int size = symbols.length;
+        for (String value : values) {
+            if (value != null) {
+                extended[size++] = SymbolTable.canonical(value);
+            }
+        }
+        return size == 0?NO_SYMBOLS:size == extended.length?extended:Arrays.copyOf(extended, size);
     }
 
     public String getLocation() {
@@ -129,11 +193,11 @@ import java.util.UUID;
     }
 
     public void setLocation(String location) {
-        this.location = location;
+        this.location = SymbolTable.canonical(location);
     }
 
     public boolean isSetLocation() {
-        return StringUtils.isNotBlank(this.location);
+        return StringUtils.isNotBlank(getLocation());
     }
 
     public String toString() {
@@ -157,71 +221,128 @@ import java.util.UUID;
             sb.append(" ");
         }
 
-        if (deadline != null) {
+        if (isSetDeadline()) {
             sb.append(TrackMeConstants.INDICATOR_DEADLINE);
-            sb.append(TrackMeConstants.getDateFormat().format(deadline));
+            TimestampCodec.getInstance().format(deadlineMillis, sb);
             sb.append(" ");
         }
 
-        if (this.warningTimeFrame != null) {
+        if (this.isCompleted() && completionMillis != NO_TIME) {
+            sb.append(TrackMeConstants.INDICATOR_COMPLETION_DATE);
+            TimestampCodec.getInstance().format(completionMillis, sb);
+            sb.append(" ");
+        }
+
+        if (warningPeriodMillis != NO_TIME) {
             sb.append(TrackMeConstants.INDICATOR_WARNING_PERIOD);
-            sb.append(warningTimeFrame.toString());
+            sb.append(getWarningTimeFrame().toString());
             sb.append(" ");
         }
         if (isSetLocation()) {
             sb.append(TrackMeConstants.INDICATOR_LOCATION);
-            sb.append(this.location);
+            sb.append(getLocation());
             sb.append(" ");
         }
 
-        if (StringUtils.isNotBlank(this.parentActivity)) {
+        String parentActivity = getParentActivity();
+        if (parentActivity != null) {
             sb.append(TrackMeConstants.INDICATOR_PARENT_ACTIVITY);
             sb.append(parentActivity);
             sb.append(" ");
         }
 
         sb.append(TrackMeConstants.INDICATOR_UUID);
-        sb.append(this.id.toString());
+        sb.append(getId().toString());
         sb.append(" ");
 
         return sb.toString().trim();
     }
 
     public UUID getId() {
-        return id;
+        return new UUID(idMostSignificantBits, idLeastSignificantBits);
     }
 
     public Duration getWarningTimeFrame() {
-        return warningTimeFrame;
+        if (warningPeriodMillis == NO_TIME) {
+            return null;
+        }
+        return warningPeriodMillis == TrackMeConstants.DEFAULT_WARNING_PERIOD.toMillis()?
+                TrackMeConstants.DEFAULT_WARNING_PERIOD:
+                Duration.ofMillis(warningPeriodMillis);
     }
 
+    /**
+     * @param warningTimeFrame the period before the deadline in which the activity is shown as urgent, it is kept to
+     *                         the millisecond
+     */
     public void setWarningTimeFrame(Duration warningTimeFrame) {
-        this.warningTimeFrame = warningTimeFrame;
+        this.warningPeriodMillis = warningTimeFrame == null?NO_TIME:warningTimeFrame.toMillis();
     }
 
+    /**
+     * @param parentActivity the id of the parent activity. A value that is not a UUID is kept as it is written.
+     */
     public void setParentActivity(String parentActivity) {
-        this.parentActivity = parentActivity;
+        this.parentMostSignificantBits = 0;
+        this.parentLeastSignificantBits = 0;
+        this.unparsedParent = null;
+        if (StringUtils.isNotBlank(parentActivity)) {
+            try {
+                UUID parentId = UUID.fromString(parentActivity);
+                this.parentMostSignificantBits = parentId.getMostSignificantBits();
+                this.parentLeastSignificantBits = parentId.getLeastSignificantBits();
+            } catch (IllegalArgumentException e) {
+                this.unparsedParent = parentActivity;
+            }
+        }
     }
 
+    /**
+     * @return the id of the parent activity, or null when the activity is not a sub activity
+     */
     public String getParentActivity() {
-        return parentActivity;
+        if (unparsedParent != null) {
+            return unparsedParent;
+        }
+        if (parentMostSignificantBits == 0 && parentLeastSignificantBits == 0) {
+            return null;
+        }
+        return new UUID(parentMostSignificantBits, parentLeastSignificantBits).toString();
     }
 
     public void removeSubActivity(Activity activityToDelete) {
-        this.subActivities.removeIf(subActivity -> subActivity.getId().equals(activityToDelete.getId()));
+        int remaining = 0;
+        Activity[] kept = new Activity[subActivityCount];
+        for (int i = 0; i < subActivityCount; i++) {
+            if (!subActivities[i].hasId(activityToDelete)) {
+                kept[remaining++] = subActivities[i];
+            }
+        }
+        this.subActivities = remaining == 0?NO_ACTIVITIES:kept;
+        this.subActivityCount = remaining;
+    }
+
+    private boolean hasId(Activity other) {
+        return idMostSignificantBits == other.idMostSignificantBits
+                && idLeastSignificantBits == other.idLeastSignificantBits;
     }
 
     public void setId(String uuidString) {
-        this.id = UUID.fromString(uuidString);
+        setId(UUID.fromString(uuidString));
+    }
+
+    private void setId(UUID id) {
+        this.idMostSignificantBits = id.getMostSignificantBits();
+        this.idLeastSignificantBits = id.getLeastSignificantBits();
     }
 
     public boolean isSetDeadline() {
-        return this.deadline != null;
+        return this.deadlineMillis != NO_TIME;
     }
 
     public boolean isAlertActive() {
         if (isSetDeadline()) {
-            return ((this.deadline.getTime() - new Date().getTime()) / 1000) < this.warningTimeFrame.getSeconds();
+            return ((this.deadlineMillis - System.currentTimeMillis()) / 1000) < getWarningTimeFrame().getSeconds();
         } else {
             return false;
         }
@@ -229,11 +350,36 @@ import java.util.UUID;
     }
 
     public void setProjects(List<String> projects) {
-        this.projects = projects;
+        this.projects = append(NO_SYMBOLS, projects);
     }
 
     public void setTags(List<String> tags) {
-        this.tags = tags;
+        this.tags = append(NO_SYMBOLS, tags);
+    }
+
+    /*
+     * Read only view on the first values of an array.
+     */
+    private static final class ArrayView<T> extends AbstractList<T> implements RandomAccess {
+
+        private final T[] values;
+        private final int size;
+
+        private ArrayView(T[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        @Override public T get(int index) {
+            if (index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return values[index];
+        }
+
+        @Override public int size() {
+            return size;
+        }
     }
 
 }
@@ -4,15 +4,31 @@ import be.doji.productivity.trambucore.TrackMeConstants;
 import be.doji.productivity.trambucore.model.tasks.Activity;
 import be.doji.productivity.trambucore.utils.TrackerUtils;
 
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.*;
 
 /**
  * Created by Doji on 22/10/2017.
+ * <p>
+ * The logpoints are kept in two parallel arrays of epoch milliseconds, see {@link TimeLog} for the values that mark
+ * a missing or running time. {@link #getLogpoints()} hands out {@link TimeLog} views on these rows.
  */
 public class ActivityLog {
 
+    private static final int INITIAL_CAPACITY = 4;
+    private static final long[] NO_LOGPOINTS = new long[0];
+
     private UUID activityId;
-    private List<TimeLog> logpoints = new ArrayList<>();
+    private long[] starts = NO_LOGPOINTS;
+    private long[] ends = NO_LOGPOINTS;
+    private int logpointCount = 0;
+    private int activePosition = -1;
+    private long closedMillis = 0;
+    private long openStartSum = 0;
+    private int openCount = 0;
+    private DailyTotals dailyTotals;
+    private LogpointListener logpointListener;
 
     public ActivityLog(Activity activity) {
         this.activityId = activity.getId();
@@ -30,12 +46,84 @@ public class ActivityLog {
         this.activityId = activityId;
     }
 
+    /**
+     * @return a live view on the logpoints. Adding to the list adds a logpoint to this log, the views it returns stay
+     * valid until the logpoints are replaced through {@link #setLogpoints(List)}.
+     */
     public List<TimeLog> getLogpoints() {
-        return logpoints;
+        return new LogpointList();
     }
 
     public void setLogpoints(List<TimeLog> logpoints) {
-        this.logpoints = logpoints;
+        long[] newStarts = new long[logpoints.size()];
+        long[] newEnds = new long[logpoints.size()];
+        for (int i = 0; i < newStarts.length; i++) {
+            TimeLog logpoint = logpoints.get(i);
+            newStarts[i] = logpoint.getStartMillis();
+            newEnds[i] = logpoint.getEndMillis();
+        }
+
+        int replacedCount = logpointCount;
+        this.starts = newStarts;
+        this.ends = newEnds;
+        this.logpointCount = newStarts.length;
+        this.activePosition = findActivePosition();
+        recalculateTotals();
+        if (logpointListener != null) {
+            for (int i = replacedCount - 1; i >= 0; i--) {
+                logpointListener.logpointRemoved(this, i);
+            }
+        }
+        for (int i = 0; i < logpointCount; i++) {
+            TimeLog logpoint = logpoints.get(i);
+            if (logpoint.isDetached()) {
+                logpoint.attach(this, i);
+            }
+            if (logpointListener != null) {
+                logpointListener.logpointAdded(this, i);
+            }
+        }
+    }
+
+    public void setLogpointListener(LogpointListener logpointListener) {
+        this.logpointListener = logpointListener;
+    }
+
+    public int getLogpointCount() {
+        return logpointCount;
+    }
+
+    public long getLogpointStart(int position) {
+        checkPosition(position);
+        return starts[position];
+    }
+
+    public long getLogpointEnd(int position) {
+        checkPosition(position);
+        return ends[position];
+    }
+
+    void setLogpointStart(int position, long startMillis) {
+        checkPosition(position);
+        removeFromTotals(position);
+        starts[position] = startMillis;
+        addToTotals(position);
+        notifyChanged(position);
+    }
+
+    void setLogpointEnd(int position, long endMillis) {
+        checkPosition(position);
+        removeFromTotals(position);
+        ends[position] = endMillis;
+        addToTotals(position);
+        if (endMillis == TimeLog.ACTIVE_END) {
+            if (activePosition < 0 || position < activePosition) {
+                activePosition = position;
+            }
+        } else if (position == activePosition) {
+            activePosition = findActivePosition();
+        }
+        notifyChanged(position);
     }
 
     public String toString() {
@@ -45,51 +133,73 @@ public class ActivityLog {
         logLine.append(activityId.toString());
 
         logLine.append(System.lineSeparator());
-        for (TimeLog logPoint : logpoints) {
-            logLine.append(logPoint.toString());
+        for (int i = 0; i < logpointCount; i++) {
+            TimeLog.appendLogpoint(starts[i], ends[i], logLine);
             logLine.append(System.lineSeparator());
         }
         logLine.append(TrackMeConstants.INDICATOR_LOG_END);
         return logLine.toString();
     }
 
+    /**
+     * Copies the times of the logpoint into this log. A logpoint that is not part of another log yet becomes a view on
+     * the new row.
+     */
     public void addLogPoint(TimeLog timeLog) {
-        this.logpoints.add(timeLog);
+        int position = logpointCount;
+        appendRow(timeLog.getStartMillis(), timeLog.getEndMillis());
+        if (timeLog.isDetached()) {
+            timeLog.attach(this, position);
+        }
+        notifyAdded(position);
+    }
+
+    /**
+     * @param endMillis the end time, {@link TimeLog#ACTIVE_END} for a running logpoint
+     */
+    public void addLogPoint(long startMillis, long endMillis) {
+        appendRow(startMillis, endMillis);
+        notifyAdded(logpointCount - 1);
     }
 
     public void startLog() {
-        Optional<TimeLog> activeLog = getActiveLog();
-        if (activeLog.isPresent()) {
-            activeLog.get().stop();
-        }
-        TimeLog timeLog = new TimeLog();
-        timeLog.start();
-        this.addLogPoint(timeLog);
+        stopActiveLog();
+        addLogPoint(System.currentTimeMillis(), TimeLog.ACTIVE_END);
     }
 
     public Optional<TimeLog> getActiveLog() {
-        for (TimeLog log : this.logpoints) {
-            if (log.isActive()) {
-                return Optional.of(log);
-            }
-        }
-        return Optional.empty();
+        return activePosition < 0?Optional.empty():Optional.of(new TimeLog(this, activePosition));
+    }
+
+    public boolean hasActiveLog() {
+        return activePosition >= 0;
     }
 
     public void stopActiveLog() {
-        Optional<TimeLog> activeLog = getActiveLog();
-        if (activeLog.isPresent()) {
-            activeLog.get().stop();
+        if (activePosition >= 0) {
+            setLogpointEnd(activePosition, System.currentTimeMillis());
         }
     }
 
+    /*
+     * The first running logpoint is cached in activePosition, this scan only runs when it stops.
+     */
+    private int findActivePosition() {
+        for (int i = 0; i < logpointCount; i++) {
+            if (ends[i] == TimeLog.ACTIVE_END) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     public String getTimeSpentInHoursString() {
         double hours = getTimeSpentInHours();
         return String.valueOf(hours) + " hours";
     }
 
     public double getTimeSpentInHours() {
-        double timeSpentInMilies = getTimeSpentInMilies();
+        double timeSpentInMilies = getTimeSpentInMillis();
         double timeSpentInHours = (timeSpentInMilies / (1000 * 60 * 60));
         return TrackerUtils.roundToSignificantNumbers(timeSpentInHours, 2);
     }
@@ -100,7 +210,7 @@ public class ActivityLog {
     }
 
     public double getTimeSpentInMinutes() {
-        double timeSpentInMilies = getTimeSpentInMilies();
+        double timeSpentInMilies = getTimeSpentInMillis();
         double timeSpentInMinutes = (timeSpentInMilies / (1000 * 60));
         return TrackerUtils.roundToSignificantNumbers(timeSpentInMinutes, 2);
     }
@@ -111,58 +221,200 @@ public class ActivityLog {
     }
 
     public double getTimeSpentInSeconds() {
-        double timeSpentInMilies = getTimeSpentInMilies();
+        double timeSpentInMilies = getTimeSpentInMillis();
         double timeSpentInSeconds = (timeSpentInMilies / (1000));
         return TrackerUtils.roundToSignificantNumbers(timeSpentInSeconds, 2);
     }
 
-    private double getTimeSpentInMilies() {
-        double timeSpentInMilies = 0;
-        for (TimeLog log : this.logpoints) {
-            if (log.isActive()) {
-                timeSpentInMilies += new Date().getTime() - log.getStartTime().getTime();
-            } else {
-                timeSpentInMilies += log.getEndTime().getTime() - log.getStartTime().getTime();
+    /**
+     * @return the time logged on this activity. Totals of stopped logpoints are kept up to date as logpoints change,
+     * only running logpoints are measured on every call. Logpoints without a start, or that were stopped without an
+     * end time, do not count.
+     */
+    public long getTimeSpentInMillis() {
+        return getStoppedTimeSpentInMillis() + getRunningTimeSpentInMillis();
+    }
+
+    /**
+     * @return the time logged on logpoints that are stopped, which only changes when the logpoints change
+     */
+    public long getStoppedTimeSpentInMillis() {
+        return closedMillis;
+    }
+
+    /**
+     * @return the time logged on logpoints that are still running, up to now
+     */
+    public long getRunningTimeSpentInMillis() {
+        return openCount * System.currentTimeMillis() - openStartSum;
+    }
+
+    /**
+     * @return the time logged on the given day in the default time zone, logpoints that cross midnight count on every
+     * day they cover
+     */
+    public long getTimeSpentInMillis(LocalDate day) {
+        DailyTotals totals = getDailyTotals();
+        long now = System.currentTimeMillis();
+        long timeSpent = totals.getMillis(day);
+        for (int i = activePosition; i >= 0 && i < logpointCount; i++) {
+            if (isOpen(starts[i], ends[i])) {
+                timeSpent += totals.getOverlap(day, starts[i], now);
             }
         }
-        return timeSpentInMilies;
+        return timeSpent;
     }
 
-    public List<TimeLog> getTimeLogsInInterval(Date intervalStartTime, Date intervalEndTime) {
-        List<TimeLog> logsInInterval = new ArrayList<>();
-        for (TimeLog log : this.logpoints) {
-            if (isInInterval(log.getStartTime(), intervalStartTime, intervalEndTime) || (log.getEndTime() != null
-                    && isInInterval(log.getEndTime(), intervalStartTime, intervalEndTime))) {
-                TimeLog timeLogInInterval = getLogPartitionInInterval(intervalStartTime, intervalEndTime, log);
-                logsInInterval.add(timeLogInInterval);
+    /**
+     * @return the time logged per day in the default time zone, days without logged time are left out
+     */
+    public SortedMap<LocalDate, Long> getTimeSpentPerDay() {
+        DailyTotals totals = getDailyTotals().copy();
+        long now = System.currentTimeMillis();
+        for (int i = activePosition; i >= 0 && i < logpointCount; i++) {
+            if (isOpen(starts[i], ends[i])) {
+                totals.add(starts[i], now);
+            }
+        }
+        return totals.toSortedMap();
+    }
+
+    /*
+     * The daily totals are only built once they are asked for and are kept up to date from then on.
+     */
+    private DailyTotals getDailyTotals() {
+        ZoneId zone = ZoneId.systemDefault();
+        if (dailyTotals == null || !dailyTotals.getZone().equals(zone)) {
+            dailyTotals = new DailyTotals(zone);
+            for (int i = 0; i < logpointCount; i++) {
+                if (isClosed(starts[i], ends[i])) {
+                    dailyTotals.add(starts[i], ends[i]);
+                }
+            }
+        }
+        return dailyTotals;
+    }
+
+    private void recalculateTotals() {
+        closedMillis = 0;
+        openStartSum = 0;
+        openCount = 0;
+        dailyTotals = null;
+        for (int i = 0; i < logpointCount; i++) {
+            addToTotals(i);
+        }
+    }
+
+    private void addToTotals(int position) {
+        long start = starts[position];
+        long end = ends[position];
+        if (isClosed(start, end)) {
+            closedMillis += end - start;
+            if (dailyTotals != null) {
+                dailyTotals.add(start, end);
             }
+        } else if (isOpen(start, end)) {
+            openStartSum += start;
+            openCount++;
         }
-        return logsInInterval;
     }
 
-    private TimeLog getLogPartitionInInterval(Date intervalStartTime, Date intervalEndTime, TimeLog log) {
-        TimeLog timeLogInInterval = new TimeLog();
-        timeLogInInterval.setStartTime(isInInterval(log.getStartTime(), intervalStartTime, intervalEndTime)?
-                log.getStartTime():
-                intervalStartTime);
-        if (log.getEndTime() != null) {
-            if (isInInterval(log.getEndTime(), intervalStartTime, intervalEndTime)) {
-                timeLogInInterval.setEndTime(log.getEndTime());
-            } else {
-                timeLogInInterval.setEndTime(getLogEndtimeReplacement(intervalEndTime));
+    private void removeFromTotals(int position) {
+        long start = starts[position];
+        long end = ends[position];
+        if (isClosed(start, end)) {
+            closedMillis -= end - start;
+            if (dailyTotals != null) {
+                dailyTotals.remove(start, end);
             }
-        } else {
-            timeLogInInterval.setEndTime(getLogEndtimeReplacement(intervalEndTime));
+        } else if (isOpen(start, end)) {
+            openStartSum -= start;
+            openCount--;
+        }
+    }
+
+    private static boolean isClosed(long start, long end) {
+        return start != TimeLog.NO_TIME && TimeLog.hasEnd(end);
+    }
+
+    private static boolean isOpen(long start, long end) {
+        return start != TimeLog.NO_TIME && end == TimeLog.ACTIVE_END;
+    }
+
+    public List<TimeLog> getTimeLogsInInterval(Date intervalStartTime, Date intervalEndTime) {
+        long intervalStart = intervalStartTime.getTime();
+        long intervalEnd = intervalEndTime.getTime();
+        long now = System.currentTimeMillis();
+        ActivityLog logsInInterval = new ActivityLog(activityId);
+        for (int i = 0; i < logpointCount; i++) {
+            logsInInterval.addLogPointInInterval(starts[i], ends[i], intervalStart, intervalEnd, now);
         }
-        return timeLogInInterval;
+        return logsInInterval.getLogpoints();
     }
 
-    private Date getLogEndtimeReplacement(Date intervalEndTime) {
-        Date today = new Date();
-        return today.before(intervalEndTime)?today:intervalEndTime;
+    /**
+     * Adds the part of the given logpoint that lies within the interval, a logpoint without an end time runs up to
+     * {@code now}.
+     *
+     * @return false when the logpoint does not overlap the interval and nothing was added
+     */
+    public boolean addLogPointInInterval(long startMillis, long endMillis, long intervalStart, long intervalEnd,
+            long now) {
+        if (!TimeLog.overlaps(startMillis, endMillis, intervalStart, intervalEnd, now)) {
+            return false;
+        }
+        addLogPoint(TimeLog.clipStart(startMillis, intervalStart),
+                TimeLog.clipEnd(endMillis, intervalStart, intervalEnd, now));
+        return true;
+    }
+
+    private void appendRow(long startMillis, long endMillis) {
+        if (logpointCount == starts.length) {
+            int newCapacity = Math.max(INITIAL_CAPACITY, starts.length * 2);
+            starts = Arrays.copyOf(starts, newCapacity);
+            ends = Arrays.copyOf(ends, newCapacity);
+        }
+        starts[logpointCount] = startMillis;
+        ends[logpointCount] = endMillis;
+        if (endMillis == TimeLog.ACTIVE_END && activePosition < 0) {
+            activePosition = logpointCount;
+        }
+        logpointCount++;
+        addToTotals(logpointCount - 1);
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position >= logpointCount) {
+            throw new IndexOutOfBoundsException("Logpoint " + position + " of " + logpointCount);
+        }
+    }
+
+    private void notifyAdded(int position) {
+        if (logpointListener != null) {
+            logpointListener.logpointAdded(this, position);
+        }
     }
 
-    private boolean isInInterval(Date dateToCheck, Date intervalStartTime, Date intervalEndTime) {
-        return dateToCheck.compareTo(intervalStartTime) >= 0 && dateToCheck.compareTo(intervalEndTime) <= 0;
+    private void notifyChanged(int position) {
+        if (logpointListener != null) {
+            logpointListener.logpointChanged(this, position);
+        }
+    }
+
+    private final class LogpointList extends AbstractList<TimeLog> implements RandomAccess {
+
+        @Override public TimeLog get(int index) {
+            checkPosition(index);
+            return new TimeLog(ActivityLog.this, index);
+        }
+
+        @Override public int size() {
+            return logpointCount;
+        }
+
+        @Override public boolean add(TimeLog timeLog) {
+            addLogPoint(timeLog);
+            return true;
+        }
     }
 }
@@ -0,0 +1,84 @@
+package be.doji.productivity.trambucore.model.tracker;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Milliseconds logged per calendar day. Logpoints that cross midnight are split over the days they cover, days are
+ * taken in the time zone the totals were created for.
+ */
+final class DailyTotals {
+
+    private final ZoneId zone;
+    private final TreeMap<Long, Long> millisPerEpochDay = new TreeMap<>();
+
+    DailyTotals(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    ZoneId getZone() {
+        return zone;
+    }
+
+    void add(long startMillis, long endMillis) {
+        addTo(startMillis, endMillis, 1);
+    }
+
+    void remove(long startMillis, long endMillis) {
+        addTo(startMillis, endMillis, -1);
+    }
+
+    long getMillis(LocalDate day) {
+        return millisPerEpochDay.getOrDefault(day.toEpochDay(), 0L);
+    }
+
+    DailyTotals copy() {
+        DailyTotals copy = new DailyTotals(zone);
+        copy.millisPerEpochDay.putAll(millisPerEpochDay);
+        return copy;
+    }
+
+    SortedMap<LocalDate, Long> toSortedMap() {
+        SortedMap<LocalDate, Long> result = new TreeMap<>();
+        for (Map.Entry<Long, Long> day : millisPerEpochDay.entrySet()) {
+            result.put(LocalDate.ofEpochDay(day.getKey()), day.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * @return the part of the interval that falls on the given day
+     */
+    long getOverlap(LocalDate day, long startMillis, long endMillis) {
+        long dayStart = day.atStartOfDay(zone).toInstant().toEpochMilli();
+        long dayEnd = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        return Math.max(0, Math.min(endMillis, dayEnd) - Math.max(startMillis, dayStart));
+    }
+
+    private void addTo(long startMillis, long endMillis, int sign) {
+        LocalDate day = Instant.ofEpochMilli(startMillis).atZone(zone).toLocalDate();
+        if (endMillis <= startMillis) {
+            merge(day, sign * (endMillis - startMillis));
+            return;
+        }
+        long sliceStart = startMillis;
+        while (sliceStart < endMillis) {
+            long nextDayStart = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            long sliceEnd = Math.min(endMillis, nextDayStart);
+            merge(day, sign * (sliceEnd - sliceStart));
+            sliceStart = sliceEnd;
+            day = day.plusDays(1);
+        }
+    }
+
+    private void merge(LocalDate day, long millis) {
+        if (millis != 0) {
+            millisPerEpochDay
+                    .merge(day.toEpochDay(), millis, (first, second) -> first + second == 0?null:first + second);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package be.doji.productivity.trambucore.model.tracker;
+
+/**
+ * Gets notified when the logpoints of an {@link ActivityLog} change through its own methods or through one of its
+ * {@link TimeLog} views. Logpoints are identified by their position in the log.
+ */
+public interface LogpointListener {
+
+    void logpointAdded(ActivityLog activityLog, int position);
+
+    void logpointChanged(ActivityLog activityLog, int position);
+
+    void logpointRemoved(ActivityLog activityLog, int position);
+}
@@ -1,58 +1,194 @@
 package be.doji.productivity.trambucore.model.tracker;
 
 import be.doji.productivity.trambucore.TrackMeConstants;
+import be.doji.productivity.trambucore.utils.TimestampCodec;
 
 import java.util.Date;
+import java.util.Optional;
 
+/**
+ * A single logpoint. Logpoints that belong to an {@link ActivityLog} are stored in its primitive columns, a TimeLog
+ * obtained from the log is a view on one of those rows and writes straight through to it. A TimeLog that was created on
+ * its own keeps its times in its own fields until it is added to a log.
+ * <p>
+ * Times are stored as epoch milliseconds, {@link #NO_TIME} stands for a time that is not set and an end time of
+ * {@link #ACTIVE_END} marks a logpoint that is still running. An active logpoint never has an end time.
+ */
 public class TimeLog {
 
-    private Date startTime;
-    private Date endTime;
-    private boolean isActive;
+    public static final long NO_TIME = Long.MIN_VALUE;
+    public static final long ACTIVE_END = Long.MAX_VALUE;
+
+    private ActivityLog owner;
+    private int position;
+    private long start = NO_TIME;
+    private long end = NO_TIME;
+
+    public TimeLog() {
+    }
+
+    TimeLog(ActivityLog owner, int position) {
+        this.owner = owner;
+        this.position = position;
+    }
 
     public void start() {
-        this.startTime = new Date();
-        isActive = true;
+        setStartMillis(System.currentTimeMillis());
+        setEndMillis(ACTIVE_END);
     }
 
     public void stop() {
-        this.endTime = new Date();
-        isActive = false;
+        setEndMillis(System.currentTimeMillis());
     }
 
     public Date getStartTime() {
-        return startTime;
+        long startMillis = getStartMillis();
+        return startMillis == NO_TIME?null:new Date(startMillis);
     }
 
     public void setStartTime(Date startTime) {
-        this.startTime = startTime;
+        setStartMillis(startTime == null?NO_TIME:startTime.getTime());
     }
 
     public Date getEndTime() {
-        return endTime;
+        long endMillis = getEndMillis();
+        return hasEnd(endMillis)?new Date(endMillis):null;
     }
 
     public void setEndTime(Date endTime) {
-        this.endTime = endTime;
+        if (endTime != null) {
+            setEndMillis(endTime.getTime());
+        } else if (!isActive()) {
+            setEndMillis(NO_TIME);
+        }
     }
 
     public boolean isActive() {
-        return isActive;
+        return getEndMillis() == ACTIVE_END;
     }
 
+    /**
+     * Marking a logpoint active drops its end time, marking it inactive keeps whatever end time is set.
+     */
     public void setActive(boolean active) {
-        isActive = active;
+        if (active) {
+            setEndMillis(ACTIVE_END);
+        } else if (isActive()) {
+            setEndMillis(NO_TIME);
+        }
+    }
+
+    public long getStartMillis() {
+        return owner == null?start:owner.getLogpointStart(position);
+    }
+
+    public long getEndMillis() {
+        return owner == null?end:owner.getLogpointEnd(position);
+    }
+
+    private void setStartMillis(long startMillis) {
+        if (owner == null) {
+            this.start = startMillis;
+        } else {
+            owner.setLogpointStart(position, startMillis);
+        }
+    }
+
+    private void setEndMillis(long endMillis) {
+        if (owner == null) {
+            this.end = endMillis;
+        } else {
+            owner.setLogpointEnd(position, endMillis);
+        }
+    }
+
+    boolean isDetached() {
+        return owner == null;
+    }
+
+    void attach(ActivityLog owner, int position) {
+        this.owner = owner;
+        this.position = position;
+    }
+
+    /**
+     * @return the part of this log that lies within the interval, empty when the log does not overlap it. A log without
+     * an end time runs up to now.
+     */
+    public Optional<TimeLog> getPartitionInInterval(Date intervalStartTime, Date intervalEndTime) {
+        long intervalStart = intervalStartTime.getTime();
+        long intervalEnd = intervalEndTime.getTime();
+        long now = System.currentTimeMillis();
+        long startMillis = getStartMillis();
+        long endMillis = getEndMillis();
+        if (!overlaps(startMillis, endMillis, intervalStart, intervalEnd, now)) {
+            return Optional.empty();
+        }
+
+        TimeLog timeLogInInterval = new TimeLog();
+        timeLogInInterval.start = clipStart(startMillis, intervalStart);
+        timeLogInInterval.end = clipEnd(endMillis, intervalStart, intervalEnd, now);
+        return Optional.of(timeLogInInterval);
+    }
+
+    static boolean hasEnd(long endMillis) {
+        return endMillis != NO_TIME && endMillis != ACTIVE_END;
+    }
+
+    static boolean overlaps(long startMillis, long endMillis, long intervalStart, long intervalEnd, long now) {
+        if (startMillis == NO_TIME || startMillis > intervalEnd) {
+            return false;
+        }
+        long effectiveEnd = hasEnd(endMillis)?endMillis:Math.max(now, startMillis);
+        return effectiveEnd >= intervalStart;
+    }
+
+    /*
+     * Only valid for logpoints that overlap the interval, so the start never lies after the interval end.
+     */
+    static long clipStart(long startMillis, long intervalStart) {
+        return startMillis < intervalStart?intervalStart:startMillis;
+    }
+
+    static long clipEnd(long endMillis, long intervalStart, long intervalEnd, long now) {
+        if (hasEnd(endMillis) && endMillis >= intervalStart && endMillis <= intervalEnd) {
+            return endMillis;
+        }
+        return Math.min(now, intervalEnd);
+    }
+
+    static void appendLogpoint(long startMillis, long endMillis, StringBuilder target) {
+        target.append(TrackMeConstants.INDICATOR_LOGPOINT_START);
+        TimestampCodec.getInstance().format(startMillis, target);
+        target.append(" ");
+        if (hasEnd(endMillis)) {
+            target.append(TrackMeConstants.INDICATOR_LOGPOINT_END);
+            TimestampCodec.getInstance().format(endMillis, target);
+        }
+    }
+
+    /**
+     * Views on the same row of the same log are equal, a log that is not part of an activity log is only equal to
+     * itself.
+     */
+    @Override public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof TimeLog) || owner == null) {
+            return false;
+        }
+        TimeLog otherLog = (TimeLog) other;
+        return owner == otherLog.owner && position == otherLog.position;
+    }
+
+    @Override public int hashCode() {
+        return owner == null?System.identityHashCode(this):31 * System.identityHashCode(owner) + position;
     }
 
     public String toString() {
         StringBuilder logPointString = new StringBuilder();
-        logPointString.append(TrackMeConstants.INDICATOR_LOGPOINT_START);
-        logPointString.append(TrackMeConstants.getDateFormat().format(this.getStartTime()));
-        logPointString.append(" ");
-        if(this.getEndTime() != null) {
-            logPointString.append(TrackMeConstants.INDICATOR_LOGPOINT_END);
-            logPointString.append(TrackMeConstants.getDateFormat().format(this.getEndTime()));
-        }
+        appendLogpoint(getStartMillis(), getEndMillis(), logPointString);
         return logPointString.toString();
     }
 }
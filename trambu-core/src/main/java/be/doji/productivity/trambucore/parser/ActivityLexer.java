@@ -0,0 +1,341 @@
+package be.doji.productivity.trambucore.parser;
+
+import be.doji.productivity.trambucore.TrackMeConstants;
+import be.doji.productivity.trambucore.model.tasks.Activity;
+import be.doji.productivity.trambucore.utils.SymbolTable;
+import be.doji.productivity.trambucore.utils.TimestampCodec;
+
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.Date;
+
+/**
+ * Hand written tokenizer for the todo.txt activity format. The line is read once from left to right and every
+ * recognized token is written straight into the {@link Activity} that is being built.
+ */
+final class ActivityLexer {
+
+    private static final int UUID_LENGTH = 36;
+
+    private final CharSequence line;
+    private final int length;
+    private final Activity activity;
+    private final boolean deferDetails;
+
+    private boolean nameFound = false;
+    private int nameResumePosition = 0;
+
+    ActivityLexer(CharSequence line) {
+        this(line, new Activity(), false);
+    }
+
+    /**
+     * @param deferDetails when set, tags, projects, the location and the warning period are skipped, they can be read
+     *                     into the activity later on through {@link #readDetails()}
+     */
+    ActivityLexer(CharSequence line, Activity activity, boolean deferDetails) {
+        this.line = line;
+        this.length = line.length();
+        this.activity = activity;
+        this.deferDetails = deferDetails;
+    }
+
+    Activity tokenize() throws ParseException {
+        int position = readCompletedMarker();
+        boolean priorityFound = false;
+
+        while (position < length) {
+            char current = line.charAt(position);
+            if (!nameFound && position >= nameResumePosition && isNameStart(position)) {
+                readName(position);
+            }
+
+            switch (current) {
+            case '(':
+                if (!priorityFound && isPriorityAt(position)) {
+                    activity.setPriority(String.valueOf(line.charAt(position + 1)));
+                    priorityFound = true;
+                }
+                break;
+            case 'd':
+                readDeadline(position);
+                readCompletionDate(position);
+                break;
+            case 's':
+                readParent(position);
+                break;
+            case 'u':
+                readId(position);
+                break;
+            default:
+                if (!deferDetails) {
+                    readDetail(position);
+                }
+                break;
+            }
+            position++;
+        }
+
+        return activity;
+    }
+
+    /**
+     * Reads only the tags, projects, location and warning period of the line into the activity.
+     */
+    void readDetails() {
+        for (int position = 0; position < length; position++) {
+            readDetail(position);
+        }
+    }
+
+    private void readDetail(int position) {
+        switch (line.charAt(position)) {
+        case '@':
+            readTag(position);
+            break;
+        case '+':
+            readProject(position);
+            break;
+        case 'w':
+            readWarningPeriod(position);
+            break;
+        case 'l':
+            readLocation(position);
+            break;
+        default:
+            break;
+        }
+    }
+
+    private int readCompletedMarker() {
+        if (length > 0 && Character.toLowerCase(line.charAt(0)) == TrackMeConstants.INDICATOR_DONE.charAt(0)) {
+            activity.setCompleted(true);
+            if (length > 1 && isWhitespace(line.charAt(1))) {
+                return 2;
+            }
+        }
+        return 0;
+    }
+
+    private boolean isPriorityAt(int position) {
+        return position + 2 < length && isLetter(line.charAt(position + 1)) && line.charAt(position + 2) == ')';
+    }
+
+    /*
+     * The name starts at the first letter that begins a word and runs over word characters, whitespace, dots and
+     * dashes. It ends at the last point of that run where the remainder of the line starts with another token (or the
+     * line ends). Later starting points inside a run that did not close can never close either, so they are skipped.
+     */
+    private boolean isNameStart(int position) {
+        return isLetter(line.charAt(position)) && (position == 0 || !isWordCharacter(line.charAt(position - 1)));
+    }
+
+    private void readName(int start) {
+        int runEnd = start + 1;
+        while (runEnd < length && isNameCharacter(line.charAt(runEnd))) {
+            runEnd++;
+        }
+
+        for (int end = runEnd; end > start; end--) {
+            if (isNameTerminatorAt(end)) {
+                activity.setName(substring(start, end).trim());
+                nameFound = true;
+                return;
+            }
+        }
+        nameResumePosition = runEnd;
+    }
+
+    private boolean isNameTerminatorAt(int position) {
+        if (position == length) {
+            return true;
+        }
+        if (!isWhitespace(line.charAt(position))) {
+            return false;
+        }
+        int next = position + 1;
+        return startsWith(next, TrackMeConstants.INDICATOR_PROJECT) || startsWith(next, TrackMeConstants.INDICATOR_TAG)
+                || startsWith(next, TrackMeConstants.INDICATOR_WARNING_PERIOD) || startsWith(next,
+                TrackMeConstants.INDICATOR_DEADLINE) || startsWith(next, TrackMeConstants.INDICATOR_PARENT_ACTIVITY)
+                || startsWith(next, TrackMeConstants.INDICATOR_UUID) || startsWith(next,
+                TrackMeConstants.INDICATOR_COMPLETION_DATE);
+    }
+
+    private void readTag(int position) {
+        int valueStart = position + TrackMeConstants.INDICATOR_TAG.length();
+        int valueEnd = skipAlphaNumeric(valueStart);
+        if (isTokenEnd(valueEnd)) {
+            activity.addTag(SymbolTable.canonical(substring(valueStart, valueEnd)));
+        }
+    }
+
+    private void readProject(int position) {
+        int valueStart = position + TrackMeConstants.INDICATOR_PROJECT.length();
+        int valueEnd = skipAlphaNumeric(valueStart);
+        if (isTokenEnd(valueEnd)) {
+            activity.addProject(SymbolTable.canonical(substring(valueStart, valueEnd)));
+        }
+    }
+
+    private void readDeadline(int position) throws ParseException {
+        if (startsWith(position, TrackMeConstants.INDICATOR_DEADLINE)) {
+            Date deadline = readDate(position + TrackMeConstants.INDICATOR_DEADLINE.length());
+            if (deadline != null) {
+                activity.setDeadline(deadline);
+            }
+        }
+    }
+
+    private void readCompletionDate(int position) throws ParseException {
+        if (startsWith(position, TrackMeConstants.INDICATOR_COMPLETION_DATE)) {
+            Date completionDate = readDate(position + TrackMeConstants.INDICATOR_COMPLETION_DATE.length());
+            if (completionDate != null) {
+                activity.setCompletionDate(completionDate);
+            }
+        }
+    }
+
+    private Date readDate(int valueStart) throws ParseException {
+        int valueEnd = valueStart;
+        while (valueEnd < length && isDateCharacter(line.charAt(valueEnd))) {
+            valueEnd++;
+        }
+        return isTokenEnd(valueEnd)?new Date(TimestampCodec.getInstance().parse(line, valueStart, valueEnd)):null;
+    }
+
+    private void readWarningPeriod(int position) {
+        if (!startsWith(position, TrackMeConstants.INDICATOR_WARNING_PERIOD)) {
+            return;
+        }
+        int valueStart = position + TrackMeConstants.INDICATOR_WARNING_PERIOD.length();
+        if (valueStart >= length || line.charAt(valueStart) != 'P') {
+            return;
+        }
+        int valueEnd = valueStart + 1;
+        while (valueEnd < length && !isWhitespace(line.charAt(valueEnd))) {
+            valueEnd++;
+        }
+        if (valueEnd == valueStart + 1 || isDurationUnit(line.charAt(valueEnd - 1))) {
+            activity.setWarningTimeFrame(Duration.parse(line.subSequence(valueStart, valueEnd)));
+        }
+    }
+
+    /*
+     * Locations may contain spaces: the value runs over letters, digits and whitespace and is cut at the last
+     * whitespace before the first character that can not be part of a location.
+     */
+    private void readLocation(int position) {
+        if (!startsWith(position, TrackMeConstants.INDICATOR_LOCATION)) {
+            return;
+        }
+        int valueStart = position + TrackMeConstants.INDICATOR_LOCATION.length();
+        int runEnd = valueStart;
+        while (runEnd < length && (isAlphaNumeric(line.charAt(runEnd)) || isWhitespace(line.charAt(runEnd)))) {
+            runEnd++;
+        }
+
+        int valueEnd = runEnd;
+        if (runEnd < length) {
+            valueEnd = runEnd - 1;
+            while (valueEnd >= valueStart && !isWhitespace(line.charAt(valueEnd))) {
+                valueEnd--;
+            }
+            if (valueEnd < valueStart) {
+                return;
+            }
+        }
+        activity.setLocation(SymbolTable.canonical(substring(valueStart, valueEnd).trim()));
+    }
+
+    private void readParent(int position) {
+        if (startsWith(position, TrackMeConstants.INDICATOR_PARENT_ACTIVITY)) {
+            int valueStart = position + TrackMeConstants.INDICATOR_PARENT_ACTIVITY.length();
+            if (isUuidAt(valueStart)) {
+                activity.setParentActivity(substring(valueStart, valueStart + UUID_LENGTH));
+            }
+        }
+    }
+
+    private void readId(int position) {
+        if (startsWith(position, TrackMeConstants.INDICATOR_UUID)) {
+            int valueStart = position + TrackMeConstants.INDICATOR_UUID.length();
+            if (isUuidAt(valueStart)) {
+                activity.setId(substring(valueStart, valueStart + UUID_LENGTH));
+            }
+        }
+    }
+
+    private boolean isUuidAt(int position) {
+        if (position + UUID_LENGTH > length || !isTokenEnd(position + UUID_LENGTH)) {
+            return false;
+        }
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            char current = line.charAt(position + i);
+            boolean isDashPosition = i == 8 || i == 13 || i == 18 || i == 23;
+            if ((isDashPosition && current != '-') || (!isDashPosition && !isLowerCaseHex(current))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int skipAlphaNumeric(int position) {
+        int end = position;
+        while (end < length && isAlphaNumeric(line.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    private boolean startsWith(int position, String indicator) {
+        if (position + indicator.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < indicator.length(); i++) {
+            if (line.charAt(position + i) != indicator.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String substring(int start, int end) {
+        return line.subSequence(start, end).toString();
+    }
+
+    private boolean isTokenEnd(int position) {
+        return position == length || (position < length && isWhitespace(line.charAt(position)));
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isAlphaNumeric(char c) {
+        return isLetter(c) || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isWordCharacter(char c) {
+        return isAlphaNumeric(c) || c == '_';
+    }
+
+    private static boolean isNameCharacter(char c) {
+        return isWordCharacter(c) || isWhitespace(c) || c == '.' || c == '-';
+    }
+
+    private static boolean isDateCharacter(char c) {
+        return (c >= '0' && c <= '9') || c == '-' || c == ':' || c == '.';
+    }
+
+    private static boolean isDurationUnit(char c) {
+        return c == 'D' || c == 'H' || c == 'M' || c == 'S';
+    }
+
+    private static boolean isLowerCaseHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f');
+    }
+}
@@ -0,0 +1,91 @@
+package be.doji.productivity.trambucore.parser;
+
+import be.doji.productivity.trambucore.model.tasks.Activity;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Activity read from a todo file without its tags, projects, location and warning period. It keeps the bytes of its
+ * line and reads those fields the first time one of them is read or changed. Once read the bytes are dropped and the
+ * activity behaves like any other.
+ */
+final class LazyActivity extends Activity {
+
+    private byte[] line;
+
+    LazyActivity(byte[] line) {
+        this.line = line;
+    }
+
+    /*
+     * The bytes are cleared before the details are read, the setters the lexer calls then go straight through.
+     */
+    private synchronized void readDetails() {
+        if (line != null) {
+            Utf8Line details = new Utf8Line(line, 0, line.length);
+            line = null;
+            new ActivityLexer(details, this, true).readDetails();
+        }
+    }
+
+    @Override public List<String> getTags() {
+        readDetails();
+        return super.getTags();
+    }
+
+    @Override public void addTags(List<String> tags) {
+        readDetails();
+        super.addTags(tags);
+    }
+
+    @Override public void addTag(String tag) {
+        readDetails();
+        super.addTag(tag);
+    }
+
+    @Override public void setTags(List<String> tags) {
+        readDetails();
+        super.setTags(tags);
+    }
+
+    @Override public List<String> getProjects() {
+        readDetails();
+        return super.getProjects();
+    }
+
+    @Override public void addProject(String project) {
+        readDetails();
+        super.addProject(project);
+    }
+
+    @Override public void setProjects(List<String> projects) {
+        readDetails();
+        super.setProjects(projects);
+    }
+
+    @Override public String getLocation() {
+        readDetails();
+        return super.getLocation();
+    }
+
+    @Override public void setLocation(String location) {
+        readDetails();
+        super.setLocation(location);
+    }
+
+    @Override public Duration getWarningTimeFrame() {
+        readDetails();
+        return super.getWarningTimeFrame();
+    }
+
+    @Override public void setWarningTimeFrame(Duration warningTimeFrame) {
+        readDetails();
+        super.setWarningTimeFrame(warningTimeFrame);
+    }
+
+    @Override public String toString() {
+        readDetails();
+        return super.toString();
+    }
+}
@@ -0,0 +1,115 @@
+package be.doji.productivity.trambucore.parser;
+
+import be.doji.productivity.trambucore.model.tasks.Activity;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parses the contents of a todo file on a {@link ForkJoinPool}. The content is split into chunks that always end on a
+ * line break, every chunk is decoded and parsed on its own, and the results are joined back together in file order.
+ * Linking sub activities to their parents is left to the caller.
+ */
+public final class ParallelActivityParser {
+
+    static final int CHUNK_SIZE_BYTES = 1 << 16;
+
+    /**
+     * Utility classes should not have a public or default constructor
+     */
+    private ParallelActivityParser() {
+    }
+
+    public static List<Activity> parse(byte[] content) throws ParseException {
+        return parse(content, ForkJoinPool.commonPool());
+    }
+
+    public static List<Activity> parse(byte[] content, ForkJoinPool pool) throws ParseException {
+        try {
+            return pool.invoke(new ChunkTask(content, 0, content.length));
+        } catch (RuntimeException e) {
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof ParseException) {
+                    throw (ParseException) cause;
+                }
+            }
+            throw e;
+        }
+    }
+
+    private static final class ChunkTask extends RecursiveTask<List<Activity>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] content;
+        private final int start;
+        private final int end;
+
+        ChunkTask(byte[] content, int start, int end) {
+            this.content = content;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override protected List<Activity> compute() {
+            if (end - start > CHUNK_SIZE_BYTES) {
+                int split = findLineStart(start + (end - start) / 2);
+                if (split > start && split < end) {
+                    ChunkTask head = new ChunkTask(content, start, split);
+                    ChunkTask tail = new ChunkTask(content, split, end);
+                    tail.fork();
+                    List<Activity> result = head.compute();
+                    result.addAll(tail.join());
+                    return result;
+                }
+            }
+            try {
+                return parseChunk();
+            } catch (ParseException e) {
+                throw new IllegalStateException("Unable to parse activity", e);
+            }
+        }
+
+        private int findLineStart(int from) {
+            for (int i = from; i < end; i++) {
+                if (content[i] == '\n') {
+                    return i + 1;
+                }
+            }
+            return end;
+        }
+
+        private List<Activity> parseChunk() throws ParseException {
+            List<Activity> parsed = new ArrayList<>();
+            int lineStart = start;
+            int position = start;
+            while (position < end) {
+                byte current = content[position];
+                if (current == '\n' || current == '\r') {
+                    parseLine(lineStart, position, parsed);
+                    if (current == '\r' && position + 1 < end && content[position + 1] == '\n') {
+                        position++;
+                    }
+                    lineStart = position + 1;
+                }
+                position++;
+            }
+            parseLine(lineStart, end, parsed);
+            return parsed;
+        }
+
+        private void parseLine(int lineStart, int lineEnd, List<Activity> parsed) throws ParseException {
+            if (lineEnd > lineStart) {
+                String line = new String(content, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+                if (StringUtils.isNotBlank(line)) {
+                    parsed.add(ActivityParser.mapStringToActivity(line));
+                }
+            }
+        }
+    }
+}
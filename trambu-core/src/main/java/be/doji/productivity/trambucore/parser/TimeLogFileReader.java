@@ -0,0 +1,196 @@
+package be.doji.productivity.trambucore.parser;
+
+import be.doji.productivity.trambucore.TrackMeConstants;
+import be.doji.productivity.trambucore.model.tracker.ActivityLog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Streams a time tracking file through a reusable buffer. Block markers and logpoint fields are detected directly in
+ * the bytes, lines are never turned into Strings unless they deviate from the format the application writes.
+ */
+public final class TimeLogFileReader {
+
+    static final int BUFFER_SIZE = 1 << 16;
+    private static final int UUID_LENGTH = 36;
+
+    private static final byte[] LOG_START_BYTES = TrackMeConstants.INDICATOR_LOG_START
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LOG_END_BYTES = TrackMeConstants.INDICATOR_LOG_END.getBytes(StandardCharsets.US_ASCII);
+
+    private final List<ActivityLog> readLogs = new ArrayList<>();
+    private ActivityLog currentLog;
+    private boolean currentLogClosed = false;
+
+    private TimeLogFileReader() {
+    }
+
+    public static List<ActivityLog> read(Path timelogFile) throws IOException, ParseException {
+        TimeLogFileReader reader = new TimeLogFileReader();
+        try (FileChannel channel = FileChannel.open(timelogFile, StandardOpenOption.READ)) {
+            reader.readChannel(channel);
+        }
+        return reader.readLogs;
+    }
+
+    private void readChannel(FileChannel channel) throws IOException, ParseException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        while (channel.read(buffer) != -1) {
+            buffer.flip();
+            int lineStart = readCompleteLines(buffer);
+            buffer.position(lineStart);
+            if (lineStart == 0 && buffer.limit() == buffer.capacity()) {
+                buffer = growBuffer(buffer);
+            } else {
+                buffer.compact();
+            }
+        }
+        buffer.flip();
+        if (buffer.hasRemaining()) {
+            readLine(buffer, 0, buffer.limit());
+        }
+    }
+
+    /**
+     * @return the start of the first line that was not terminated yet
+     */
+    private int readCompleteLines(ByteBuffer buffer) throws ParseException {
+        int lineStart = 0;
+        for (int i = 0; i < buffer.limit(); i++) {
+            byte current = buffer.get(i);
+            if (current == '\n' || current == '\r') {
+                readLine(buffer, lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+        return lineStart;
+    }
+
+    private static ByteBuffer growBuffer(ByteBuffer buffer) {
+        ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+        grown.put(buffer);
+        return grown;
+    }
+
+    private void readLine(ByteBuffer buffer, int start, int end) throws ParseException {
+        int trimmedStart = start;
+        int trimmedEnd = end;
+        while (trimmedStart < trimmedEnd && isWhitespace(buffer.get(trimmedStart))) {
+            trimmedStart++;
+        }
+        while (trimmedEnd > trimmedStart && isWhitespace(buffer.get(trimmedEnd - 1))) {
+            trimmedEnd--;
+        }
+        if (trimmedStart == trimmedEnd) {
+            return;
+        }
+
+        if (containsIgnoreCase(buffer, trimmedStart, trimmedEnd, LOG_START_BYTES)) {
+            currentLog = new ActivityLog(readActivityId(buffer, trimmedStart, trimmedEnd));
+            currentLogClosed = false;
+        } else if (containsIgnoreCase(buffer, trimmedStart, trimmedEnd, LOG_END_BYTES)) {
+            if (currentLog != null && !currentLogClosed) {
+                readLogs.add(currentLog);
+                currentLogClosed = true;
+            }
+        } else if (currentLog != null) {
+            TimeLogParser.parseLogpoint(buffer, trimmedStart, trimmedEnd, currentLog);
+        }
+    }
+
+    private static UUID readActivityId(ByteBuffer buffer, int start, int end) {
+        int idStart = end - UUID_LENGTH;
+        if (idStart > start + LOG_START_BYTES.length && startsWith(buffer, start, LOG_START_BYTES) && isWhitespace(
+                buffer.get(idStart - 1)) && isUuid(buffer, idStart)) {
+            for (int i = start + LOG_START_BYTES.length; i < idStart; i++) {
+                if (!isWhitespace(buffer.get(i))) {
+                    return readActivityIdFromString(buffer, start, end);
+                }
+            }
+            long mostSignificant = readHex(buffer, idStart, idStart + 8) << 32
+                    | readHex(buffer, idStart + 9, idStart + 13) << 16 | readHex(buffer, idStart + 14, idStart + 18);
+            long leastSignificant = readHex(buffer, idStart + 19, idStart + 23) << 48 | readHex(buffer, idStart + 24,
+                    idStart + UUID_LENGTH);
+            return new UUID(mostSignificant, leastSignificant);
+        }
+        return readActivityIdFromString(buffer, start, end);
+    }
+
+    private static UUID readActivityIdFromString(ByteBuffer buffer, int start, int end) {
+        byte[] lineBytes = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            lineBytes[i - start] = buffer.get(i);
+        }
+        String line = new String(lineBytes, StandardCharsets.UTF_8);
+        return UUID.fromString(line.replace(TrackMeConstants.INDICATOR_LOG_START, "").trim());
+    }
+
+    private static boolean isUuid(ByteBuffer buffer, int start) {
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            byte current = buffer.get(start + i);
+            boolean isDashPosition = i == 8 || i == 13 || i == 18 || i == 23;
+            if ((isDashPosition && current != '-') || (!isDashPosition && hexValue(current) < 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long readHex(ByteBuffer buffer, int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            value = (value << 4) | hexValue(buffer.get(i));
+        }
+        return value;
+    }
+
+    private static int hexValue(byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        } else if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        } else if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int start, byte[] pattern) {
+        for (int i = 0; i < pattern.length; i++) {
+            if (buffer.get(start + i) != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean containsIgnoreCase(ByteBuffer buffer, int start, int end, byte[] pattern) {
+        for (int i = start; i + pattern.length <= end; i++) {
+            boolean matches = true;
+            for (int j = 0; j < pattern.length && matches; j++) {
+                matches = toUpperCase(buffer.get(i + j)) == pattern[j];
+            }
+            if (matches) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte toUpperCase(byte b) {
+        return b >= 'a' && b <= 'z'?(byte) (b - ('a' - 'A')):b;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || (b >= '\t' && b <= '\r') || (b >= 0x1C && b <= 0x1F);
+    }
+}
@@ -1,18 +1,22 @@
 package be.doji.productivity.trambucore.parser;
 
 import be.doji.productivity.trambucore.TrackMeConstants;
+import be.doji.productivity.trambucore.model.tracker.ActivityLog;
 import be.doji.productivity.trambucore.model.tracker.TimeLog;
-import be.doji.productivity.trambucore.utils.TrackerUtils;
+import be.doji.productivity.trambucore.utils.TimestampCodec;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
-import java.util.List;
+import java.util.Date;
 
 public final class TimeLogParser {
 
-    private static final String REGEX_START_DATETIME =
-            TrackMeConstants.INDICATOR_LOGPOINT_START + TrackMeConstants.REGEX_DATE + "(\\s|$)";
-    private static final String REGEX_END_DATETIME =
-            TrackMeConstants.INDICATOR_LOGPOINT_END + TrackMeConstants.REGEX_DATE + "(\\s|$)";
+    private static final int NOT_FOUND = -1;
+    private static final byte[] LOGPOINT_START_BYTES = TrackMeConstants.INDICATOR_LOGPOINT_START
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LOGPOINT_END_BYTES = TrackMeConstants.INDICATOR_LOGPOINT_END
+            .getBytes(StandardCharsets.US_ASCII);
 
     /**
      * Utility classes should not have a public or default constructor
@@ -23,22 +27,123 @@ public final class TimeLogParser {
     public static TimeLog parseToTimeLog(String line) throws ParseException {
         TimeLog timeLog = new TimeLog();
 
-        List<String> matches = TrackerUtils.findAllMatches(REGEX_START_DATETIME, line);
-        if (!matches.isEmpty()) {
-            String source = matches.get(0);
-            source = source.replace(TrackMeConstants.INDICATOR_LOGPOINT_START, "").trim();
-            timeLog.setStartTime(TrackMeConstants.getDateFormat().parse(source));
+        int startValue = findTimestamp(line, TrackMeConstants.INDICATOR_LOGPOINT_START);
+        if (startValue != NOT_FOUND) {
+            long startTime = TimestampCodec.getInstance().parse(line, startValue, endOfTimestamp(line, startValue));
+            timeLog.setStartTime(new Date(startTime));
             timeLog.setActive(true);
         }
 
-        matches = TrackerUtils.findAllMatches(REGEX_END_DATETIME, line);
-        if (!matches.isEmpty()) {
-            String source = matches.get(0);
-            source = source.replace(TrackMeConstants.INDICATOR_LOGPOINT_END, "").trim();
-            timeLog.setEndTime(TrackMeConstants.getDateFormat().parse(source));
+        int endValue = findTimestamp(line, TrackMeConstants.INDICATOR_LOGPOINT_END);
+        if (endValue != NOT_FOUND) {
+            long endTime = TimestampCodec.getInstance().parse(line, endValue, endOfTimestamp(line, endValue));
+            timeLog.setEndTime(new Date(endTime));
             timeLog.setActive(false);
         }
 
         return timeLog;
     }
+
+    /**
+     * Parses the logpoint stored as ASCII between {@code start} and {@code end} in the buffer, using absolute reads only.
+     */
+    public static TimeLog parseToTimeLog(ByteBuffer buffer, int start, int end) throws ParseException {
+        TimeLog timeLog = new TimeLog();
+
+        long startTime = parseTimestamp(buffer, start, end, LOGPOINT_START_BYTES);
+        if (startTime != TimeLog.NO_TIME) {
+            timeLog.setStartTime(new Date(startTime));
+            timeLog.setActive(true);
+        }
+
+        long endTime = parseTimestamp(buffer, start, end, LOGPOINT_END_BYTES);
+        if (endTime != TimeLog.NO_TIME) {
+            timeLog.setEndTime(new Date(endTime));
+            timeLog.setActive(false);
+        }
+
+        return timeLog;
+    }
+
+    /**
+     * Parses the logpoint stored as ASCII between {@code start} and {@code end} in the buffer straight into the
+     * columns of the target log, without creating intermediate objects.
+     */
+    public static void parseLogpoint(ByteBuffer buffer, int start, int end, ActivityLog target) throws ParseException {
+        long startTime = parseTimestamp(buffer, start, end, LOGPOINT_START_BYTES);
+        long endTime = parseTimestamp(buffer, start, end, LOGPOINT_END_BYTES);
+        if (endTime == TimeLog.NO_TIME && startTime != TimeLog.NO_TIME) {
+            endTime = TimeLog.ACTIVE_END;
+        }
+        target.addLogPoint(startTime, endTime);
+    }
+
+    /**
+     * @return the timestamp following the indicator, or {@link TimeLog#NO_TIME} when the indicator is not there
+     */
+    private static long parseTimestamp(ByteBuffer buffer, int start, int end, byte[] indicator) throws ParseException {
+        int valueStart = findTimestamp(buffer, start, end, indicator);
+        if (valueStart == NOT_FOUND) {
+            return TimeLog.NO_TIME;
+        }
+        return TimestampCodec.getInstance().parse(buffer, valueStart, endOfTimestamp(buffer, valueStart, end));
+    }
+
+    /**
+     * @return the index where the timestamp following the first occurrence of the indicator starts
+     */
+    private static int findTimestamp(String line, String indicator) {
+        int indicatorIndex = line.indexOf(indicator);
+        while (indicatorIndex != NOT_FOUND) {
+            int valueStart = indicatorIndex + indicator.length();
+            int valueEnd = endOfTimestamp(line, valueStart);
+            if (valueEnd == line.length() || Character.isWhitespace(line.charAt(valueEnd))) {
+                return valueStart;
+            }
+            indicatorIndex = line.indexOf(indicator, indicatorIndex + 1);
+        }
+        return NOT_FOUND;
+    }
+
+    private static int endOfTimestamp(String line, int valueStart) {
+        int valueEnd = valueStart;
+        while (valueEnd < line.length() && isTimestampCharacter(line.charAt(valueEnd))) {
+            valueEnd++;
+        }
+        return valueEnd;
+    }
+
+    private static int findTimestamp(ByteBuffer buffer, int start, int end, byte[] indicator) {
+        for (int i = start; i + indicator.length <= end; i++) {
+            if (matchesAt(buffer, i, indicator)) {
+                int valueStart = i + indicator.length;
+                int valueEnd = endOfTimestamp(buffer, valueStart, end);
+                if (valueEnd == end || Character.isWhitespace((char) buffer.get(valueEnd))) {
+                    return valueStart;
+                }
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    private static boolean matchesAt(ByteBuffer buffer, int position, byte[] indicator) {
+        for (int i = 0; i < indicator.length; i++) {
+            if (buffer.get(position + i) != indicator[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int endOfTimestamp(ByteBuffer buffer, int valueStart, int end) {
+        int valueEnd = valueStart;
+        while (valueEnd < end && isTimestampCharacter((char) buffer.get(valueEnd))) {
+            valueEnd++;
+        }
+        return valueEnd;
+    }
+
+    private static boolean isTimestampCharacter(char c) {
+        return (c >= '0' && c <= '9') || c == '-' || c == ':' || c == '.';
+    }
 }
@@ -0,0 +1,56 @@
+package be.doji.productivity.trambucore.parser;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Character view on a line of UTF-8 encoded bytes that does not decode the line. Every byte is shown as one character:
+ * ASCII bytes as themselves, the bytes of other characters as values above 0x7F. All tokens of the todo.txt format are
+ * made of ASCII characters and the {@link ActivityLexer} never accepts a value above 0x7F as part of one, so tokens are
+ * found at the same places as in the decoded line. Only the tokens that are kept are decoded to strings.
+ */
+final class Utf8Line implements CharSequence {
+
+    private final byte[] bytes;
+    private final int start;
+    private final int end;
+
+    Utf8Line(byte[] bytes, int start, int end) {
+        this.bytes = bytes;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @return true when the line holds nothing but whitespace
+     */
+    boolean isBlank() {
+        for (int position = start; position < end; position++) {
+            if (!Character.isWhitespace(bytes[position])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override public int length() {
+        return end - start;
+    }
+
+    @Override public char charAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + length());
+        }
+        return (char) (bytes[start + index] & 0xFF);
+    }
+
+    @Override public CharSequence subSequence(int from, int to) {
+        if (from < 0 || to > length() || from > to) {
+            throw new IndexOutOfBoundsException("From: " + from + ", To: " + to + ", Length: " + length());
+        }
+        return new Utf8Line(bytes, start + from, start + to);
+    }
+
+    @Override public String toString() {
+        return new String(bytes, start, length(), StandardCharsets.UTF_8);
+    }
+}
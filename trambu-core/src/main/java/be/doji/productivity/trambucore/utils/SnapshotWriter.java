@@ -0,0 +1,72 @@
+package be.doji.productivity.trambucore.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+
+/**
+ * Replaces the contents of a data file in one go. All lines are encoded into a single buffer that is written to a
+ * temporary file next to the target, forced to disk and then moved over the target. Readers, and the application after
+ * a crash, either see the complete old file or the complete new one.
+ */
+public final class SnapshotWriter {
+
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    /**
+     * Utility classes should not have a public or default constructor
+     */
+    private SnapshotWriter() {
+    }
+
+    public static void write(Path target, Iterable<? extends CharSequence> lines) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (CharSequence line : lines) {
+            content.append(line).append(System.lineSeparator());
+        }
+        write(target, StandardCharsets.UTF_8.encode(CharBuffer.wrap(content)));
+    }
+
+    /**
+     * A target that is a symbolic link is resolved first, so the link itself stays in place.
+     */
+    public static void write(Path target, ByteBuffer content) throws IOException {
+        Path resolvedTarget = Files.exists(target)?target.toRealPath():target.toAbsolutePath();
+        Path tempFile = Files.createTempFile(resolvedTarget.getParent(), resolvedTarget.getFileName().toString(),
+                TEMP_FILE_SUFFIX);
+        try {
+            copyPermissions(resolvedTarget, tempFile);
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                while (content.hasRemaining()) {
+                    channel.write(content);
+                }
+                channel.force(true);
+            }
+            moveIntoPlace(tempFile, resolvedTarget);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static void copyPermissions(Path target, Path tempFile) throws IOException {
+        if (Files.exists(target) && Files.getFileStore(target).supportsFileAttributeView(PosixFileAttributeView.class)) {
+            Files.setPosixFilePermissions(tempFile, Files.getPosixFilePermissions(target));
+        }
+    }
+
+    private static void moveIntoPlace(Path tempFile, Path target) throws IOException {
+        try {
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
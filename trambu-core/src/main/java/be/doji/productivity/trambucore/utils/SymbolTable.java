@@ -0,0 +1,70 @@
+package be.doji.productivity.trambucore.utils;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Interns the values of tags, projects and locations, so activities holding the same value share one String. The table
+ * holds its values weakly: once no activity refers to a value anymore it is dropped with the next garbage collection,
+ * the table does not keep every value that was ever typed for as long as the application runs. The table is split in
+ * stripes that are locked separately and can be used from several threads.
+ */
+public final class SymbolTable {
+
+    private static final int STRIPE_COUNT = 16;
+
+    private static final List<Map<String, WeakReference<String>>> STRIPES = new ArrayList<>(STRIPE_COUNT);
+
+    static {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            STRIPES.add(new WeakHashMap<>());
+        }
+    }
+
+    /**
+     * Utility classes should not have a public or default constructor
+     */
+    private SymbolTable() {
+    }
+
+    /**
+     * @return the instance the table holds for the value, or null when the value is null. A value that is not in the
+     * table yet is added as it is.
+     */
+    public static String canonical(String value) {
+        if (value == null) {
+            return null;
+        }
+        Map<String, WeakReference<String>> stripe = getStripe(value);
+        synchronized (stripe) {
+            WeakReference<String> reference = stripe.get(value);
+            String canonicalValue = reference == null?null:reference.get();
+            if (canonicalValue == null) {
+                canonicalValue = value;
+                stripe.put(canonicalValue, new WeakReference<>(canonicalValue));
+            }
+            return canonicalValue;
+        }
+    }
+
+    /**
+     * @return the number of values in the table that were not garbage collected yet
+     */
+    static int size() {
+        int size = 0;
+        for (Map<String, WeakReference<String>> stripe : STRIPES) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    private static Map<String, WeakReference<String>> getStripe(String value) {
+        int hash = value.hashCode();
+        return STRIPES.get((hash ^ (hash >>> 16)) & (STRIPE_COUNT - 1));
+    }
+}
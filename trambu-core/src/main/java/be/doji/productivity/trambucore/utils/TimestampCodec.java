@@ -0,0 +1,280 @@
+package be.doji.productivity.trambucore.utils;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.TimeZone;
+
+/**
+ * Reads and writes timestamps in the data format {@code yyyy-MM-dd:HH:mm:ss.SSS} without going through
+ * {@link java.text.SimpleDateFormat}. Values are parsed straight from the source characters or bytes into epoch
+ * milliseconds and formatted into a buffer supplied by the caller, so neither direction creates intermediate strings
+ * or calendars. Instances are immutable and can be shared between threads.
+ */
+public final class TimestampCodec {
+
+    public static final int FORMATTED_LENGTH = 23;
+
+    private static final TimestampCodec DEFAULT_INSTANCE = new TimestampCodec(TimeZone.getDefault());
+
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+    private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+    private static final int MAX_FIELD_DIGITS = 9;
+
+    private static final char[] FIELD_SEPARATORS = { '-', '-', ':', ':', ':', '.' };
+    private static final int FIELD_COUNT = FIELD_SEPARATORS.length + 1;
+    private static final char NO_CHARACTER = 0;
+
+    /*
+     * The day and time fields are summed into milliseconds as they are read, year and month are kept apart because
+     * their length in days varies.
+     */
+    private static final long[] FIELD_MILLIS = { 0, 0, MILLIS_PER_DAY, MILLIS_PER_HOUR, MILLIS_PER_MINUTE,
+            MILLIS_PER_SECOND, 1 };
+
+    private final TimeZone timeZone;
+
+    public TimestampCodec(TimeZone timeZone) {
+        this.timeZone = (TimeZone) timeZone.clone();
+    }
+
+    /**
+     * Unlike {@link java.text.SimpleDateFormat}, which looked up the default time zone every time it was created, the
+     * shared codec keeps the default time zone it found when it was loaded. Changing the default time zone afterwards
+     * does not affect it, a codec for another time zone is created with {@link #TimestampCodec(TimeZone)}.
+     *
+     * @return the shared codec for the time zone the application was started in
+     */
+    public static TimestampCodec getInstance() {
+        return DEFAULT_INSTANCE;
+    }
+
+    public long parse(CharSequence text) throws ParseException {
+        return parse(text, 0, text.length());
+    }
+
+    public long parse(CharSequence text, int start, int end) throws ParseException {
+        long year = 0;
+        long month = 0;
+        long offsetMillis = 0;
+        int position = start;
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            int fieldStart = position;
+            long value = 0;
+            while (position < end && isDigit(text.charAt(position))) {
+                value = value * 10 + (text.charAt(position) - '0');
+                position++;
+            }
+            checkDigitCount(position - fieldStart, position);
+            if (field < FIELD_SEPARATORS.length) {
+                checkSeparator(field, position < end?text.charAt(position):NO_CHARACTER, position);
+                position++;
+            }
+            if (field == 0) {
+                year = value;
+            } else if (field == 1) {
+                month = value;
+            } else {
+                offsetMillis += value * FIELD_MILLIS[field];
+            }
+        }
+        checkFullyConsumed(position, end);
+        return toEpochMillis(year, month, offsetMillis);
+    }
+
+    /**
+     * Parses the bytes between {@code start} and {@code end} using absolute reads, the position of the buffer is left
+     * untouched. The bytes are expected to be ASCII.
+     */
+    public long parse(ByteBuffer buffer, int start, int end) throws ParseException {
+        long year = 0;
+        long month = 0;
+        long offsetMillis = 0;
+        int position = start;
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            int fieldStart = position;
+            long value = 0;
+            while (position < end && isDigit((char) buffer.get(position))) {
+                value = value * 10 + (buffer.get(position) - '0');
+                position++;
+            }
+            checkDigitCount(position - fieldStart, position);
+            if (field < FIELD_SEPARATORS.length) {
+                checkSeparator(field, position < end?(char) buffer.get(position):NO_CHARACTER, position);
+                position++;
+            }
+            if (field == 0) {
+                year = value;
+            } else if (field == 1) {
+                month = value;
+            } else {
+                offsetMillis += value * FIELD_MILLIS[field];
+            }
+        }
+        checkFullyConsumed(position, end);
+        return toEpochMillis(year, month, offsetMillis);
+    }
+
+    public String format(long epochMillis) {
+        StringBuilder target = new StringBuilder(FORMATTED_LENGTH);
+        format(epochMillis, target);
+        return target.toString();
+    }
+
+    public StringBuilder format(long epochMillis, StringBuilder target) {
+        long localMillis = epochMillis + timeZone.getOffset(epochMillis);
+        long days = Math.floorDiv(localMillis, MILLIS_PER_DAY);
+        long millisOfDay = Math.floorMod(localMillis, MILLIS_PER_DAY);
+        long civil = civilFromDays(days);
+
+        appendNumber(target, civilYear(civil), 4);
+        target.append('-');
+        appendNumber(target, civilMonth(civil), 2);
+        target.append('-');
+        appendNumber(target, civilDay(civil), 2);
+        target.append(':');
+        appendNumber(target, millisOfDay / MILLIS_PER_HOUR, 2);
+        target.append(':');
+        appendNumber(target, (millisOfDay / MILLIS_PER_MINUTE) % 60, 2);
+        target.append(':');
+        appendNumber(target, (millisOfDay / MILLIS_PER_SECOND) % 60, 2);
+        target.append('.');
+        appendNumber(target, millisOfDay % MILLIS_PER_SECOND, 3);
+        return target;
+    }
+
+    /**
+     * Writes the formatted timestamp as ASCII bytes at the current position of the buffer.
+     */
+    public ByteBuffer format(long epochMillis, ByteBuffer target) {
+        long localMillis = epochMillis + timeZone.getOffset(epochMillis);
+        long days = Math.floorDiv(localMillis, MILLIS_PER_DAY);
+        long millisOfDay = Math.floorMod(localMillis, MILLIS_PER_DAY);
+        long civil = civilFromDays(days);
+
+        putNumber(target, civilYear(civil), 4);
+        target.put((byte) '-');
+        putNumber(target, civilMonth(civil), 2);
+        target.put((byte) '-');
+        putNumber(target, civilDay(civil), 2);
+        target.put((byte) ':');
+        putNumber(target, millisOfDay / MILLIS_PER_HOUR, 2);
+        target.put((byte) ':');
+        putNumber(target, (millisOfDay / MILLIS_PER_MINUTE) % 60, 2);
+        target.put((byte) ':');
+        putNumber(target, (millisOfDay / MILLIS_PER_SECOND) % 60, 2);
+        target.put((byte) '.');
+        putNumber(target, millisOfDay % MILLIS_PER_SECOND, 3);
+        return target;
+    }
+
+    /*
+     * Out of range fields roll over into the next field (month 13 is January of the next year), the same way the
+     * lenient SimpleDateFormat used to read them.
+     */
+    private long toEpochMillis(long year, long month, long offsetMillis) {
+        long normalizedYear = year + Math.floorDiv(month - 1, 12);
+        long normalizedMonth = Math.floorMod(month - 1, 12) + 1;
+        long localMillis = (daysFromCivil(normalizedYear, normalizedMonth, 1) - 1) * MILLIS_PER_DAY + offsetMillis;
+        long estimate = localMillis - timeZone.getOffset(localMillis);
+        return localMillis - timeZone.getOffset(estimate);
+    }
+
+    /*
+     * Conversions between days since the epoch and proleptic gregorian dates, see
+     * http://howardhinnant.github.io/date_algorithms.html
+     */
+    private static long daysFromCivil(long year, long month, long day) {
+        long adjustedYear = month <= 2?year - 1:year;
+        long era = Math.floorDiv(adjustedYear, 400);
+        long yearOfEra = adjustedYear - era * 400;
+        long dayOfYear = (153 * (month > 2?month - 3:month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /*
+     * Returns year, month and day packed in a single long to avoid allocating a holder object.
+     */
+    private static long civilFromDays(long epochDays) {
+        long shifted = epochDays + 719468;
+        long era = Math.floorDiv(shifted, 146097);
+        long dayOfEra = shifted - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        long month = shiftedMonth < 10?shiftedMonth + 3:shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2?1:0);
+        return (year << 9) | (month << 5) | day;
+    }
+
+    private static long civilYear(long civil) {
+        return civil >> 9;
+    }
+
+    private static long civilMonth(long civil) {
+        return (civil >> 5) & 0xF;
+    }
+
+    private static long civilDay(long civil) {
+        return civil & 0x1F;
+    }
+
+    private static void appendNumber(StringBuilder target, long value, int width) {
+        long divisor = pow10(Math.max(width, digitCount(value)) - 1);
+        while (divisor > 0) {
+            target.append((char) ('0' + (value / divisor) % 10));
+            divisor /= 10;
+        }
+    }
+
+    private static void putNumber(ByteBuffer target, long value, int width) {
+        long divisor = pow10(Math.max(width, digitCount(value)) - 1);
+        while (divisor > 0) {
+            target.put((byte) ('0' + (value / divisor) % 10));
+            divisor /= 10;
+        }
+    }
+
+    private static int digitCount(long value) {
+        int count = 1;
+        long remaining = value / 10;
+        while (remaining > 0) {
+            count++;
+            remaining /= 10;
+        }
+        return count;
+    }
+
+    private static long pow10(int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= 10;
+        }
+        return result;
+    }
+
+    private static void checkDigitCount(int digits, int position) throws ParseException {
+        if (digits == 0 || digits > MAX_FIELD_DIGITS) {
+            throw new ParseException("Invalid number in timestamp", position);
+        }
+    }
+
+    private static void checkSeparator(int field, char found, int position) throws ParseException {
+        if (found != FIELD_SEPARATORS[field]) {
+            throw new ParseException("Expected '" + FIELD_SEPARATORS[field] + "' in timestamp", position);
+        }
+    }
+
+    private static void checkFullyConsumed(int position, int end) throws ParseException {
+        if (position != end) {
+            throw new ParseException("Unexpected characters after timestamp", position);
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
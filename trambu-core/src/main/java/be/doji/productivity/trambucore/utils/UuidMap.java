@@ -0,0 +1,189 @@
+package be.doji.productivity.trambucore.utils;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Hash map keyed by {@link UUID} that stores the two halves of every key in primitive arrays. Collisions are resolved
+ * by linear probing and removals shift the following entries back, so the map holds no entry or node objects and a
+ * lookup reads neighbouring slots only. Null values are not supported. Instances are not thread safe.
+ */
+public final class UuidMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] mostSignificantBits;
+    private long[] leastSignificantBits;
+    private Object[] values;
+    private int size = 0;
+
+    public UuidMap() {
+        allocate(MIN_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        mostSignificantBits = new long[capacity];
+        leastSignificantBits = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public V get(UUID key) {
+        return get(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    @SuppressWarnings("unchecked") public V get(long keyMostSignificantBits, long keyLeastSignificantBits) {
+        int slot = findSlot(keyMostSignificantBits, keyLeastSignificantBits);
+        return (V) values[slot];
+    }
+
+    public boolean containsKey(UUID key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return the value that was stored for the key before, or null
+     */
+    @SuppressWarnings("unchecked") public V put(UUID key, V value) {
+        int slot = findSlot(key.getMostSignificantBits(), key.getLeastSignificantBits());
+        V previous = (V) values[slot];
+        store(slot, key, value);
+        return previous;
+    }
+
+    /**
+     * @return the value that is stored for the key, the given value is only stored when there was none yet
+     */
+    @SuppressWarnings("unchecked") public V putIfAbsent(UUID key, V value) {
+        int slot = findSlot(key.getMostSignificantBits(), key.getLeastSignificantBits());
+        if (values[slot] != null) {
+            return (V) values[slot];
+        }
+        store(slot, key, value);
+        return null;
+    }
+
+    private void store(int slot, UUID key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported");
+        }
+        if (values[slot] == null) {
+            mostSignificantBits[slot] = key.getMostSignificantBits();
+            leastSignificantBits[slot] = key.getLeastSignificantBits();
+            size++;
+        }
+        values[slot] = value;
+        if (size * 4 > values.length * 3) {
+            resize(values.length * 2);
+        }
+    }
+
+    @SuppressWarnings("unchecked") public V remove(UUID key) {
+        int slot = findSlot(key.getMostSignificantBits(), key.getLeastSignificantBits());
+        V previous = (V) values[slot];
+        if (previous != null) {
+            removeSlot(slot);
+        }
+        return previous;
+    }
+
+    /**
+     * Removes the entry only when the key maps to this very value.
+     */
+    public boolean remove(UUID key, V value) {
+        int slot = findSlot(key.getMostSignificantBits(), key.getLeastSignificantBits());
+        if (values[slot] == null || values[slot] != value) {
+            return false;
+        }
+        removeSlot(slot);
+        return true;
+    }
+
+    public void clear() {
+        if (values.length > MIN_CAPACITY) {
+            allocate(MIN_CAPACITY);
+        } else {
+            Arrays.fill(values, null);
+        }
+        size = 0;
+    }
+
+    public void forEach(BiConsumer<UUID, ? super V> action) {
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != null) {
+                @SuppressWarnings("unchecked") V value = (V) values[slot];
+                action.accept(new UUID(mostSignificantBits[slot], leastSignificantBits[slot]), value);
+            }
+        }
+    }
+
+    /*
+     * Returns the slot that holds the key, or the empty slot where probing for it stopped.
+     */
+    private int findSlot(long keyMostSignificantBits, long keyLeastSignificantBits) {
+        int mask = values.length - 1;
+        int slot = hash(keyMostSignificantBits, keyLeastSignificantBits) & mask;
+        while (values[slot] != null && (mostSignificantBits[slot] != keyMostSignificantBits
+                || leastSignificantBits[slot] != keyLeastSignificantBits)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /*
+     * Moves every following entry of the probe run that would no longer be reachable into the freed slot.
+     */
+    private void removeSlot(int slot) {
+        int mask = values.length - 1;
+        int free = slot;
+        int current = (free + 1) & mask;
+        while (values[current] != null) {
+            int home = hash(mostSignificantBits[current], leastSignificantBits[current]) & mask;
+            if (((current - home) & mask) >= ((current - free) & mask)) {
+                mostSignificantBits[free] = mostSignificantBits[current];
+                leastSignificantBits[free] = leastSignificantBits[current];
+                values[free] = values[current];
+                free = current;
+            }
+            current = (current + 1) & mask;
+        }
+        values[free] = null;
+        size--;
+    }
+
+    private void resize(int capacity) {
+        long[] oldMostSignificantBits = mostSignificantBits;
+        long[] oldLeastSignificantBits = leastSignificantBits;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int oldSlot = 0; oldSlot < oldValues.length; oldSlot++) {
+            if (oldValues[oldSlot] != null) {
+                int slot = findSlot(oldMostSignificantBits[oldSlot], oldLeastSignificantBits[oldSlot]);
+                mostSignificantBits[slot] = oldMostSignificantBits[oldSlot];
+                leastSignificantBits[slot] = oldLeastSignificantBits[oldSlot];
+                values[slot] = oldValues[oldSlot];
+            }
+        }
+    }
+
+    /*
+     * Random UUIDs have fixed version and variant bits, the finalizer of MurmurHash3 spreads the rest over the slots.
+     */
+    private static int hash(long keyMostSignificantBits, long keyLeastSignificantBits) {
+        long hash = keyMostSignificantBits ^ Long.rotateLeft(keyLeastSignificantBits, 32);
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+}
@@ -12,9 +12,15 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TimesheetToCSVExporterTest extends TrambuTest {
 
@@ -57,4 +63,59 @@ public class TimesheetToCSVExporterTest extends TrambuTest {
         Assert.assertEquals("TestAct,\"4.0\",\"240.0\",\"14000.0\",TestAct", csvOfFirstLog);
 
     }
+
+    @Test public void testStreamingExportMatchesLines() throws IOException {
+        List<ActivityLog> logs = createLogs(3);
+        TimesheetToCSVExporter exporter = new TimesheetToCSVExporter(activityManagerMock);
+        List<Integer> progress = new ArrayList<>();
+        StringWriter target = new StringWriter();
+        exporter.export(logs, target, new ExportMonitor() {
+            @Override public void progress(int exportedItems, int totalItems) {
+                Assert.assertEquals(3, totalItems);
+                progress.add(exportedItems);
+            }
+        });
+
+        StringBuilder expected = new StringBuilder();
+        for (String line : exporter.createFileLines(logs)) {
+            expected.append(line).append(System.lineSeparator());
+        }
+        Assert.assertEquals(expected.toString(), target.toString());
+        Assert.assertEquals(Arrays.asList(1, 2, 3), progress);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        exporter.export(logs, Channels.newChannel(bytes), ExportMonitor.NONE);
+        Assert.assertEquals(expected.toString(), new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test public void testStreamingExportCancellation() throws IOException {
+        List<ActivityLog> logs = createLogs(5);
+        TimesheetToCSVExporter exporter = new TimesheetToCSVExporter(activityManagerMock);
+        StringWriter target = new StringWriter();
+        AtomicInteger exported = new AtomicInteger();
+        try {
+            exporter.export(logs, target, new ExportMonitor() {
+                @Override public boolean isCancelled() {
+                    return exported.get() == 2;
+                }
+
+                @Override public void progress(int exportedItems, int totalItems) {
+                    exported.set(exportedItems);
+                }
+            });
+            Assert.fail("Export should have been cancelled");
+        } catch (CancellationException e) {
+            Assert.assertEquals(3, target.toString().split(System.lineSeparator()).length);
+        }
+    }
+
+    private List<ActivityLog> createLogs(int count) {
+        List<ActivityLog> logs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ActivityLog log = new ActivityLog(UUID.randomUUID());
+            log.addLogPoint(createTimeLog(new Date(0), new Date((i + 1) * 60 * 60 * 1000L)));
+            logs.add(log);
+        }
+        return logs;
+    }
 }
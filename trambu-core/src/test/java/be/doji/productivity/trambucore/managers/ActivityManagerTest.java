@@ -5,16 +5,30 @@ import be.doji.productivity.trambucore.TrambuTest;
 import be.doji.productivity.trambucore.model.tasks.Activity;
 import be.doji.productivity.trambucore.testutil.ActivityTestData;
 import be.doji.productivity.trambucore.testutil.FileUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.text.ParseException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 /**
@@ -84,6 +98,40 @@ public class ActivityManagerTest extends TrambuTest {
         Files.delete(tempFilePath);
     }
 
+    @Test public void testActivitiesWithDateHeaderFollowSavesAndDeletes() throws IOException, ParseException {
+        Path tempFilePath = createTempFile();
+        ActivityManager am = new ActivityManager(tempFilePath.toString(), ActivityLoadMode.SEQUENTIAL,
+                ActivityWriteMode.JOURNAL);
+        am.addActivity("(C) Low priority uuid:" + UUID.randomUUID());
+        am.addActivity("(A) High priority uuid:" + UUID.randomUUID());
+        am.addActivity(ActivityTestData.ACTIVITY_DATA_LINE);
+        Date deadLineDate = TrackMeConstants.getDateFormat().parse("2017-12-21:16:15:00.000");
+
+        Map<Date, List<Activity>> activitiesWithDateHeader = am.getActivitiesWithDateHeader();
+        Assert.assertEquals(2, activitiesWithDateHeader.size());
+        List<Activity> withoutDeadline = activitiesWithDateHeader.get(TrackMeConstants.getDefaultDateHeader());
+        Assert.assertEquals("High priority", withoutDeadline.get(0).getName());
+        Assert.assertEquals("Low priority", withoutDeadline.get(1).getName());
+        Assert.assertEquals(1, activitiesWithDateHeader.get(deadLineDate).size());
+        Assert.assertSame(activitiesWithDateHeader, am.getActivitiesWithDateHeader());
+
+        Activity lowPriority = am.getSavedActivityByName("Low priority").get();
+        lowPriority.setDeadline(deadLineDate);
+        am.save(lowPriority);
+        activitiesWithDateHeader = am.getActivitiesWithDateHeader();
+        Assert.assertEquals(1, activitiesWithDateHeader.get(TrackMeConstants.getDefaultDateHeader()).size());
+        Assert.assertEquals(2, activitiesWithDateHeader.get(deadLineDate).size());
+
+        am.delete(am.getSavedActivityByName("High priority").get());
+        activitiesWithDateHeader = am.getActivitiesWithDateHeader();
+        Assert.assertEquals(1, activitiesWithDateHeader.size());
+        Assert.assertEquals("TaskTitle", activitiesWithDateHeader.get(deadLineDate).get(0).getName());
+        Assert.assertEquals("Low priority", activitiesWithDateHeader.get(deadLineDate).get(1).getName());
+
+        Files.delete(tempFilePath);
+        Files.deleteIfExists(tempFilePath.resolveSibling(tempFilePath.getFileName() + ActivityJournal.JOURNAL_SUFFIX));
+    }
+
     @Test public void testSaveManagedActivity() throws ParseException, IOException {
         Path tempFilePath = createTempFile();
         ActivityManager am = new ActivityManager(tempFilePath.toString());
@@ -287,4 +335,546 @@ public class ActivityManagerTest extends TrambuTest {
 
         Files.delete(tempFilePath);
     }
+
+    @Test public void testGetSavedActivityByIdFollowsTreeChanges() throws IOException, ParseException {
+        Path tempFilePath = createTempFile();
+        ActivityManager am = new ActivityManager(tempFilePath.toString());
+        am.addActivity(ActivityTestData.SUPER_ACTIVITY);
+        am.addActivity(ActivityTestData.SUB_ACTIVITY_ONE);
+        am.addActivity(ActivityTestData.NO_PREFIX_DATA_LINE);
+        Activity superActivity = am.getSavedActivityByName("Implement new project").get();
+        Activity subActivity = am.getSavedActivityByName("Set up IDE").get();
+        Activity otherActivity = am.getSavedActivityByName("Write my own todo.txt webapp").get();
+        Assert.assertSame(subActivity, am.getSavedActivityById(subActivity.getId().toString()).get());
+        Assert.assertSame(subActivity, am.getSavedActivityById(subActivity.getId()).get());
+        Assert.assertFalse(am.getSavedActivityById(UUID.randomUUID()).isPresent());
+        Assert.assertFalse(am.getSavedActivityById("").isPresent());
+
+        am.addActivityAsSub(otherActivity, subActivity);
+        Assert.assertEquals(1, am.getActivities().size());
+        Assert.assertSame(otherActivity, am.getSavedActivityById(otherActivity.getId()).get());
+        Assert.assertEquals(1, subActivity.getSubActivities().size());
+
+        Activity replacement = new Activity("Set up IDE again");
+        replacement.setId(subActivity.getId().toString());
+        replacement.setParentActivity(superActivity.getId().toString());
+        am.save(replacement);
+        Assert.assertEquals("Set up IDE again",
+                am.getSavedActivityById(subActivity.getId()).map(Activity::getName).orElse(null));
+        Assert.assertFalse(am.getSavedActivityById(otherActivity.getId()).isPresent());
+
+        am.delete(am.getSavedActivityById(superActivity.getId()).get());
+        Assert.assertTrue(am.getActivities().isEmpty());
+        Assert.assertFalse(am.getSavedActivityById(superActivity.getId()).isPresent());
+        Assert.assertFalse(am.getSavedActivityById(subActivity.getId()).isPresent());
+
+        Files.delete(tempFilePath);
+        Files.deleteIfExists(tempFilePath.resolveSibling(tempFilePath.getFileName() + "_BAK"));
+    }
+
+    @Test public void testTagAndProjectFiltersFollowSavesAndDeletes() throws IOException, ParseException {
+        Path tempFilePath = createTempFile();
+        ActivityManager am = new ActivityManager(tempFilePath.toString(), ActivityLoadMode.SEQUENTIAL,
+                ActivityWriteMode.JOURNAL);
+        am.addActivity(ActivityTestData.SUPER_ACTIVITY);
+        am.addActivity(ActivityTestData.SUB_ACTIVITY_WIITH_TAGS_ONE);
+        am.addActivity(ActivityTestData.SUB_ACTIVITY_WIITH_PROJECTS_TWO);
+        Assert.assertEquals(1, countActivities(am.getActivitiesByTag("development")));
+        Assert.assertEquals(0, countActivities(am.getActivitiesByTag("Development")));
+        Assert.assertEquals(1, countActivities(am.getActivitiesByProject("DEVELOPMENT")));
+
+        Activity taggedSub = am.getSavedActivityByName("Set up IDE").get();
+        taggedSub.setTags(Collections.singletonList("review"));
+        Activity superActivity = am.getSavedActivityByName("Implement new project").get();
+        am.save(superActivity);
+        Assert.assertEquals(0, countActivities(am.getActivitiesByTag("development")));
+        Assert.assertEquals(1, countActivities(am.getActivitiesByTag("review")));
+
+        am.delete(am.getSavedActivityByName("Read analisis").get());
+        Assert.assertEquals(0, countActivities(am.getActivitiesByProject("testing")));
+        Assert.assertEquals(1, countActivities(am.getActivitiesByTag("review")));
+
+        Files.delete(tempFilePath);
+        Files.deleteIfExists(tempFilePath.resolveSibling(tempFilePath.getFileName() + ActivityJournal.JOURNAL_SUFFIX));
+    }
+
+    @Test public void testReadActivitiesInParallelMatchesSequential() throws IOException, ParseException {
+        Path tempFilePath = createTempFile();
+        List<String> lines = new ArrayList<>();
+        String orphanParent = UUID.randomUUID().toString();
+        lines.add("(B) Sub before its parent super:" + orphanParent + " uuid:" + UUID.randomUUID());
+        for (int i = 0; i < 2000; i++) {
+            String parentId = UUID.randomUUID().toString();
+            lines.add("(A) Parent activity " + i + " +project" + (i % 7) + " @tag" + (i % 5)
+                    + " due:2017-12-21:16:15:00.000 uuid:" + parentId);
+            lines.add("");
+            lines.add("X (C) Sub activity " + i + " @tag" + (i % 3) + " super:" + parentId + " uuid:" + UUID
+                    .randomUUID());
+        }
+        lines.add("(A) Late parent uuid:" + orphanParent);
+        Files.write(tempFilePath, lines);
+
+        ActivityManager sequential = new ActivityManager(tempFilePath.toString(), ActivityLoadMode.SEQUENTIAL);
+        sequential.readActivitiesFromFile();
+        ActivityManager parallel = new ActivityManager(tempFilePath.toString(), ActivityLoadMode.PARALLEL);
+        parallel.readActivitiesFromFile();
+
+        Assert.assertEquals(2002, parallel.getActivities().size());
+        Assert.assertEquals(describeTree(sequential.getActivities()), describeTree(parallel.getActivities()));
+
+        Files.delete(tempFilePath);
+    }
+
+    @Test public void testReadActivitiesLazilyMatchesSequential() throws IOException, ParseException {
+        Path tempFilePath = createTempFile();
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String parentId = UUID.randomUUID().toString();
+            lines.add("(A) Parent activity " + i + " +project" + (i % 7) + " @tag" + (i % 5)
+                    + " due:2017-12-21:16:15:00.000 loc:Room " + (i % 2) + " uuid:" + parentId);
+            lines.add("X (C) Sub activity " + i + " @tag" + (i % 3) + " super:" + parentId + " uuid:" + UUID
+                    .randomUUID());
+        }
+        Files.write(tempFilePath, lines);
+
+        ActivityManager sequential = new ActivityManager(tempFilePath.toString(), ActivityLoadMode.SEQUENTIAL);
+        sequential.readActivitiesFromFile();
+        ActivityManager lazy = new ActivityManager(tempFilePath.toString(), ActivityLoadMode.LAZY);
+        lazy.readActivitiesFromFile();
+
+        Assert.assertEquals(200, lazy.getActivities().size());
+        Assert.assertEquals(countActivities(sequential.getActivitiesByTag("tag1")),
+                countActivities(lazy.getActivitiesByTag("tag1")));
+        Assert.assertEquals(countActivities(sequential.getActivitiesByProject("project3")),
+                countActivities(lazy.getActivitiesByProject("project3")));
+        Assert.assertEquals(sequential.getExistingLocations(), lazy.getExistingLocations());
+        Assert.assertEquals(describeTree(sequential.getActivities()), describeTree(lazy.getActivities()));
+
+        Files.delete(tempFilePath);
+    }
+
+    @Test public void testJournalModeReplaysChangesUntilCompaction() throws IOException, ParseException {
+        Path tempFilePath = createTempFile();
+        String parentId = UUID.randomUUID().toString();
+        List<String> lines = new ArrayList<>();
+        lines.add("(B) Implement new project uuid:" + parentId);
+        lines.add("(B) Set up IDE super:" + parentId + " uuid:" + UUID.randomUUID());
+        lines.add("(B) Read analisis super:" + parentId + " uuid:" + UUID.randomUUID());
+        lines.add("(C) Unrelated activity uuid:" + UUID.randomUUID());
+        Files.write(tempFilePath, lines);
+
+        ActivityManager am = new ActivityManager(tempFilePath.toString(), ActivityLoadMode.SEQUENTIAL,
+                ActivityWriteMode.JOURNAL);
+        am.readActivitiesFromFile();
+        Activity parent = am.getSavedActivityByName("Implement new project").get();
+        parent.getSubActivities().get(0).setCompleted(true);
+        am.save(parent);
+        am.delete(am.getSavedActivityByName("Read analisis").get());
+        am.delete(am.getSavedActivityByName("Unrelated activity").get());
+        am.save(new Activity("Added activity"));
+
+        Assert.assertEquals(lines, Files.readAllLines(tempFilePath));
+        Assert.assertEquals(2, am.getActivities().size());
+        String expectedTree = describeTree(am.getActivities());
+
+        ActivityManager replayed = new ActivityManager(tempFilePath.toString(), ActivityLoadMode.SEQUENTIAL,
+                ActivityWriteMode.JOURNAL);
+        replayed.readActivitiesFromFile();
+        Assert.assertEquals(expectedTree, describeTree(replayed.getActivities()));
+
+        am.compactJournal();
+        Path journalFile = tempFilePath.resolveSibling(tempFilePath.getFileName() + ActivityJournal.JOURNAL_SUFFIX);
+        Assert.assertFalse(Files.exists(journalFile));
+        Assert.assertFalse(
+                Files.exists(journalFile.resolveSibling(journalFile.getFileName() + ActivityJournal.COMPACTING_SUFFIX)));
+
+        ActivityManager compacted = new ActivityManager(tempFilePath.toString());
+        compacted.readActivitiesFromFile();
+        Assert.assertEquals(expectedTree, describeTree(compacted.getActivities()));
+
+        Files.delete(tempFilePath);
+        Files.deleteIfExists(tempFilePath.resolveSibling(tempFilePath.getFileName() + "_BAK"));
+    }
+
+    @Test public void testSaveWhileCompactingJournalIsKept() throws Exception {
+        Path tempFilePath = createTempFile();
+        ActivityManager am = new ActivityManager(tempFilePath.toString(), ActivityLoadMode.SEQUENTIAL,
+                ActivityWriteMode.JOURNAL);
+        am.readActivitiesFromFile();
+        AtomicBoolean snapshotStarted = new AtomicBoolean(false);
+        List<Thread> savers = new ArrayList<>();
+        Activity trigger = new Activity("Trigger activity") {
+
+            @Override public String toString() {
+                if (snapshotStarted.get() && savers.isEmpty()) {
+                    Thread saver = new Thread(() -> {
+                        try {
+                            am.save(new Activity("Saved while compacting"));
+                        } catch (IOException | ParseException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    });
+                    savers.add(saver);
+                    saver.start();
+                    waitUntilBlocked(saver);
+                }
+                return super.toString();
+            }
+        };
+        am.save(trigger);
+        snapshotStarted.set(true);
+        am.compactJournal();
+        savers.get(0).join();
+
+        ActivityManager replayed = new ActivityManager(tempFilePath.toString(), ActivityLoadMode.SEQUENTIAL,
+                ActivityWriteMode.JOURNAL);
+        replayed.readActivitiesFromFile();
+        Assert.assertTrue(replayed.getSavedActivityByName("Trigger activity").isPresent());
+        Assert.assertTrue(replayed.getSavedActivityByName("Saved while compacting").isPresent());
+
+        Files.delete(tempFilePath);
+        Files.deleteIfExists(tempFilePath.resolveSibling(tempFilePath.getFileName() + "_BAK"));
+        Files.deleteIfExists(tempFilePath.resolveSibling(tempFilePath.getFileName() + ActivityJournal.JOURNAL_SUFFIX));
+    }
+
+    private static void waitUntilBlocked(Thread thread) {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (thread.getState() != Thread.State.WAITING && thread.getState() != Thread.State.TERMINATED
+                && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+    }
+
+    @Test public void testJournalModeReplaysInterruptedCompaction() throws IOException, ParseException {
+        Path tempFilePath = createTempFile();
+        String activityId = UUID.randomUUID().toString();
+        Files.write(tempFilePath, Collections.singletonList("(B) Original name uuid:" + activityId));
+        Path compactingFile = tempFilePath.resolveSibling(
+                tempFilePath.getFileName() + ActivityJournal.JOURNAL_SUFFIX + ActivityJournal.COMPACTING_SUFFIX);
+        Files.write(compactingFile, Collections.singletonList(
+                ActivityJournal.RECORD_UPSERT + "(A) Renamed activity uuid:" + activityId));
+
+        ActivityManager am = new ActivityManager(tempFilePath.toString(), ActivityLoadMode.SEQUENTIAL,
+                ActivityWriteMode.JOURNAL);
+        am.readActivitiesFromFile();
+        List<Activity> activities = am.getActivities();
+        Assert.assertEquals(1, activities.size());
+        Assert.assertEquals("Renamed activity", activities.get(0).getName());
+        Assert.assertEquals("A", activities.get(0).getPriority());
+
+        am.compactJournal();
+        Assert.assertFalse(Files.exists(compactingFile));
+        Assert.assertTrue(Files.readAllLines(tempFilePath).get(0).contains("Renamed activity"));
+
+        Files.delete(tempFilePath);
+        Files.deleteIfExists(tempFilePath.resolveSibling(tempFilePath.getFileName() + "_BAK"));
+    }
+
+    @Test public void testWriteBehindDefersWritesUntilFlush() throws IOException, ParseException {
+        Path tempFilePath = createTempFile();
+        ActivityManager am = new ActivityManager(tempFilePath.toString());
+        am.enableWriteBehind(60000, 1000);
+        for (int i = 0; i < 10; i++) {
+            Activity activity = new Activity("Write behind activity " + i);
+            am.save(activity);
+        }
+        am.delete(am.getSavedActivityByName("Write behind activity 0").get());
+        Assert.assertEquals(9, am.getActivities().size());
+        Assert.assertTrue(Files.readAllLines(tempFilePath).isEmpty());
+
+        am.flush();
+        ActivityManager reloaded = new ActivityManager(tempFilePath.toString());
+        reloaded.readActivitiesFromFile();
+        Assert.assertEquals(describeTree(am.getActivities()), describeTree(reloaded.getActivities()));
+
+        Files.delete(tempFilePath);
+        Files.deleteIfExists(tempFilePath.resolveSibling(tempFilePath.getFileName() + "_BAK"));
+    }
+
+    @Test public void testConcurrentReadersAndWritersKeepTheIndexesConsistent()
+            throws IOException, InterruptedException, ExecutionException {
+        Path tempFilePath = createTempFile();
+        ActivityManager am = new ActivityManager(tempFilePath.toString());
+        am.enableWriteBehind(60000, 100000);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Future<Void>> writers = new ArrayList<>();
+        for (int writer = 0; writer < 4; writer++) {
+            int writerNumber = writer;
+            writers.add(executor.submit(() -> {
+                Activity previous = null;
+                for (int i = 0; i < 50; i++) {
+                    Activity activity = new Activity("Concurrent activity " + writerNumber + " " + i);
+                    activity.addTag("concurrent");
+                    am.save(activity);
+                    if (i % 5 == 1) {
+                        am.addActivityAsSub(activity, previous);
+                    } else if (i % 5 == 4) {
+                        am.delete(activity);
+                    }
+                    previous = activity;
+                }
+                return null;
+            }));
+        }
+        List<Future<Void>> readers = new ArrayList<>();
+        for (int reader = 0; reader < 4; reader++) {
+            readers.add(executor.submit(() -> {
+                while (writing.get()) {
+                    for (List<Activity> activitiesOnDate : am.getActivitiesByTag("concurrent").values()) {
+                        for (Activity activity : activitiesOnDate) {
+                            Assert.assertTrue(activity.getTags().contains("concurrent"));
+                            am.getSavedActivityById(activity.getId());
+                        }
+                    }
+                    am.getActivitiesWithDateHeader().values().forEach(Assert::assertNotNull);
+                    am.getExistingTags();
+                }
+                return null;
+            }));
+        }
+        for (Future<Void> writer : writers) {
+            writer.get();
+        }
+        writing.set(false);
+        for (Future<Void> reader : readers) {
+            reader.get();
+        }
+        executor.shutdown();
+
+        Assert.assertEquals(160, countActivities(am.getActivitiesByTag("concurrent")));
+        Assert.assertEquals(120, countActivities(am.getActivitiesWithDateHeader()));
+        Assert.assertEquals(160, am.getAllActivityNames().size());
+        for (Activity rootActivity : am.getActivities()) {
+            for (Activity subActivity : rootActivity.getSubActivities()) {
+                Assert.assertSame(subActivity, am.getSavedActivityById(subActivity.getId()).get());
+            }
+        }
+
+        am.shutdown();
+        Files.delete(tempFilePath);
+        Files.deleteIfExists(tempFilePath.resolveSibling(tempFilePath.getFileName() + "_BAK"));
+    }
+
+    private int countActivities(Map<Date, List<Activity>> groupedActivities) {
+        return groupedActivities.values().stream().mapToInt(List::size).sum();
+    }
+
+    private String describeTree(List<Activity> activities) {
+        StringBuilder description = new StringBuilder();
+        for (Activity activity : activities) {
+            description.append(activity.toString()).append('[');
+            description.append(describeTree(activity.getSubActivities()));
+            description.append(']');
+        }
+        return description.toString();
+    }
+
+    @Test public void testCompletionDatesAreOnlyWrittenWhenEnabled() throws IOException, ParseException {
+        Path tempFilePath = createTempFile();
+        ActivityManager am = new ActivityManager(tempFilePath.toString());
+        Activity plain = new Activity("Plain completed activity");
+        plain.setCompleted(true);
+        am.save(plain);
+        Assert.assertNull(plain.getCompletionDate());
+        String plainLine = Files.readAllLines(tempFilePath).get(0);
+        Assert.assertFalse(plainLine.contains(TrackMeConstants.INDICATOR_COMPLETION_DATE));
+
+        am.enableCompletionDates();
+        Activity dated = new Activity("Dated completed activity");
+        dated.setCompleted(true);
+        am.save(dated);
+        Assert.assertNotNull(dated.getCompletionDate());
+        Assert.assertTrue(Files.readAllLines(tempFilePath).stream().filter(line -> line.contains("Dated completed"))
+                .allMatch(line -> line.contains(TrackMeConstants.INDICATOR_COMPLETION_DATE)));
+
+        Files.delete(tempFilePath);
+        Files.deleteIfExists(tempFilePath.resolveSibling(tempFilePath.getFileName() + "_BAK"));
+    }
+
+    @Test public void testArchiveCompletedActivities() throws IOException, ParseException {
+        Path tempFilePath = createTempFile();
+        UUID oldProjectId = UUID.randomUUID();
+        UUID parentWithOpenSubId = UUID.randomUUID();
+        List<String> lines = new ArrayList<>();
+        lines.add("x (B) Old project done:2017-01-02:10:00:00.000 uuid:" + oldProjectId);
+        lines.add("x (B) Old sub done:2017-01-03:10:00:00.000 super:" + oldProjectId + " uuid:" + UUID.randomUUID());
+        lines.add("x (B) Parent with open sub done:2017-01-02:10:00:00.000 uuid:" + parentWithOpenSubId);
+        lines.add("(B) Open sub super:" + parentWithOpenSubId + " uuid:" + UUID.randomUUID());
+        lines.add("x (C) Undated activity uuid:" + UUID.randomUUID());
+        lines.add("(A) Open activity uuid:" + UUID.randomUUID());
+        Files.write(tempFilePath, lines);
+
+        ActivityManager am = new ActivityManager(tempFilePath.toString());
+        am.readActivitiesFromFile();
+        List<Activity> archived = am.archiveCompleted(Duration.ofDays(30));
+        Assert.assertEquals(1, archived.size());
+        Assert.assertEquals(oldProjectId, archived.get(0).getId());
+        List<String> hotLines = Files.readAllLines(tempFilePath);
+        Assert.assertEquals(4, hotLines.size());
+        Assert.assertTrue(hotLines.stream().noneMatch(line -> line.contains(oldProjectId.toString())));
+        Assert.assertTrue(hotLines.stream().filter(line -> line.contains("Undated activity"))
+                .allMatch(line -> line.contains(TrackMeConstants.INDICATOR_COMPLETION_DATE)));
+
+        ActivityManager reloaded = new ActivityManager(tempFilePath.toString());
+        reloaded.readActivitiesFromFile();
+        Assert.assertFalse(reloaded.getSavedActivityById(oldProjectId).isPresent());
+        Activity archivedProject = reloaded.getArchivedActivityById(oldProjectId).get();
+        Assert.assertEquals("Old project", archivedProject.getName());
+        Assert.assertEquals(1, archivedProject.getSubActivities().size());
+        Assert.assertEquals(1, reloaded.getArchivedActivities().size());
+        Assert.assertEquals(3, countActivities(reloaded.getActivitiesWithDateHeader(false)));
+        Assert.assertEquals(4, countActivities(reloaded.getActivitiesWithDateHeader(true)));
+        Assert.assertTrue(reloaded.archiveCompleted(Duration.ofDays(30)).isEmpty());
+
+        Files.delete(tempFilePath);
+        Files.deleteIfExists(tempFilePath.resolveSibling(tempFilePath.getFileName() + "_BAK"));
+        Files.delete(tempFilePath.resolveSibling(tempFilePath.getFileName() + ActivityArchive.ARCHIVE_SUFFIX));
+        Files.delete(tempFilePath.resolveSibling(tempFilePath.getFileName() + ActivityArchive.INDEX_SUFFIX));
+    }
+
+    @Test public void testStartupSnapshotReplacesParsingUntilTodoFileChanges() throws IOException, ParseException {
+        Path tempFilePath = createTempFile();
+        String parentId = UUID.randomUUID().toString();
+        List<String> lines = new ArrayList<>();
+        lines.add("(B) Implement new project +trambu @development uuid:" + parentId);
+        lines.add("x (B) Set up IDE @development loc:Home Office super:" + parentId + " uuid:" + UUID.randomUUID());
+        lines.add("(A) Write tests due:2017-12-21:16:15:00.000 warningPeriod:P2D uuid:" + UUID.randomUUID());
+        Files.write(tempFilePath, lines);
+
+        ActivityManager am = new ActivityManager(tempFilePath.toString());
+        am.enableStartupSnapshot();
+        am.readActivitiesFromFile();
+        am.save(new Activity("Added activity"));
+        Assert.assertTrue(StartupSnapshot.read(tempFilePath).isPresent());
+
+        ActivityManager fromSnapshot = new ActivityManager(tempFilePath.toString());
+        fromSnapshot.enableStartupSnapshot();
+        fromSnapshot.readActivitiesFromFile();
+        ActivityManager parsed = new ActivityManager(tempFilePath.toString());
+        parsed.readActivitiesFromFile();
+        Assert.assertEquals(describeTree(parsed.getActivities()), describeTree(fromSnapshot.getActivities()));
+        Activity parent = fromSnapshot.getSavedActivityByName("Implement new project").get();
+        Assert.assertSame(parent.getTags().get(0), parent.getSubActivities().get(0).getTags().get(0));
+        Assert.assertEquals("Home Office", parent.getSubActivities().get(0).getLocation());
+
+        Files.write(tempFilePath, Collections.singletonList("(C) Edited elsewhere uuid:" + UUID.randomUUID()),
+                StandardOpenOption.APPEND);
+        Assert.assertFalse(StartupSnapshot.read(tempFilePath).isPresent());
+        ActivityManager afterEdit = new ActivityManager(tempFilePath.toString());
+        afterEdit.enableStartupSnapshot();
+        afterEdit.readActivitiesFromFile();
+        Assert.assertTrue(afterEdit.getSavedActivityByName("Edited elsewhere").isPresent());
+
+        Files.delete(tempFilePath);
+        Files.delete(StartupSnapshot.getSnapshotFile(tempFilePath));
+        Files.deleteIfExists(tempFilePath.resolveSibling(tempFilePath.getFileName() + "_BAK"));
+    }
+
+    @Test public void testStartupSnapshotKeepsMissingAndLongValues() throws IOException, ParseException {
+        Path tempFilePath = createTempFile();
+        ActivityManager am = new ActivityManager(tempFilePath.toString());
+        am.enableStartupSnapshot();
+        am.readActivitiesFromFile();
+        am.enableWriteBehind(60000, 1000);
+        Activity activity = new Activity(StringUtils.repeat("Long name ", 8000).trim());
+        activity.setPriority(null);
+        am.save(activity);
+        am.flush();
+        Assert.assertEquals(1, Files.readAllLines(tempFilePath).size());
+        Assert.assertTrue(StartupSnapshot.read(tempFilePath).isPresent());
+
+        ActivityManager fromSnapshot = new ActivityManager(tempFilePath.toString());
+        fromSnapshot.enableStartupSnapshot();
+        fromSnapshot.readActivitiesFromFile();
+        Activity readBack = fromSnapshot.getSavedActivityById(activity.getId()).get();
+        Assert.assertNull(readBack.getPriority());
+        Assert.assertEquals(activity.getName(), readBack.getName());
+
+        am.shutdown();
+        Files.delete(tempFilePath);
+        Files.delete(StartupSnapshot.getSnapshotFile(tempFilePath));
+        Files.deleteIfExists(tempFilePath.resolveSibling(tempFilePath.getFileName() + "_BAK"));
+    }
+
+    @Test public void testReloadExternalChangesOnlyParsesChangedLines() throws IOException, ParseException {
+        Path tempFilePath = createTempFile();
+        String parentId = UUID.randomUUID().toString();
+        String subId = UUID.randomUUID().toString();
+        String removedId = UUID.randomUUID().toString();
+        List<String> lines = new ArrayList<>();
+        lines.add("(B) Implement new project +trambu uuid:" + parentId);
+        lines.add("(B) Set up IDE super:" + parentId + " uuid:" + subId);
+        lines.add("(C) Remove me uuid:" + removedId);
+        Files.write(tempFilePath, lines);
+
+        ActivityManager am = new ActivityManager(tempFilePath.toString());
+        am.enableFileWatcher();
+        am.readActivitiesFromFile();
+        List<Activity> changed = new ArrayList<>();
+        Set<UUID> removed = new HashSet<>();
+        am.addActivityChangeListener((changedActivities, removedActivityIds) -> {
+            changed.addAll(changedActivities);
+            removed.addAll(removedActivityIds);
+        });
+
+        am.save(new Activity("Saved by the application"));
+        am.reloadExternalChanges();
+        Assert.assertTrue(changed.isEmpty());
+        Assert.assertTrue(removed.isEmpty());
+
+        List<String> editedLines = new ArrayList<>(Files.readAllLines(tempFilePath));
+        editedLines.removeIf(line -> line.contains(removedId) || line.contains(subId));
+        editedLines.add("x (A) Set up IDE super:" + parentId + " uuid:" + subId);
+        editedLines.add("(A) Added elsewhere");
+        Files.write(tempFilePath, editedLines);
+        am.reloadExternalChanges();
+
+        Assert.assertEquals(2, changed.size());
+        Assert.assertEquals(UUID.fromString(subId), changed.get(0).getId());
+        Assert.assertEquals(Collections.singleton(UUID.fromString(removedId)), removed);
+        Assert.assertFalse(am.getSavedActivityById(removedId).isPresent());
+        Activity parent = am.getSavedActivityById(parentId).get();
+        Assert.assertEquals(1, parent.getSubActivities().size());
+        Assert.assertTrue(parent.getSubActivities().get(0).isCompleted());
+        Assert.assertTrue(am.getSavedActivityByName("Added elsewhere").isPresent());
+        Assert.assertTrue(am.getSavedActivityByName("Saved by the application").isPresent());
+
+        changed.clear();
+        am.reloadExternalChanges();
+        Assert.assertTrue(changed.isEmpty());
+
+        am.shutdown();
+        Files.delete(tempFilePath);
+        Files.deleteIfExists(tempFilePath.resolveSibling(tempFilePath.getFileName() + "_BAK"));
+    }
+
+    @Test public void testExistingValuesAreDistinctAndFollowChanges() throws IOException, ParseException {
+        Path tempFilePath = createTempFile();
+        String parentId = UUID.randomUUID().toString();
+        List<String> lines = new ArrayList<>();
+        lines.add("(B) Implement new project +trambu @development loc:Home uuid:" + parentId);
+        lines.add("(B) Set up IDE +trambu @development @setup loc:Office super:" + parentId);
+        lines.add("(C) Write tests +trambu @development loc:Home");
+        Files.write(tempFilePath, lines);
+
+        ActivityManager am = new ActivityManager(tempFilePath.toString());
+        am.readActivitiesFromFile();
+        Assert.assertEquals(Arrays.asList("development", "setup"), new ArrayList<>(am.getExistingTags()));
+        Assert.assertEquals(Collections.singletonList("trambu"), new ArrayList<>(am.getExistingProjects()));
+        Assert.assertEquals(Arrays.asList("Home", "Office"), new ArrayList<>(am.getExistingLocations()));
+
+        Activity setup = am.getSavedActivityByName("Set up IDE").get();
+        am.delete(setup);
+        Assert.assertEquals(Collections.singletonList("development"), new ArrayList<>(am.getExistingTags()));
+        Assert.assertEquals(Collections.singletonList("Home"), new ArrayList<>(am.getExistingLocations()));
+
+        Activity tests = am.getSavedActivityByName("Write tests").get();
+        tests.setTags(new ArrayList<>(Collections.singletonList("review")));
+        am.save(tests);
+        Assert.assertEquals(Arrays.asList("development", "review"), new ArrayList<>(am.getExistingTags()));
+
+        Files.delete(tempFilePath);
+        Files.deleteIfExists(tempFilePath.resolveSibling(tempFilePath.getFileName() + "_BAK"));
+    }
 }
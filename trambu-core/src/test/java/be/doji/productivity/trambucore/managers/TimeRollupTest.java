@@ -0,0 +1,96 @@
+package be.doji.productivity.trambucore.managers;
+
+import be.doji.productivity.trambucore.TrambuTest;
+import be.doji.productivity.trambucore.model.tasks.Activity;
+import be.doji.productivity.trambucore.model.tracker.ActivityLog;
+import be.doji.productivity.trambucore.model.tracker.TimeLog;
+import be.doji.productivity.trambucore.testutil.ActivityTestData;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.UUID;
+
+public class TimeRollupTest extends TrambuTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    @Test public void testRollupFollowsLogsAndTree() throws IOException, ParseException {
+        Path todoFile = createTempFile();
+        Path timelogFile = createTempFile();
+        ActivityManager am = new ActivityManager(todoFile.toString());
+        am.addActivity(ActivityTestData.SUPER_ACTIVITY);
+        am.addActivity(ActivityTestData.SUB_ACTIVITY_ONE);
+        am.addActivity(ActivityTestData.SUB_ACTIVITY_TWO);
+        am.addActivity(ActivityTestData.NO_PREFIX_DATA_LINE);
+        Activity superActivity = am.getSavedActivityByName("Implement new project").get();
+        Activity subActivityOne = am.getSavedActivityByName("Set up IDE").get();
+        Activity subActivityTwo = am.getSavedActivityByName("Read analisis").get();
+        Activity otherActivity = am.getSavedActivityByName("Write my own todo.txt webapp").get();
+
+        TimeTrackingManager tm = new TimeTrackingManager(timelogFile.toString());
+        TimeRollup rollup = new TimeRollup(am, tm);
+        tm.getLogForActivityId(superActivity.getId()).addLogPoint(createTimeLog(new Date(0), new Date(HOUR)));
+        ActivityLog subLogOne = tm.getLogForActivityId(subActivityOne.getId());
+        subLogOne.addLogPoint(createTimeLog(new Date(0), new Date(2 * HOUR)));
+        tm.getLogForActivityId(subActivityTwo.getId()).addLogPoint(createTimeLog(new Date(0), new Date(3 * HOUR)));
+        tm.getLogForActivityId(otherActivity.getId()).addLogPoint(createTimeLog(new Date(0), new Date(4 * HOUR)));
+
+        Assert.assertEquals(6 * HOUR, rollup.getTimeSpentInMillis(superActivity.getId()));
+        Assert.assertEquals(2 * HOUR, rollup.getTimeSpentInMillis(subActivityOne.getId()));
+        Assert.assertEquals(4 * HOUR, rollup.getTimeSpentInMillis(otherActivity.getId()));
+        Assert.assertEquals(6.0, rollup.getTimeSpentInHours(superActivity.getId()), 0.0);
+
+        subLogOne.addLogPoint(createTimeLog(new Date(10 * HOUR), new Date(11 * HOUR)));
+        Assert.assertEquals(7 * HOUR, rollup.getTimeSpentInMillis(superActivity.getId()));
+        Assert.assertEquals(3 * HOUR, rollup.getTimeSpentInMillis(subActivityOne.getId()));
+
+        am.addActivityAsSub(otherActivity, subActivityTwo);
+        Assert.assertEquals(11 * HOUR, rollup.getTimeSpentInMillis(superActivity.getId()));
+        Assert.assertEquals(7 * HOUR, rollup.getTimeSpentInMillis(subActivityTwo.getId()));
+
+        ActivityLog replacement = new ActivityLog(subActivityOne.getId());
+        tm.save(replacement);
+        Assert.assertEquals(8 * HOUR, rollup.getTimeSpentInMillis(superActivity.getId()));
+
+        replacement.addLogPoint(System.currentTimeMillis() - HOUR, TimeLog.ACTIVE_END);
+        long withRunningTimer = rollup.getTimeSpentInMillis(superActivity.getId());
+        Assert.assertTrue(withRunningTimer >= 9 * HOUR && withRunningTimer < 10 * HOUR);
+        Assert.assertEquals(7 * HOUR, rollup.getTimeSpentInMillis(subActivityTwo.getId()));
+
+        rollup.close();
+        Files.delete(todoFile);
+        Files.delete(timelogFile);
+    }
+
+    @Test public void testRollupStopsAtCyclicParents() throws IOException, ParseException {
+        Path todoFile = createTempFile();
+        Path timelogFile = createTempFile();
+        UUID firstId = UUID.randomUUID();
+        UUID secondId = UUID.randomUUID();
+        Files.write(todoFile, Arrays.asList("(B) First activity super:" + secondId + " uuid:" + firstId,
+                "(B) Second activity super:" + firstId + " uuid:" + secondId));
+        ActivityManager am = new ActivityManager(todoFile.toString());
+        am.readActivitiesFromFile();
+
+        TimeTrackingManager tm = new TimeTrackingManager(timelogFile.toString());
+        TimeRollup rollup = new TimeRollup(am, tm);
+        tm.getLogForActivityId(firstId).addLogPoint(createTimeLog(new Date(0), new Date(HOUR)));
+        tm.getLogForActivityId(secondId).addLogPoint(createTimeLog(new Date(0), new Date(2 * HOUR)));
+        Assert.assertEquals(3 * HOUR, rollup.getTimeSpentInMillis(firstId));
+        Assert.assertEquals(2 * HOUR, rollup.getTimeSpentInMillis(secondId));
+
+        tm.getLogForActivityId(secondId).addLogPoint(System.currentTimeMillis() - HOUR, TimeLog.ACTIVE_END);
+        long withRunningTimer = rollup.getTimeSpentInMillis(firstId);
+        Assert.assertTrue(withRunningTimer >= 4 * HOUR && withRunningTimer < 5 * HOUR);
+
+        rollup.close();
+        Files.delete(todoFile);
+        Files.delete(timelogFile);
+    }
+}
@@ -8,10 +8,19 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.text.ParseException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class TimeTrackingManagerTest extends TrambuTest {
 
@@ -92,6 +101,63 @@ public class TimeTrackingManagerTest extends TrambuTest {
         Files.delete(tempFile);
     }
 
+    @Test public void testRunningTimersFollowLogChanges() throws IOException {
+        Path tempFile = createTempFile();
+        TimeTrackingManager tm = new TimeTrackingManager(tempFile.toString());
+        UUID activityOneId = UUID.randomUUID();
+        UUID activityTwoId = UUID.randomUUID();
+        ActivityLog logOne = tm.getLogForActivityId(activityOneId);
+        ActivityLog logTwo = tm.getLogForActivityId(activityTwoId);
+        logOne.addLogPoint(createTimeLog(new Date(1000L), new Date(2000L)));
+        Assert.assertFalse(tm.isRunning(activityOneId));
+        Assert.assertTrue(tm.getRunningLogs().isEmpty());
+
+        logOne.startLog();
+        logTwo.startLog();
+        Assert.assertTrue(tm.isRunning(activityOneId));
+        Assert.assertTrue(tm.isRunning(activityTwoId));
+        Assert.assertEquals(2, tm.getRunningLogs().size());
+
+        logOne.stopActiveLog();
+        Assert.assertFalse(tm.isRunning(activityOneId));
+        Assert.assertEquals(Collections.singletonList(logTwo), tm.getRunningLogs());
+
+        ActivityLog replacement = new ActivityLog(activityTwoId);
+        tm.save(replacement);
+        Assert.assertFalse(tm.isRunning(activityTwoId));
+        replacement.startLog();
+        Assert.assertTrue(tm.isRunning(activityTwoId));
+        tm.stopAll();
+        Assert.assertFalse(replacement.hasActiveLog());
+        Assert.assertTrue(tm.getRunningLogs().isEmpty());
+
+        Files.delete(tempFile);
+    }
+
+    @Test public void testTimersStartedThroughTheManagerAreSaved() throws IOException, ParseException {
+        Path tempFile = createTempFile();
+        TimeTrackingManager tm = new TimeTrackingManager(tempFile.toString());
+        UUID activityId = UUID.randomUUID();
+        tm.stopTimer(activityId);
+        Assert.assertFalse(tm.findLogForActivityId(activityId).isPresent());
+
+        tm.startTimer(activityId);
+        Assert.assertTrue(tm.isRunning(activityId));
+        TimeTrackingManager reread = new TimeTrackingManager(tempFile.toString());
+        reread.readLogs();
+        Assert.assertTrue(reread.isRunning(activityId));
+
+        tm.stopTimer(activityId);
+        Assert.assertFalse(tm.isRunning(activityId));
+        Assert.assertEquals(1, tm.getLogForActivityId(activityId).getLogpointCount());
+        reread = new TimeTrackingManager(tempFile.toString());
+        reread.readLogs();
+        Assert.assertFalse(reread.isRunning(activityId));
+        Assert.assertEquals(1, reread.getLogForActivityId(activityId).getLogpointCount());
+
+        Files.delete(tempFile);
+    }
+
     /* Unit tests for overview functionality */
 
     @Test public void getActivityForIntervalOneFits() throws IOException {
@@ -241,4 +307,231 @@ public class TimeTrackingManagerTest extends TrambuTest {
         Files.delete(tempFile);
     }
 
+    @Test public void getActivityForIntervalFollowsStartAndStop() throws IOException {
+        Path tempFile = createTempFile();
+        TimeTrackingManager tm = new TimeTrackingManager(tempFile.toString());
+
+        UUID activityId = UUID.randomUUID();
+        ActivityLog activityLog = tm.getLogForActivityId(activityId);
+        Calendar overviewStart = new GregorianCalendar();
+        overviewStart.add(Calendar.HOUR, -1);
+        Calendar overviewEnd = new GregorianCalendar();
+        overviewEnd.add(Calendar.HOUR, 1);
+        Assert.assertTrue(tm.getActivityLogsInInterval(overviewStart.getTime(), overviewEnd.getTime()).isEmpty());
+
+        activityLog.startLog();
+        List<ActivityLog> runningLogs = tm.getActivityLogsInInterval(overviewStart.getTime(), overviewEnd.getTime());
+        Assert.assertEquals(1, runningLogs.size());
+        Assert.assertEquals(activityId, runningLogs.get(0).getActivityId());
+
+        activityLog.stopActiveLog();
+        Calendar afterStop = new GregorianCalendar();
+        afterStop.add(Calendar.MINUTE, 1);
+        Assert.assertEquals(1,
+                tm.getActivityLogsInInterval(overviewStart.getTime(), overviewEnd.getTime()).size());
+        Assert.assertTrue(tm.getActivityLogsInInterval(afterStop.getTime(), overviewEnd.getTime()).isEmpty());
+
+        ActivityLog replacement = new ActivityLog(activityId);
+        tm.save(replacement);
+        Assert.assertTrue(tm.getActivityLogsInInterval(overviewStart.getTime(), overviewEnd.getTime()).isEmpty());
+
+        Files.delete(tempFile);
+    }
+
+    @Test public void getActivityForIntervalMatchesScanOfAllLogs() throws IOException {
+        Path tempFile = createTempFile();
+        TimeTrackingManager tm = new TimeTrackingManager(tempFile.toString());
+
+        Random random = new Random(42);
+        long base = new GregorianCalendar(2017, Calendar.JANUARY, 1).getTimeInMillis();
+        long hour = 60 * 60 * 1000L;
+        for (int i = 0; i < 30; i++) {
+            ActivityLog activityLog = new ActivityLog(UUID.randomUUID());
+            for (int j = 0; j < 10; j++) {
+                long start = base + random.nextInt(24 * 60) * hour;
+                long end = start + (1 + random.nextInt(72)) * hour;
+                activityLog.addLogPoint(createTimeLog(new Date(start), new Date(end)));
+            }
+            tm.save(activityLog);
+        }
+
+        for (int i = 0; i < 50; i++) {
+            Date intervalStart = new Date(base + random.nextInt(24 * 60) * hour);
+            Date intervalEnd = new Date(intervalStart.getTime() + random.nextInt(24 * 14) * hour);
+
+            Map<UUID, Set<String>> expected = new HashMap<>();
+            for (ActivityLog activityLog : tm.getLogs()) {
+                for (TimeLog timeLog : activityLog.getTimeLogsInInterval(intervalStart, intervalEnd)) {
+                    expected.computeIfAbsent(activityLog.getActivityId(), key -> new HashSet<>())
+                            .add(timeLog.toString());
+                }
+            }
+            Map<UUID, Set<String>> actual = new HashMap<>();
+            for (ActivityLog activityLog : tm.getActivityLogsInInterval(intervalStart, intervalEnd)) {
+                for (TimeLog timeLog : activityLog.getLogpoints()) {
+                    actual.computeIfAbsent(activityLog.getActivityId(), key -> new HashSet<>())
+                            .add(timeLog.toString());
+                }
+            }
+            Assert.assertEquals(expected, actual);
+        }
+
+        Files.delete(tempFile);
+    }
+
+    @Test public void testPartitionedTimelogReadsSegmentsOnDemand() throws IOException, ParseException {
+        Path tempFile = createTempFile();
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        long january = toMillis(LocalDateTime.of(2017, 1, 10, 10, 0));
+        long march = toMillis(LocalDateTime.of(2017, 3, 10, 10, 0));
+        long now = System.currentTimeMillis();
+        TimeTrackingManager writer = new TimeTrackingManager(tempFile.toString(), TimeLogPartitioning.MONTHLY);
+        writer.getLogForActivityId(first).addLogPoint(january, january + 1000);
+        writer.getLogForActivityId(first).addLogPoint(now - 1000, now);
+        writer.getLogForActivityId(second).addLogPoint(march, march + 1000);
+        writer.writeLogs();
+        Assert.assertEquals(0, Files.size(tempFile));
+
+        TimeTrackingManager reader = new TimeTrackingManager(tempFile.toString(), TimeLogPartitioning.MONTHLY);
+        reader.readLogs();
+        Assert.assertEquals(1, reader.getLogs().size());
+        Assert.assertEquals(1, reader.getLogForActivityId(first).getLogpointCount());
+        List<ActivityLog> januaryLogs = reader.getActivityLogsInInterval(new Date(january), new Date(january + 5000));
+        Assert.assertEquals(1, januaryLogs.size());
+        Assert.assertEquals(first, januaryLogs.get(0).getActivityId());
+        Assert.assertEquals(2, reader.getLogForActivityId(first).getLogpointCount());
+        Assert.assertFalse(reader.findLogForActivityId(second).isPresent());
+
+        reader.getLogForActivityId(second).addLogPoint(march + 5000, march + 6000);
+        reader.writeLogs();
+        TimeTrackingManager allSegments = new TimeTrackingManager(tempFile.toString(), TimeLogPartitioning.MONTHLY);
+        allSegments.readLogs();
+        allSegments.readAllSegments();
+        Assert.assertEquals(2, allSegments.getLogs().size());
+        Assert.assertEquals(2, allSegments.getLogForActivityId(first).getLogpointCount());
+        Assert.assertEquals(2, allSegments.getLogForActivityId(second).getLogpointCount());
+
+        deleteSegments(tempFile);
+        Files.delete(tempFile);
+    }
+
+    @Test public void testPartitioningSplitsExistingTimelog() throws IOException, ParseException {
+        Path tempFile = createTempFile();
+        UUID activityId = UUID.randomUUID();
+        long january = toMillis(LocalDateTime.of(2017, 1, 10, 10, 0));
+        long march = toMillis(LocalDateTime.of(2017, 3, 10, 10, 0));
+        TimeTrackingManager singleFile = new TimeTrackingManager(tempFile.toString());
+        singleFile.getLogForActivityId(activityId).addLogPoint(january, january + 1000);
+        singleFile.getLogForActivityId(activityId).addLogPoint(march, march + 1000);
+        singleFile.writeLogs();
+
+        TimeTrackingManager partitioned = new TimeTrackingManager(tempFile.toString(), TimeLogPartitioning.MONTHLY);
+        partitioned.readLogs();
+        Assert.assertEquals(2, partitioned.getLogForActivityId(activityId).getLogpointCount());
+
+        TimeTrackingManager reader = new TimeTrackingManager(tempFile.toString(), TimeLogPartitioning.MONTHLY);
+        reader.readLogs();
+        Assert.assertTrue(reader.getLogs().isEmpty());
+        List<ActivityLog> marchLogs = reader.getActivityLogsInInterval(new Date(march), new Date(march + 5000));
+        Assert.assertEquals(1, marchLogs.size());
+        Assert.assertEquals(1, reader.getLogForActivityId(activityId).getLogpointCount());
+        Assert.assertEquals(march, reader.getLogForActivityId(activityId).getLogpointStart(0));
+
+        deleteSegments(tempFile);
+        Files.delete(tempFile);
+    }
+
+    @Test public void testStartupSnapshotReplacesParsingUntilTimelogChanges() throws IOException, ParseException {
+        Path tempFile = createTempFile();
+        TimeTrackingManager writer = new TimeTrackingManager(tempFile.toString());
+        writer.enableStartupSnapshot();
+        writer.getLogForActivityId(UUID.randomUUID()).addLogPoint(createTimeLog(new Date(1000), new Date(5000)));
+        ActivityLog runningLog = writer.getLogForActivityId(UUID.randomUUID());
+        runningLog.addLogPoint(2000, 3000);
+        runningLog.addLogPoint(System.currentTimeMillis(), TimeLog.ACTIVE_END);
+        writer.writeLogs();
+        Assert.assertTrue(StartupSnapshot.read(tempFile).isPresent());
+
+        TimeTrackingManager fromSnapshot = new TimeTrackingManager(tempFile.toString());
+        fromSnapshot.enableStartupSnapshot();
+        fromSnapshot.readLogs();
+        TimeTrackingManager parsed = new TimeTrackingManager(tempFile.toString());
+        parsed.readLogs();
+        Assert.assertEquals(parsed.getLogs().toString(), fromSnapshot.getLogs().toString());
+        Assert.assertTrue(fromSnapshot.isRunning(runningLog.getActivityId()));
+
+        Files.write(tempFile, Collections.singletonList(""), StandardOpenOption.APPEND);
+        Assert.assertFalse(StartupSnapshot.read(tempFile).isPresent());
+
+        Files.delete(tempFile);
+        Files.delete(StartupSnapshot.getSnapshotFile(tempFile));
+    }
+
+    @Test public void testConcurrentTimersAndLookups() throws IOException, InterruptedException, ExecutionException {
+        Path tempFile = createTempFile();
+        TimeTrackingManager tm = new TimeTrackingManager(tempFile.toString());
+        tm.enableWriteBehind(60000, 100000);
+        UUID sharedActivityId = UUID.randomUUID();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicBoolean tracking = new AtomicBoolean(true);
+        List<Future<ActivityLog>> writers = new ArrayList<>();
+        for (int writer = 0; writer < 4; writer++) {
+            writers.add(executor.submit(() -> {
+                ActivityLog sharedLog = tm.getLogForActivityId(sharedActivityId);
+                for (int i = 0; i < 50; i++) {
+                    ActivityLog log = tm.getLogForActivityId(UUID.randomUUID());
+                    log.startLog();
+                    Assert.assertTrue(tm.isRunning(log.getActivityId()));
+                    log.stopActiveLog();
+                    tm.save(log);
+                }
+                return sharedLog;
+            }));
+        }
+        List<Future<ActivityLog>> readers = new ArrayList<>();
+        for (int reader = 0; reader < 4; reader++) {
+            readers.add(executor.submit(() -> {
+                while (tracking.get()) {
+                    for (ActivityLog runningLog : tm.getRunningLogs()) {
+                        tm.findLogForActivityId(runningLog.getActivityId());
+                    }
+                    tm.getActivityLogsInInterval(new Date(0), new Date());
+                    tm.getLogs().forEach(Assert::assertNotNull);
+                }
+                return null;
+            }));
+        }
+        Set<ActivityLog> sharedLogs = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Future<ActivityLog> writer : writers) {
+            sharedLogs.add(writer.get());
+        }
+        tracking.set(false);
+        for (Future<ActivityLog> reader : readers) {
+            reader.get();
+        }
+        executor.shutdown();
+
+        Assert.assertEquals(1, sharedLogs.size());
+        Assert.assertEquals(201, tm.getLogs().size());
+        Assert.assertTrue(tm.getRunningLogs().isEmpty());
+        Assert.assertEquals(200, tm.getLogs().stream().filter(log -> log.getLogpointCount() == 1).count());
+
+        tm.shutdown();
+        Files.delete(tempFile);
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static void deleteSegments(Path timelogFile) throws IOException {
+        Path segmentDirectory = timelogFile.resolveSibling(timelogFile.getFileName() + ".segments");
+        try (DirectoryStream<Path> segmentFiles = Files.newDirectoryStream(segmentDirectory)) {
+            for (Path segmentFile : segmentFiles) {
+                Files.delete(segmentFile);
+            }
+        }
+        Files.delete(segmentDirectory);
+    }
 }
@@ -0,0 +1,72 @@
+package be.doji.productivity.trambucore.managers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WriteBehindSchedulerTest {
+
+    @Test public void testBurstIsWrittenOnce() throws InterruptedException {
+        AtomicInteger flushes = new AtomicInteger();
+        CountDownLatch flushed = new CountDownLatch(1);
+        WriteBehindScheduler scheduler = new WriteBehindScheduler("test", () -> {
+            flushes.incrementAndGet();
+            flushed.countDown();
+        }, 100, 1000);
+        for (int i = 0; i < 20; i++) {
+            scheduler.markDirty();
+        }
+        Assert.assertTrue(scheduler.isDirty());
+        Assert.assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        Thread.sleep(300);
+        Assert.assertEquals(1, flushes.get());
+        Assert.assertFalse(scheduler.isDirty());
+    }
+
+    @Test public void testThresholdFlushesWithoutWaitingForDelay() throws InterruptedException {
+        CountDownLatch flushed = new CountDownLatch(1);
+        WriteBehindScheduler scheduler = new WriteBehindScheduler("test", flushed::countDown, 60000, 3);
+        scheduler.markDirty();
+        scheduler.markDirty();
+        Assert.assertEquals(1, flushed.getCount());
+        scheduler.markDirty();
+        Assert.assertTrue(flushed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test public void testFlushAndShutdownWritePendingChanges() throws IOException {
+        AtomicInteger flushes = new AtomicInteger();
+        WriteBehindScheduler scheduler = new WriteBehindScheduler("test", flushes::incrementAndGet, 60000, 1000);
+        scheduler.flush();
+        Assert.assertEquals(0, flushes.get());
+
+        scheduler.markDirty();
+        scheduler.flush();
+        Assert.assertEquals(1, flushes.get());
+
+        scheduler.markDirty();
+        scheduler.shutdown();
+        Assert.assertEquals(2, flushes.get());
+        Assert.assertFalse(scheduler.isDirty());
+    }
+
+    @Test public void testFailedFlushKeepsChangesPending() {
+        AtomicInteger attempts = new AtomicInteger();
+        WriteBehindScheduler scheduler = new WriteBehindScheduler("test", () -> {
+            attempts.incrementAndGet();
+            throw new IOException("Disk full");
+        }, 60000, 1000);
+        scheduler.markDirty();
+        try {
+            scheduler.flush();
+            Assert.fail("Expected the flush to fail");
+        } catch (IOException e) {
+            Assert.assertEquals("Disk full", e.getMessage());
+        }
+        Assert.assertEquals(1, attempts.get());
+        Assert.assertTrue(scheduler.isDirty());
+    }
+}
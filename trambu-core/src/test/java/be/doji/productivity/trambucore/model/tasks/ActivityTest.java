@@ -6,10 +6,14 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.UUID;
 
 public class ActivityTest {
 
@@ -106,6 +110,89 @@ public class ActivityTest {
 
     }
 
+    @Test public void testListsAreReadOnlyViewsOfTheValuesWhenTaken() {
+        Activity testActivity = new Activity(ACT_DEFAULT_NAME);
+        testActivity.addTag("tagOne");
+        List<String> tags = testActivity.getTags();
+        testActivity.addTag("tagTwo");
+        Assert.assertEquals(Collections.singletonList("tagOne"), tags);
+        Assert.assertEquals(Arrays.asList("tagOne", "tagTwo"), testActivity.getTags());
+
+        Activity subActivity = new Activity("Sub");
+        testActivity.addSubTask(subActivity);
+        List<Activity> subActivities = testActivity.getSubActivities();
+        testActivity.removeSubActivity(subActivity);
+        Assert.assertEquals(1, subActivities.size());
+        Assert.assertTrue(testActivity.getSubActivities().isEmpty());
+        try {
+            subActivities.add(subActivity);
+            Assert.fail("Sub activities should not be changed through the returned list");
+        } catch (UnsupportedOperationException e) {
+            Assert.assertTrue(testActivity.getSubActivities().isEmpty());
+        }
+    }
+
+    @Test public void testPrimitiveFieldsKeepTheirValues() {
+        Activity testActivity = new Activity(ACT_DEFAULT_NAME);
+        UUID parentId = UUID.randomUUID();
+        Date deadline = new Date(1513869300123L);
+        testActivity.setParentActivity(parentId.toString());
+        testActivity.setDeadline(deadline);
+        testActivity.setWarningTimeFrame(Duration.ofHours(5));
+        testActivity.setPriority(ACT_PRIORITY);
+        Assert.assertEquals(parentId.toString(), testActivity.getParentActivity());
+        Assert.assertEquals(deadline, testActivity.getDeadline());
+        Assert.assertEquals(Duration.ofHours(5), testActivity.getWarningTimeFrame());
+        Assert.assertEquals(ACT_PRIORITY, testActivity.getPriority());
+        Assert.assertNull(testActivity.getCompletionDate());
+        Assert.assertNull(testActivity.getLocation());
+
+        testActivity.setParentActivity(null);
+        testActivity.setDeadline(null);
+        testActivity.setWarningTimeFrame(null);
+        Assert.assertNull(testActivity.getParentActivity());
+        Assert.assertFalse(testActivity.isSetDeadline());
+        Assert.assertNull(testActivity.getWarningTimeFrame());
+    }
+
+    @Test public void testIrregularPriorityAndParentAreKeptAsWritten() {
+        Activity testActivity = new Activity(ACT_DEFAULT_NAME);
+        testActivity.setPriority("AB");
+        testActivity.setParentActivity("notAnId");
+        Assert.assertEquals("AB", testActivity.getPriority());
+        Assert.assertEquals("notAnId", testActivity.getParentActivity());
+        Assert.assertTrue(testActivity.toString().contains("(AB)"));
+        Assert.assertTrue(testActivity.toString().contains(TrackMeConstants.INDICATOR_PARENT_ACTIVITY + "notAnId"));
+
+        UUID parentId = UUID.randomUUID();
+        testActivity.setParentActivity(parentId.toString());
+        Assert.assertEquals(parentId.toString(), testActivity.getParentActivity());
+        testActivity.setPriority(null);
+        Assert.assertNull(testActivity.getPriority());
+    }
+
+    @Test public void testSubActivitiesKeepTheirOrderWhileGrowing() {
+        Activity testActivity = new Activity(ACT_DEFAULT_NAME);
+        List<Activity> added = new ArrayList<>();
+        List<Activity> firstThree = null;
+        for (int i = 0; i < 100; i++) {
+            Activity subActivity = new Activity("Sub " + i);
+            testActivity.addSubTask(subActivity);
+            added.add(subActivity);
+            if (i == 2) {
+                firstThree = testActivity.getSubActivities();
+            }
+        }
+        Assert.assertEquals(added, testActivity.getSubActivities());
+        Assert.assertEquals(added.subList(0, 3), firstThree);
+
+        testActivity.removeSubActivity(added.get(0));
+        testActivity.addSubTask(added.get(0));
+        Assert.assertEquals(added.subList(0, 3), firstThree);
+        Assert.assertEquals(100, testActivity.getSubActivities().size());
+        Assert.assertSame(added.get(0), testActivity.getSubActivities().get(99));
+    }
+
     private String getDefaultFieldSuffix(Activity testActivity) {
         return TrackMeConstants.INDICATOR_WARNING_PERIOD + testActivity.getWarningTimeFrame().toString() + " "
                 + TrackMeConstants.INDICATOR_UUID + testActivity.getId();
@@ -6,6 +6,7 @@ import org.apache.commons.lang3.time.DateUtils;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.time.LocalDate;
 import java.util.*;
 
 public class ActivityLogTest extends TrambuTest {
@@ -115,6 +116,73 @@ public class ActivityLogTest extends TrambuTest {
         Assert.assertEquals("0.017 hours", timeString);
     }
 
+    @Test public void testLogpointViewsWriteThrough() {
+        ActivityLog testLog = new ActivityLog(UUID.randomUUID());
+        for (int i = 0; i < 10; i++) {
+            testLog.addLogPoint(i * 1000L, i * 1000L + 500);
+        }
+        TimeLog addedLog = createTimeLog(new Date(20000L), null);
+        addedLog.setActive(true);
+        testLog.addLogPoint(addedLog);
+        Assert.assertEquals(11, testLog.getLogpointCount());
+        Assert.assertEquals(addedLog, testLog.getActiveLog().get());
+
+        addedLog.setEndTime(new Date(21000L));
+        Assert.assertFalse(testLog.getActiveLog().isPresent());
+        Assert.assertEquals(21000L, testLog.getLogpointEnd(10));
+
+        TimeLog view = testLog.getLogpoints().get(3);
+        Assert.assertEquals(new Date(3000L), view.getStartTime());
+        view.setStartTime(new Date(3100L));
+        Assert.assertEquals(3100L, testLog.getLogpointStart(3));
+        Assert.assertEquals(new Date(3100L), testLog.getLogpoints().get(3).getStartTime());
+        Assert.assertEquals(view, testLog.getLogpoints().get(3));
+        Assert.assertNotEquals(view, testLog.getLogpoints().get(4));
+        Assert.assertEquals("5.9 seconds", testLog.getTimeSpentInSecondsString());
+    }
+
+    @Test public void testTimeSpentPerDaySplitsAtMidnight() {
+        ActivityLog testLog = new ActivityLog(UUID.randomUUID());
+        Calendar logOneStart = new GregorianCalendar(2017, Calendar.DECEMBER, 1, 22, 0, 0);
+        Calendar logOneEnd = new GregorianCalendar(2017, Calendar.DECEMBER, 2, 1, 0, 0);
+        testLog.addLogPoint(createTimeLog(logOneStart.getTime(), logOneEnd.getTime()));
+        LocalDate firstDay = LocalDate.of(2017, 12, 1);
+        LocalDate secondDay = LocalDate.of(2017, 12, 2);
+        long hour = 60 * 60 * 1000L;
+
+        Assert.assertEquals(2 * hour, testLog.getTimeSpentInMillis(firstDay));
+        Assert.assertEquals(hour, testLog.getTimeSpentInMillis(secondDay));
+
+        Calendar logTwoStart = new GregorianCalendar(2017, Calendar.DECEMBER, 2, 9, 0, 0);
+        Calendar logTwoEnd = new GregorianCalendar(2017, Calendar.DECEMBER, 2, 12, 0, 0);
+        TimeLog logTwo = createTimeLog(logTwoStart.getTime(), logTwoEnd.getTime());
+        testLog.addLogPoint(logTwo);
+        Assert.assertEquals(4 * hour, testLog.getTimeSpentInMillis(secondDay));
+        Assert.assertEquals(6 * hour, testLog.getTimeSpentInMillis());
+
+        logTwo.setEndTime(new GregorianCalendar(2017, Calendar.DECEMBER, 2, 10, 0, 0).getTime());
+        SortedMap<LocalDate, Long> perDay = testLog.getTimeSpentPerDay();
+        Assert.assertEquals(2, perDay.size());
+        Assert.assertEquals(Long.valueOf(2 * hour), perDay.get(firstDay));
+        Assert.assertEquals(Long.valueOf(2 * hour), perDay.get(secondDay));
+        Assert.assertEquals(4 * hour, testLog.getTimeSpentInMillis());
+    }
+
+    @Test public void testTimeSpentCountsRunningLogUpToNow() {
+        ActivityLog testLog = new ActivityLog(UUID.randomUUID());
+        long start = System.currentTimeMillis() - 60000L;
+        testLog.addLogPoint(start, TimeLog.ACTIVE_END);
+        Assert.assertTrue(testLog.getTimeSpentInMillis() >= 60000L);
+        Assert.assertTrue(testLog.getTimeSpentInMillis(LocalDate.now()) > 0
+                || testLog.getTimeSpentInMillis(LocalDate.now().minusDays(1)) > 0);
+
+        testLog.stopActiveLog();
+        long stoppedTotal = testLog.getTimeSpentInMillis();
+        Assert.assertEquals(testLog.getLogpointEnd(0) - start, stoppedTotal);
+        long summedDays = testLog.getTimeSpentPerDay().values().stream().mapToLong(Long::longValue).sum();
+        Assert.assertEquals(stoppedTotal, summedDays);
+    }
+
     /* Unit tests for overview functionality */
 
     @Test public void testGetLogsForIntervalFullyInScope() {
@@ -198,6 +266,25 @@ public class ActivityLogTest extends TrambuTest {
         Assert.assertTrue(timeLogsInInterval.isEmpty());
     }
 
+    @Test public void testGetLogsForIntervalSpanningScope() {
+        UUID activityOneId = UUID.randomUUID();
+        ActivityLog logActivityOne = new ActivityLog(activityOneId);
+        Calendar logOneStart = new GregorianCalendar(2017, Calendar.NOVEMBER, 30, 14, 0, 0);
+        Calendar logOneEnd = new GregorianCalendar(2017, Calendar.DECEMBER, 3, 18, 0, 0);
+        logActivityOne.addLogPoint(createTimeLog(logOneStart.getTime(), logOneEnd.getTime()));
+
+        Calendar overviewStartDate = new GregorianCalendar(2017, Calendar.DECEMBER, 1);
+        Calendar overviewEndDate = new GregorianCalendar(2017, Calendar.DECEMBER, 2);
+
+        List<TimeLog> timeLogsInInterval = logActivityOne
+                .getTimeLogsInInterval(overviewStartDate.getTime(), overviewEndDate.getTime());
+        Assert.assertNotNull(timeLogsInInterval);
+        Assert.assertEquals(1, timeLogsInInterval.size());
+        TimeLog timeLog = timeLogsInInterval.get(0);
+        Assert.assertEquals(overviewStartDate.getTime(), timeLog.getStartTime());
+        Assert.assertEquals(overviewEndDate.getTime(), timeLog.getEndTime());
+    }
+
     private Date createDateWithPositiveHourOffset(GregorianCalendar referenceDate, int offset) {
         return new GregorianCalendar(referenceDate.get(Calendar.YEAR), referenceDate.get(Calendar.MONTH),
                 referenceDate.get(Calendar.DAY_OF_MONTH), referenceDate.get(Calendar.HOUR_OF_DAY) + offset,
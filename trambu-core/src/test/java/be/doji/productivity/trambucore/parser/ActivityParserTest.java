@@ -1,12 +1,15 @@
 package be.doji.productivity.trambucore.parser;
 
+import be.doji.productivity.trambucore.TrackMeConstants;
 import be.doji.productivity.trambucore.model.tasks.Activity;
 import be.doji.productivity.trambucore.testutil.ActivityTestData;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -118,4 +121,86 @@ public class ActivityParserTest {
         Assert.assertEquals("Test Location", activity.getLocation());
     }
 
+    @Test public void testParseParentFollowedByTag() throws ParseException {
+        Activity activity = ActivityParser
+                .mapStringToActivity("(B) Set up IDE super:283b6271-b513-4e89-b757-10e98c9078ea @development");
+        Assert.assertEquals("283b6271-b513-4e89-b757-10e98c9078ea", activity.getParentActivity());
+        Assert.assertEquals(1, activity.getTags().size());
+        Assert.assertEquals("development", activity.getTags().get(0));
+    }
+
+    @Test public void testParseSavedActivityRoundTrip() throws ParseException {
+        Activity original = ActivityParser.mapStringToActivity(ActivityTestData.ACTIVITY_WITH_UUID);
+        original.setLocation("Test Location");
+        original.setCompleted(true);
+        Activity reparsed = ActivityParser.mapStringToActivity(original.toString());
+        Assert.assertEquals(original.toString(), reparsed.toString());
+        Assert.assertTrue(reparsed.isCompleted());
+        Assert.assertEquals("TaskTitle", reparsed.getName());
+        Assert.assertEquals("Test Location", reparsed.getLocation());
+        Assert.assertEquals(original.getDeadline(), reparsed.getDeadline());
+        Assert.assertEquals(original.getWarningTimeFrame(), reparsed.getWarningTimeFrame());
+    }
+
+    @Test public void testParseCompletionDate() throws ParseException {
+        Activity activity = ActivityParser.mapStringToActivity(
+                "x (B) Buy license done:2017-12-21:16:15:00.000 uuid:283b6271-b513-4e89-b757-10e98c9078ea");
+        Assert.assertTrue(activity.isCompleted());
+        Assert.assertEquals("Buy license", activity.getName());
+        Assert.assertNotNull(activity.getCompletionDate());
+        Activity reparsed = ActivityParser.mapStringToActivity(activity.toString());
+        Assert.assertEquals(activity.getCompletionDate(), reparsed.getCompletionDate());
+        Assert.assertEquals(activity.toString(), reparsed.toString());
+    }
+
+    @Test public void testParseIgnoresMalformedTokens() throws ParseException {
+        Activity activity = ActivityParser.mapStringToActivity("(C) Mail jan +proj! me@home warningPeriod:P2Dx");
+        Assert.assertEquals("Mail jan", activity.getName());
+        Assert.assertEquals(1, activity.getTags().size());
+        Assert.assertEquals("home", activity.getTags().get(0));
+        Assert.assertTrue(activity.getProjects().isEmpty());
+        Assert.assertEquals(TrackMeConstants.DEFAULT_WARNING_PERIOD, activity.getWarningTimeFrame());
+    }
+
+    @Test public void testLazyActivitiesDecodeDetailsOnFirstAccess() throws ParseException {
+        String first = "x (B) Set up IDE +trambu @development due:2017-12-21:16:15:00.000 warningPeriod:PT5H "
+                + "loc:Home Office super:283b6271-b513-4e89-b757-10e98c9078ea uuid:9e2c1c0a-36ee-4e5e-9d39-5e8e5ad5ef1a";
+        String second = "(A) Write tests @review";
+        byte[] content = ("\r\n" + first + "\r\n\n   \n" + second).getBytes(StandardCharsets.UTF_8);
+
+        List<Activity> lazyActivities = ActivityParser.mapContentToLazyActivities(content);
+        Assert.assertEquals(2, lazyActivities.size());
+        Activity lazy = lazyActivities.get(0);
+        Activity eager = ActivityParser.mapStringToActivity(first);
+        Assert.assertEquals(eager.getName(), lazy.getName());
+        Assert.assertEquals(eager.getId(), lazy.getId());
+        Assert.assertEquals(eager.getParentActivity(), lazy.getParentActivity());
+        Assert.assertEquals(eager.getDeadline(), lazy.getDeadline());
+        Assert.assertTrue(lazy.isCompleted());
+        Assert.assertEquals(eager.getTags(), lazy.getTags());
+        Assert.assertEquals(eager.getProjects(), lazy.getProjects());
+        Assert.assertEquals("Home Office", lazy.getLocation());
+        Assert.assertEquals(eager.getWarningTimeFrame(), lazy.getWarningTimeFrame());
+
+        Activity changedFirst = lazyActivities.get(1);
+        changedFirst.addTag("urgent");
+        Assert.assertEquals(Arrays.asList("review", "urgent"), changedFirst.getTags());
+        Assert.assertEquals("Write tests", changedFirst.getName());
+    }
+
+    @Test public void testLazyActivitiesMatchEagerOnesAroundMultiByteCharacters() throws ParseException {
+        String line = "(C) Bake crème brûlée voor Zoë @kitchen +dessert due:2017-12-21:16:15:00.000 loc:Home "
+                + "uuid:9e2c1c0a-36ee-4e5e-9d39-5e8e5ad5ef1a";
+        Activity eager = ActivityParser.mapStringToActivity(line);
+        Activity lazy = ActivityParser.mapContentToLazyActivities(line.getBytes(StandardCharsets.UTF_8)).get(0);
+        Assert.assertEquals(eager.getName(), lazy.getName());
+        Assert.assertEquals(eager.getPriority(), lazy.getPriority());
+        Assert.assertEquals(eager.getDeadline(), lazy.getDeadline());
+        Assert.assertEquals(eager.getId(), lazy.getId());
+        Assert.assertEquals(eager.getTags(), lazy.getTags());
+        Assert.assertEquals(eager.getProjects(), lazy.getProjects());
+        Assert.assertEquals(eager.getLocation(), lazy.getLocation());
+        Assert.assertEquals(eager.toString(), lazy.toString());
+    }
+
 }
@@ -0,0 +1,101 @@
+package be.doji.productivity.trambucore.parser;
+
+import be.doji.productivity.trambucore.TrambuTest;
+import be.doji.productivity.trambucore.model.tracker.ActivityLog;
+import be.doji.productivity.trambucore.model.tracker.TimeLog;
+import be.doji.productivity.trambucore.utils.TimestampCodec;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.List;
+import java.util.UUID;
+
+public class TimeLogFileReaderTest extends TrambuTest {
+
+    private static final String FIRST_ID = "fa183c05-fb22-4411-8f94-12c954484f22";
+    private static final String SECOND_ID = "283b6271-b513-4e89-b757-10e98c9078ea";
+
+    @Test public void testParseTimeLogFromBuffer() throws ParseException {
+        String line = "  STARTTIME:2017-11-11:13:34:01.084 ENDTIME:2017-11-11:13:34:03.521";
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.US_ASCII));
+        TimeLog fromBuffer = TimeLogParser.parseToTimeLog(buffer, 2, line.length());
+        TimeLog fromString = TimeLogParser.parseToTimeLog(line.trim());
+        Assert.assertEquals(fromString.getStartTime(), fromBuffer.getStartTime());
+        Assert.assertEquals(fromString.getEndTime(), fromBuffer.getEndTime());
+        Assert.assertFalse(fromBuffer.isActive());
+
+        TimeLog running = TimeLogParser.parseToTimeLog(buffer, 2, line.indexOf(" ENDTIME"));
+        Assert.assertTrue(running.isActive());
+        Assert.assertNull(running.getEndTime());
+    }
+
+    @Test public void testReadBlocks() throws IOException, ParseException {
+        Path tempFile = createTempFile();
+        String content = "LOG_START " + FIRST_ID + "\r\n"
+                + "STARTTIME:2017-11-11:13:34:01.084 ENDTIME:2017-11-11:13:34:03.521\r\n"
+                + "STARTTIME:2017-11-12:08:00:00.000\r\n"
+                + "LOG_END\r\n"
+                + "\r\n"
+                + "log_start " + SECOND_ID.toUpperCase() + "\n"
+                + "log_end";
+        Files.write(tempFile, content.getBytes(StandardCharsets.UTF_8));
+
+        try {
+            TimeLogFileReader.read(tempFile);
+            Assert.fail("Lower case start markers can not be stripped from the activity id");
+        } catch (IllegalArgumentException e) {
+            Assert.assertNotNull(e);
+        }
+
+        Files.write(tempFile, content.replace("log_start", "LOG_START").getBytes(StandardCharsets.UTF_8));
+        List<ActivityLog> logs = TimeLogFileReader.read(tempFile);
+        Assert.assertEquals(2, logs.size());
+
+        ActivityLog first = logs.get(0);
+        Assert.assertEquals(UUID.fromString(FIRST_ID), first.getActivityId());
+        Assert.assertEquals(2, first.getLogpoints().size());
+        TimeLog closedLog = first.getLogpoints().get(0);
+        Assert.assertFalse(closedLog.isActive());
+        Assert.assertEquals(TimestampCodec.getInstance().parse("2017-11-11:13:34:01.084"),
+                closedLog.getStartTime().getTime());
+        Assert.assertEquals(TimestampCodec.getInstance().parse("2017-11-11:13:34:03.521"),
+                closedLog.getEndTime().getTime());
+        Assert.assertTrue(first.getLogpoints().get(1).isActive());
+
+        Assert.assertEquals(UUID.fromString(SECOND_ID), logs.get(1).getActivityId());
+        Assert.assertTrue(logs.get(1).getLogpoints().isEmpty());
+
+        Files.delete(tempFile);
+    }
+
+    @Test public void testReadLinesAcrossBufferBoundaries() throws IOException, ParseException {
+        Path tempFile = createTempFile();
+        StringBuilder content = new StringBuilder();
+        int logCount = 500;
+        int pointsPerLog = 20;
+        for (int i = 0; i < logCount; i++) {
+            content.append("LOG_START ").append(UUID.randomUUID()).append(System.lineSeparator());
+            for (int j = 0; j < pointsPerLog; j++) {
+                content.append("STARTTIME:2017-11-11:13:34:01.084 ENDTIME:2017-11-11:13:34:03.521")
+                        .append(System.lineSeparator());
+            }
+            content.append("LOG_END").append(System.lineSeparator());
+        }
+        Assert.assertTrue(content.length() > TimeLogFileReader.BUFFER_SIZE * 2);
+        Files.write(tempFile, content.toString().getBytes(StandardCharsets.UTF_8));
+
+        List<ActivityLog> logs = TimeLogFileReader.read(tempFile);
+        Assert.assertEquals(logCount, logs.size());
+        for (ActivityLog log : logs) {
+            Assert.assertEquals(pointsPerLog, log.getLogpoints().size());
+        }
+
+        Files.delete(tempFile);
+    }
+}
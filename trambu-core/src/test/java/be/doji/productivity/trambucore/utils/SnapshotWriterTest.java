@@ -0,0 +1,48 @@
+package be.doji.productivity.trambucore.utils;
+
+import be.doji.productivity.trambucore.TrambuTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class SnapshotWriterTest extends TrambuTest {
+
+    @Test public void testWriteReplacesContent() throws IOException {
+        Path tempFilePath = createTempFile();
+        Files.write(tempFilePath, Arrays.asList("old line one", "old line two", "old line three"));
+
+        List<String> lines = Arrays.asList("(A) First activity", "", "X (B) Second activity @tag");
+        SnapshotWriter.write(tempFilePath, lines);
+        Assert.assertEquals(lines, Files.readAllLines(tempFilePath));
+
+        SnapshotWriter.write(tempFilePath, Collections.emptyList());
+        Assert.assertEquals(0, Files.size(tempFilePath));
+
+        Files.delete(tempFilePath);
+    }
+
+    @Test public void testWriteLeavesNoTemporaryFiles() throws IOException {
+        Path tempFilePath = createTempFile();
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            lines.add("Activity number " + i + " uuid:283b6271-b513-4e89-b757-10e98c9078ea");
+        }
+        SnapshotWriter.write(tempFilePath, lines);
+        Assert.assertEquals(lines, Files.readAllLines(tempFilePath));
+
+        try (DirectoryStream<Path> siblings = Files
+                .newDirectoryStream(tempFilePath.getParent(), tempFilePath.getFileName() + "*.tmp")) {
+            Assert.assertFalse(siblings.iterator().hasNext());
+        }
+
+        Files.delete(tempFilePath);
+    }
+}
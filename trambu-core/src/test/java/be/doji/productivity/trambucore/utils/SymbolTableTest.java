@@ -0,0 +1,42 @@
+package be.doji.productivity.trambucore.utils;
+
+import be.doji.productivity.trambucore.model.tasks.Activity;
+import be.doji.productivity.trambucore.parser.ActivityParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.text.ParseException;
+
+public class SymbolTableTest {
+
+    @Test public void testCanonicalReturnsSharedInstance() {
+        String value = "symbol-table-test";
+        Assert.assertSame(value, SymbolTable.canonical(value));
+        Assert.assertSame(value, SymbolTable.canonical(new String(value.toCharArray())));
+        Assert.assertNotSame(value, SymbolTable.canonical(value + "-other"));
+        Assert.assertNull(SymbolTable.canonical(null));
+    }
+
+    @Test public void testUnusedValuesAreReleased() throws InterruptedException {
+        int sizeBefore = SymbolTable.size();
+        for (int i = 0; i < 500; i++) {
+            SymbolTable.canonical("released-" + i);
+        }
+        WeakReference<String> released = new WeakReference<>(SymbolTable.canonical(new String("released-value")));
+        for (int attempt = 0; attempt < 20 && released.get() != null; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertNull(released.get());
+        Assert.assertTrue(SymbolTable.size() < sizeBefore + 500);
+    }
+
+    @Test public void testParsedActivitiesShareValues() throws ParseException {
+        Activity first = ActivityParser.mapStringToActivity("(A) First +trambu @development loc:Home Office");
+        Activity second = ActivityParser.mapStringToActivity("(B) Second +trambu @development loc:Home Office");
+        Assert.assertSame(first.getProjects().get(0), second.getProjects().get(0));
+        Assert.assertSame(first.getTags().get(0), second.getTags().get(0));
+        Assert.assertSame(first.getLocation(), second.getLocation());
+    }
+}
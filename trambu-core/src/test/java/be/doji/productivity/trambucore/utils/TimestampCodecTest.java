@@ -0,0 +1,93 @@
+package be.doji.productivity.trambucore.utils;
+
+import be.doji.productivity.trambucore.TrackMeConstants;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+public class TimestampCodecTest {
+
+    private static final String TEST_TIMESTAMP = "2017-12-21:16:15:00.000";
+
+    @Test public void testParseMatchesDateFormat() throws ParseException {
+        long parsed = TimestampCodec.getInstance().parse(TEST_TIMESTAMP);
+        Assert.assertEquals(TrackMeConstants.getDateFormat().parse(TEST_TIMESTAMP).getTime(), parsed);
+    }
+
+    @Test public void testParseRange() throws ParseException {
+        String line = "due:" + TEST_TIMESTAMP + " uuid:";
+        long parsed = TimestampCodec.getInstance().parse(line, 4, 4 + TimestampCodec.FORMATTED_LENGTH);
+        Calendar calendar = new GregorianCalendar();
+        calendar.setTimeInMillis(parsed);
+        Assert.assertEquals(2017, calendar.get(Calendar.YEAR));
+        Assert.assertEquals(Calendar.DECEMBER, calendar.get(Calendar.MONTH));
+        Assert.assertEquals(21, calendar.get(Calendar.DAY_OF_MONTH));
+        Assert.assertEquals(16, calendar.get(Calendar.HOUR_OF_DAY));
+        Assert.assertEquals(15, calendar.get(Calendar.MINUTE));
+    }
+
+    @Test public void testParseBytes() throws ParseException {
+        byte[] bytes = ("STARTTIME:" + TEST_TIMESTAMP).getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long parsed = TimestampCodec.getInstance().parse(buffer, 10, bytes.length);
+        Assert.assertEquals(TimestampCodec.getInstance().parse(TEST_TIMESTAMP), parsed);
+        Assert.assertEquals(0, buffer.position());
+    }
+
+    @Test public void testFormatMatchesDateFormat() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            long instant = (long) (random.nextDouble() * 4102444800000L);
+            Assert.assertEquals(TrackMeConstants.getDateFormat().format(new Date(instant)),
+                    TimestampCodec.getInstance().format(instant));
+        }
+    }
+
+    @Test public void testFormatIntoBuffers() {
+        long instant = new GregorianCalendar(2017, Calendar.NOVEMBER, 11, 13, 34, 1).getTimeInMillis() + 84;
+        StringBuilder builder = new StringBuilder("STARTTIME:");
+        TimestampCodec.getInstance().format(instant, builder);
+        Assert.assertEquals("STARTTIME:2017-11-11:13:34:01.084", builder.toString());
+
+        ByteBuffer buffer = ByteBuffer.allocate(TimestampCodec.FORMATTED_LENGTH);
+        TimestampCodec.getInstance().format(instant, buffer);
+        Assert.assertEquals("2017-11-11:13:34:01.084", new String(buffer.array(), StandardCharsets.US_ASCII));
+    }
+
+    @Test public void testRoundTrip() throws ParseException {
+        Random random = new Random(7);
+        for (int i = 0; i < 10000; i++) {
+            long instant = (long) (random.nextDouble() * 4102444800000L);
+            TimestampCodec codec = TimestampCodec.getInstance();
+            Assert.assertEquals(codec.format(instant), codec.format(codec.parse(codec.format(instant))));
+        }
+    }
+
+    @Test public void testFixedTimeZone() throws ParseException {
+        TimestampCodec utcCodec = new TimestampCodec(TimeZone.getTimeZone("UTC"));
+        Assert.assertEquals(0L, utcCodec.parse("1970-01-01:00:00:00.000"));
+        Assert.assertEquals("1970-01-02:00:00:00.001", utcCodec.format(86400001L));
+    }
+
+    @Test public void testOutOfRangeFieldsRollOver() throws ParseException {
+        TimestampCodec utcCodec = new TimestampCodec(TimeZone.getTimeZone("UTC"));
+        Assert.assertEquals(utcCodec.parse("2018-01-01:00:00:00.000"), utcCodec.parse("2017-13-01:00:00:00.000"));
+        Assert.assertEquals(utcCodec.parse("2017-03-01:00:00:00.000"), utcCodec.parse("2017-02-29:00:00:00.000"));
+    }
+
+    @Test(expected = ParseException.class) public void testParseMissingField() throws ParseException {
+        TimestampCodec.getInstance().parse("2017-12-21:16:15");
+    }
+
+    @Test(expected = ParseException.class) public void testParseTrailingCharacters() throws ParseException {
+        TimestampCodec.getInstance().parse(TEST_TIMESTAMP + "Z");
+    }
+}
@@ -0,0 +1,62 @@
+package be.doji.productivity.trambucore.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+public class UuidMapTest {
+
+    @Test public void testPutGetRemove() {
+        UuidMap<String> map = new UuidMap<>();
+        UUID id = UUID.randomUUID();
+        Assert.assertNull(map.get(id));
+        Assert.assertNull(map.put(id, "first"));
+        Assert.assertEquals("first", map.put(id, "second"));
+        Assert.assertEquals("second", map.putIfAbsent(id, "third"));
+        Assert.assertEquals("second", map.get(new UUID(id.getMostSignificantBits(), id.getLeastSignificantBits())));
+        Assert.assertEquals(1, map.size());
+
+        Assert.assertFalse(map.remove(id, new String("second")));
+        Assert.assertEquals("second", map.remove(id));
+        Assert.assertFalse(map.containsKey(id));
+        Assert.assertTrue(map.isEmpty());
+    }
+
+    @Test public void testMatchesHashMapUnderRandomChanges() {
+        Random random = new Random(42);
+        UuidMap<Integer> map = new UuidMap<>();
+        Map<UUID, Integer> expected = new HashMap<>();
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            if (ids.isEmpty() || random.nextInt(3) > 0) {
+                UUID id = random.nextInt(4) == 0?new UUID(0, random.nextInt(64)):UUID.randomUUID();
+                ids.add(id);
+                Assert.assertEquals(expected.put(id, i), map.put(id, i));
+            } else {
+                UUID id = ids.remove(random.nextInt(ids.size()));
+                Assert.assertEquals(expected.remove(id), map.remove(id));
+            }
+        }
+        Assert.assertEquals(expected.size(), map.size());
+        for (Map.Entry<UUID, Integer> entry : expected.entrySet()) {
+            Assert.assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        Map<UUID, Integer> iterated = new HashMap<>();
+        map.forEach(iterated::put);
+        Assert.assertEquals(expected, iterated);
+
+        map.clear();
+        Assert.assertTrue(map.isEmpty());
+        Assert.assertNull(map.get(ids.get(0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void testNullValuesAreRejected() {
+        new UuidMap<String>().put(UUID.randomUUID(), null);
+    }
+}